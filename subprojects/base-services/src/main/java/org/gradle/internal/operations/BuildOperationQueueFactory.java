@@ -19,5 +19,5 @@ package org.gradle.internal.operations;
 import org.gradle.internal.concurrent.StoppableExecutor;
 
 public interface BuildOperationQueueFactory {
-    <T extends BuildOperation> BuildOperationQueue<T> create(StoppableExecutor executor, BuildOperationWorker<T> worker);
+    <T extends BuildOperation> BuildOperationQueue<T> create(StoppableExecutor executor, BuildOperationWorkerRegistry workerRegistry, BuildOperationWorker<T> worker);
 }
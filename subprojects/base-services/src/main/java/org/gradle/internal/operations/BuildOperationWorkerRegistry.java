@@ -32,6 +32,13 @@ public interface BuildOperationWorkerRegistry {
      */
     Completion operationStart();
 
+    /**
+     * Marks the start of a build operation when a lease is available, without blocking. Returns {@code null} when no lease is available.
+     *
+     * <p>Note that the caller must call {@link Completion#operationFinish()} on the returned completion to release the lease for other threads to use.
+     */
+    Completion tryOperationStart();
+
     /**
      * Returns the build operation associated with the current thread. Allows child operations to be created for this operation. Fails when there is no operation associated with this thread.
      */
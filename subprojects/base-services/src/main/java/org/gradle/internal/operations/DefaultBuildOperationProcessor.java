@@ -31,22 +31,29 @@ import org.gradle.util.CollectionUtils;
 import java.util.List;
 
 /**
- * Note that this class does not currently consider the build operations being run by {@link DefaultBuildOperationWorkerRegistry}.
+ * Runs the operations of each queue on a shared pool of threads. Each operation takes a lease from the {@link BuildOperationWorkerRegistry},
+ * so that the operations of all queues and the other work of the build, such as task execution, together use no more than the maximum number of workers.
  */
 public class DefaultBuildOperationProcessor implements BuildOperationProcessor, Stoppable {
     private static final String LINE_SEPARATOR = SystemProperties.getInstance().getLineSeparator();
 
     private final BuildOperationQueueFactory buildOperationQueueFactory;
+    private final BuildOperationWorkerRegistry workerRegistry;
     private final StoppableExecutor fixedSizePool;
 
     public DefaultBuildOperationProcessor(BuildOperationQueueFactory buildOperationQueueFactory, ExecutorFactory executorFactory, int maxWorkerCount) {
+        this(buildOperationQueueFactory, executorFactory, new DefaultBuildOperationWorkerRegistry(maxWorkerCount), maxWorkerCount);
+    }
+
+    public DefaultBuildOperationProcessor(BuildOperationQueueFactory buildOperationQueueFactory, ExecutorFactory executorFactory, BuildOperationWorkerRegistry workerRegistry, int maxWorkerCount) {
         this.buildOperationQueueFactory = buildOperationQueueFactory;
+        this.workerRegistry = workerRegistry;
         this.fixedSizePool = executorFactory.create("build operations", maxWorkerCount);
     }
 
     @Override
     public <T extends BuildOperation> void run(BuildOperationWorker<T> worker, Action<BuildOperationQueue<T>> generator) {
-        BuildOperationQueue<T> queue = buildOperationQueueFactory.create(fixedSizePool, worker);
+        BuildOperationQueue<T> queue = buildOperationQueueFactory.create(fixedSizePool, workerRegistry, worker);
 
         List<GradleException> failures = Lists.newArrayList();
         try {
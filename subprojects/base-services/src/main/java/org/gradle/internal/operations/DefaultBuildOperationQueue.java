@@ -17,33 +17,52 @@
 package org.gradle.internal.operations;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
-import com.google.common.util.concurrent.*;
 import org.gradle.internal.UncheckedException;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs the operations of the queue on the threads of an executor, each taking a lease from the worker registry.
+ *
+ * <p>An executor thread never waits for a lease, as the executor is shared by all queues and a thread waiting for a lease would keep it
+ * from the operations of the other queues. When no lease is available, the operation is left queued. An executor thread that holds a lease
+ * runs the queued operations of its queue one after the other, before it releases the lease.</p>
+ *
+ * <p>The thread that waits for the queue to complete runs the operations that no executor thread has started yet, rather than
+ * blocking. These operations are nested in the operation of the waiting thread, if any, and so run on its lease. A waiting thread without
+ * an operation of its own waits for a lease before it takes an operation, so the operation can still be run by an executor thread meanwhile.</p>
+ */
 class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOperationQueue<T> {
-    private final ListeningExecutorService executor;
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final Executor executor;
+    private final BuildOperationWorkerRegistry workerRegistry;
     private final BuildOperationWorker<T> worker;
 
-    private final List<QueuedOperation> operations;
+    private final List<OperationHolder> operations;
+    // Operations that may not have been started yet, in the order they were added
+    private final Queue<OperationHolder> queued = new ConcurrentLinkedQueue<OperationHolder>();
 
     private String logLocation;
 
     private final AtomicBoolean waitingForCompletion = new AtomicBoolean();
     private final AtomicBoolean canceled = new AtomicBoolean();
 
-    DefaultBuildOperationQueue(ExecutorService executor, BuildOperationWorker<T> worker) {
-        this.executor = MoreExecutors.listeningDecorator(executor);
+    DefaultBuildOperationQueue(Executor executor, BuildOperationWorkerRegistry workerRegistry, BuildOperationWorker<T> worker) {
+        this.executor = executor;
+        this.workerRegistry = workerRegistry;
         this.worker = worker;
-        this.operations = Collections.synchronizedList(Lists.<QueuedOperation>newArrayList());
+        this.operations = Collections.synchronizedList(Lists.<OperationHolder>newArrayList());
     }
 
     public void add(final T operation) {
@@ -51,45 +70,36 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
             throw new IllegalStateException("BuildOperationQueue cannot be reused once it has started completion.");
         }
         OperationHolder operationHolder = new OperationHolder(operation);
-        ListenableFuture<?> future = executor.submit(operationHolder);
-        operations.add(new QueuedOperation(operationHolder, future));
+        operations.add(operationHolder);
+        queued.add(operationHolder);
+        executor.execute(operationHolder);
     }
 
     @Override
     public void cancel() {
+        // Operations that have not started check this before they start
         canceled.set(true);
-        for (QueuedOperation operation : operations) {
-            // Although we can cancel the future of a running operation, we have no way of knowing
-            // that the operation was canceled after it began executing (i.e. isCanceled always returns
-            // true) which is a problem because we need to know whether to wait on the result or not.
-            // So we have to maintain the running state ourselves and only cancel operations we know
-            // have not started executing.
-            if (!operation.operationHolder.isStarted()) {
-                operation.future.cancel(false);
-            }
-        }
     }
 
     public void waitForCompletion() throws MultipleBuildOperationFailures {
         waitingForCompletion.set(true);
 
-        CountDownLatch finished = new CountDownLatch(operations.size());
-        Queue<Throwable> failures = Queues.newConcurrentLinkedQueue();
+        List<OperationHolder> queued;
+        synchronized (operations) {
+            queued = Lists.newArrayList(operations);
+        }
 
-        for (QueuedOperation operation : operations) {
-            if (operation.future.isCancelled()) {
-                // If it's canceled, we'll never get a callback, so we just remove it from
-                // operations we're waiting for.
-                finished.countDown();
-            } else {
-                Futures.addCallback(operation.future, new CompletionCallback(finished, failures));
-            }
+        // Help with the operations that no executor thread has started, instead of waiting for them
+        for (OperationHolder operation : queued) {
+            operation.runInCallingThread();
         }
 
-        try {
-            finished.await();
-        } catch (InterruptedException e) {
-            throw UncheckedException.throwAsUncheckedException(e);
+        List<Throwable> failures = Lists.newArrayList();
+        for (OperationHolder operation : queued) {
+            operation.awaitCompletion();
+            if (operation.failure != null) {
+                failures.add(operation.failure);
+            }
         }
 
         // all operations are complete, check for errors
@@ -110,53 +120,87 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
         return "Multiple build operations failed.";
     }
 
-    private static class CompletionCallback implements FutureCallback {
-        private final CountDownLatch finished;
-        private final Collection<Throwable> failures;
-
-        private CompletionCallback(CountDownLatch finished, Collection<Throwable> failures) {
-            this.finished = finished;
-            this.failures = failures;
-        }
+    private class OperationHolder implements Runnable {
+        private final T operation;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Throwable failure;
 
-        public void onSuccess(Object result) {
-            finished.countDown();
+        OperationHolder(T operation) {
+            this.operation = operation;
         }
 
-        public void onFailure(Throwable t) {
-            failures.add(t);
-            finished.countDown();
+        /**
+         * Runs the operation on an executor thread, unless another thread has already taken it or no lease is available, followed by
+         * the other queued operations of the queue.
+         */
+        public void run() {
+            if (state.get() != QUEUED) {
+                return;
+            }
+            BuildOperationWorkerRegistry.Completion lease = workerRegistry.tryOperationStart();
+            if (lease == null) {
+                // Left for a thread that holds a lease, or for the thread waiting for the queue
+                return;
+            }
+            try {
+                if (claim()) {
+                    execute();
+                }
+                OperationHolder next;
+                while ((next = queued.poll()) != null) {
+                    if (next.claim()) {
+                        next.execute();
+                    }
+                }
+            } finally {
+                lease.operationFinish();
+            }
         }
-    }
-
-    private class QueuedOperation {
-        final OperationHolder operationHolder;
-        final ListenableFuture future;
 
-        public QueuedOperation(OperationHolder operationHolder, ListenableFuture future) {
-            this.operationHolder = operationHolder;
-            this.future = future;
+        void runInCallingThread() {
+            if (state.get() != QUEUED) {
+                return;
+            }
+            // Take the lease before the operation, so that an executor thread can run the operation while this thread waits for a lease
+            BuildOperationWorkerRegistry.Completion lease = workerRegistry.operationStart();
+            try {
+                if (claim()) {
+                    execute();
+                }
+            } finally {
+                lease.operationFinish();
+            }
         }
-    }
 
-    private class OperationHolder implements Runnable {
-        private final T operation;
-        private final AtomicBoolean started = new AtomicBoolean();
-
-        OperationHolder(T operation) {
-            this.operation = operation;
+        private boolean claim() {
+            if (canceled.get()) {
+                // Don't execute if the queue has been canceled
+                if (state.compareAndSet(QUEUED, DONE)) {
+                    finished.countDown();
+                }
+                return false;
+            }
+            return state.compareAndSet(QUEUED, RUNNING);
         }
 
-        public void run() {
-            // Don't execute if the queue has been canceled
-            started.set(!canceled.get());
-            if (started.get()) {
+        private void execute() {
+            try {
                 worker.execute(operation);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                state.set(DONE);
+                finished.countDown();
             }
         }
 
-        public boolean isStarted() {
-            return started.get();
+        void awaitCompletion() {
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
         }
 
         public String toString() {
@@ -20,7 +20,7 @@ import org.gradle.internal.concurrent.StoppableExecutor;
 
 public class DefaultBuildOperationQueueFactory implements BuildOperationQueueFactory {
     @Override
-    public <T extends BuildOperation> BuildOperationQueue<T> create(StoppableExecutor executor, BuildOperationWorker<T> worker) {
-        return new DefaultBuildOperationQueue<T>(executor, worker);
+    public <T extends BuildOperation> BuildOperationQueue<T> create(StoppableExecutor executor, BuildOperationWorkerRegistry workerRegistry, BuildOperationWorker<T> worker) {
+        return new DefaultBuildOperationQueue<T>(executor, workerRegistry, worker);
     }
 }
@@ -21,19 +21,28 @@ import org.gradle.internal.concurrent.Stoppable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Note that this class currently does not consider the build operations being run by {@link DefaultBuildOperationProcessor}.
+ * Hands out a fixed number of leases to the threads that run build operations.
+ *
+ * <p>Leases are granted and released without locking. A thread only synchronizes with other threads when it has to wait for a lease.</p>
+ *
+ * <p>An operation started on a thread that is already running an operation is nested in that operation, and runs on its lease. The outer
+ * operation cannot do any work until the nested operation completes, so the thread can help with the work of its children, such as the operations
+ * of a {@link BuildOperationQueue}, without taking a second lease.</p>
  */
 public class DefaultBuildOperationWorkerRegistry implements BuildOperationWorkerRegistry, Stoppable {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBuildOperationWorkerRegistry.class);
     private final int maxWorkerCount;
+    private final AtomicInteger counter = new AtomicInteger(1);
+    private final AtomicInteger leasesInUse = new AtomicInteger();
+    private final AtomicInteger runningOperations = new AtomicInteger();
+    private final ThreadLocal<DefaultOperation> currentOperation = new ThreadLocal<DefaultOperation>();
+    // Only used by threads that wait for a lease
     private final Object lock = new Object();
-    private int counter = 1;
-    private final Map<Thread, DefaultOperation> threads = new HashMap<Thread, DefaultOperation>();
-    private final Root root = new Root();
+    private final AtomicInteger waitingForLease = new AtomicInteger();
 
     public DefaultBuildOperationWorkerRegistry(int maxWorkerCount) {
         this.maxWorkerCount = maxWorkerCount;
@@ -42,146 +51,177 @@ public class DefaultBuildOperationWorkerRegistry implements BuildOperationWorker
 
     @Override
     public Operation getCurrent() {
-        synchronized (lock) {
-            DefaultOperation operation = threads.get(Thread.currentThread());
-            if (operation == null) {
-                throw new IllegalStateException("No build operation associated with the current thread");
-            }
-            return operation;
+        DefaultOperation operation = currentOperation.get();
+        if (operation == null) {
+            throw new IllegalStateException("No build operation associated with the current thread");
         }
+        return operation;
     }
 
     @Override
     public Completion operationStart() {
-        return doStartOperation(root);
+        return doStartOperation(null, true);
     }
 
-    private BuildOperationWorkerRegistry.Completion doStartOperation(LeaseHolder parent) {
-        synchronized (lock) {
-            int workerId = counter++;
-            Thread ownerThread = Thread.currentThread();
-            if (threads.containsKey(ownerThread)) {
-                // Not implemented - not yet required. Please implement if required
-                throw new UnsupportedOperationException("Cannot nest operations in the same thread. Each nested operation must run in its own thread.");
-            }
+    @Override
+    public Completion tryOperationStart() {
+        return doStartOperation(null, false);
+    }
 
-            DefaultOperation operation = new DefaultOperation(parent, workerId, ownerThread);
-            while (!parent.grantLease()) {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Worker {} waiting for a lease. Currently {} in use", operation.getDisplayName(), root.leasesInUse);
-                }
-                try {
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    throw UncheckedException.throwAsUncheckedException(e);
+    private BuildOperationWorkerRegistry.Completion doStartOperation(DefaultOperation parent, boolean blocking) {
+        int workerId = counter.getAndIncrement();
+        DefaultOperation outer = currentOperation.get();
+        if (parent == null) {
+            parent = outer;
+        }
+        String displayName = (parent == null ? "root" : parent.displayName) + '.' + workerId;
+
+        Lease lease;
+        if (outer != null) {
+            lease = Lease.NESTED;
+        } else {
+            lease = tryAcquireLease(parent);
+            if (lease == null) {
+                if (!blocking) {
+                    return null;
                 }
+                lease = waitForLease(parent, displayName);
             }
+        }
 
-            threads.put(ownerThread, operation);
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Worker {} started ({} in use).", operation.getDisplayName(), root.leasesInUse);
-            }
-            return operation;
+        DefaultOperation operation = new DefaultOperation(parent, outer, displayName, lease);
+        if (parent != null) {
+            parent.children.incrementAndGet();
+        }
+        runningOperations.incrementAndGet();
+        currentOperation.set(operation);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Worker {} started ({} in use).", displayName, leasesInUse.get());
         }
+        return operation;
     }
 
-    @Override
-    public void stop() {
-        synchronized (lock) {
-            if (!threads.isEmpty()) {
-                throw new IllegalStateException("Some build operations have not been marked as completed.");
+    private Lease tryAcquireLease(DefaultOperation parent) {
+        // Allow one child operation to borrow the lease of its parent, as the parent is assumed to wait for its children
+        if (parent != null && parent.leaseOwner.leaseAvailableToChild.compareAndSet(true, false)) {
+            return Lease.BORROWED;
+        }
+        while (true) {
+            int inUse = leasesInUse.get();
+            if (inUse >= maxWorkerCount) {
+                return null;
+            }
+            if (leasesInUse.compareAndSet(inUse, inUse + 1)) {
+                return Lease.OWN;
             }
         }
     }
 
-    private abstract class LeaseHolder {
-        abstract String getDisplayName();
-
-        abstract boolean grantLease();
-
-        abstract void releaseLease();
-    }
-
-    private class Root extends LeaseHolder {
-        int leasesInUse;
-
-        public String getDisplayName() {
-            return "root";
+    private Lease waitForLease(DefaultOperation parent, String displayName) {
+        synchronized (lock) {
+            // Count this thread as waiting before trying again, so that a lease released in the meantime is either seen here or followed by a notify
+            waitingForLease.incrementAndGet();
+            try {
+                while (true) {
+                    Lease lease = tryAcquireLease(parent);
+                    if (lease != null) {
+                        return lease;
+                    }
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Worker {} waiting for a lease. Currently {} in use", displayName, leasesInUse.get());
+                    }
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } finally {
+                waitingForLease.decrementAndGet();
+            }
         }
+    }
 
-        @Override
-        boolean grantLease() {
-            if (leasesInUse >= maxWorkerCount) {
-                return false;
+    private void leaseReleased() {
+        if (waitingForLease.get() > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
             }
-            leasesInUse++;
-            return true;
         }
+    }
 
-        @Override
-        void releaseLease() {
-            leasesInUse--;
+    @Override
+    public void stop() {
+        if (runningOperations.get() != 0) {
+            throw new IllegalStateException("Some build operations have not been marked as completed.");
         }
     }
 
-    private class DefaultOperation extends LeaseHolder implements Completion, Operation {
-        private final LeaseHolder parent;
-        private final int workerId;
+    private enum Lease {
+        // Holds one of the leases of the registry
+        OWN,
+        // Uses the lease of its parent
+        BORROWED,
+        // Runs on the lease of the operation of its thread that it is nested in
+        NESTED
+    }
+
+    private class DefaultOperation implements Completion, Operation {
+        private final DefaultOperation parent;
+        private final DefaultOperation outer;
+        private final String displayName;
+        private final Lease lease;
+        // The operation whose lease this operation runs on
+        private final DefaultOperation leaseOwner;
         private final Thread ownerThread;
-        int children;
+        private final AtomicBoolean leaseAvailableToChild = new AtomicBoolean(true);
+        private final AtomicInteger children = new AtomicInteger();
 
-        DefaultOperation(LeaseHolder parent, int workerId, Thread ownerThread) {
+        DefaultOperation(DefaultOperation parent, DefaultOperation outer, String displayName, Lease lease) {
             this.parent = parent;
-            this.workerId = workerId;
-            this.ownerThread = ownerThread;
-        }
-
-        @Override
-        String getDisplayName() {
-            return parent.getDisplayName() + '.' + workerId;
-        }
-
-        @Override
-        boolean grantLease() {
-            if (children == 0 || root.grantLease()) {
-                children++;
-                return true;
-            }
-            return false;
-        }
-
-        @Override
-        void releaseLease() {
-            children--;
-            if (children > 0) {
-                root.releaseLease();
-            }
+            this.outer = outer;
+            this.displayName = displayName;
+            this.lease = lease;
+            this.leaseOwner = lease == Lease.NESTED ? outer.leaseOwner : this;
+            this.ownerThread = Thread.currentThread();
         }
 
         @Override
         public Completion operationStart() {
-            return doStartOperation(this);
+            return doStartOperation(this, true);
         }
 
         @Override
         public void operationFinish() {
-            synchronized (lock) {
-                if (Thread.currentThread() != ownerThread) {
-                    // Not implemented - not yet required. Please implement if required
-                    throw new UnsupportedOperationException("Must complete operation from owner thread.");
-                }
+            if (Thread.currentThread() != ownerThread) {
+                // Not implemented - not yet required. Please implement if required
+                throw new UnsupportedOperationException("Must complete operation from owner thread.");
+            }
+            if (currentOperation.get() != this) {
+                throw new IllegalStateException("Operations nested in this operation have not yet completed.");
+            }
 
-                parent.releaseLease();
-                threads.remove(ownerThread);
-                lock.notifyAll();
+            if (lease == Lease.OWN) {
+                leasesInUse.decrementAndGet();
+                leaseReleased();
+            } else if (lease == Lease.BORROWED) {
+                parent.leaseOwner.leaseAvailableToChild.set(true);
+                leaseReleased();
+            }
+            if (parent != null) {
+                parent.children.decrementAndGet();
+            }
+            if (outer != null) {
+                currentOperation.set(outer);
+            } else {
+                currentOperation.remove();
+            }
+            runningOperations.decrementAndGet();
 
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Worker {} completed ({} in use)", getDisplayName(), root.leasesInUse);
-                }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Worker {} completed ({} in use)", displayName, leasesInUse.get());
+            }
 
-                if (children != 0) {
-                    throw new IllegalStateException("Some child operations have not yet completed.");
-                }
+            if (children.get() != 0) {
+                throw new IllegalStateException("Some child operations have not yet completed.");
             }
         }
     }
@@ -160,7 +160,7 @@ class DefaultBuildOperationProcessorTest extends ConcurrentSpec {
     def "operations are canceled when the generator fails"() {
         def buildQueue = Mock(BuildOperationQueue)
         def buildOperationQueueFactory = Mock(BuildOperationQueueFactory) {
-            create(_, _) >> { buildQueue }
+            create(_, _, _) >> { buildQueue }
         }
         def buildOperationProcessor = new DefaultBuildOperationProcessor(buildOperationQueueFactory, Stub(ExecutorFactory), 1)
         def worker = Stub(BuildOperationWorker)
@@ -186,7 +186,7 @@ class DefaultBuildOperationProcessorTest extends ConcurrentSpec {
             waitForCompletion() >> { throw new MultipleBuildOperationFailures("operations failed", operationFailures, null) }
         }
         def buildOperationQueueFactory = Mock(BuildOperationQueueFactory) {
-            create(_, _) >> { buildQueue }
+            create(_, _, _) >> { buildQueue }
         }
         def buildOperationProcessor = new DefaultBuildOperationProcessor(buildOperationQueueFactory, Stub(ExecutorFactory), 1)
         def worker = Stub(BuildOperationWorker)
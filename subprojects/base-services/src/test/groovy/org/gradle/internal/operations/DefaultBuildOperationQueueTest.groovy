@@ -23,7 +23,9 @@ import spock.lang.Specification
 import spock.lang.Unroll
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class DefaultBuildOperationQueueTest extends Specification {
 
@@ -59,7 +61,7 @@ class DefaultBuildOperationQueueTest extends Specification {
 
     void setupQueue(int threads) {
         ListeningExecutorService sameThreadExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads))
-        operationQueue = new DefaultBuildOperationQueue(sameThreadExecutor, new SimpleWorker())
+        operationQueue = new DefaultBuildOperationQueue(sameThreadExecutor, new DefaultBuildOperationWorkerRegistry(threads), new SimpleWorker())
     }
 
     @Unroll
@@ -209,6 +211,53 @@ class DefaultBuildOperationQueueTest extends Specification {
         5    | 10
     }
 
+    def "waiting thread runs operations that have not been started by the executor"() {
+        given:
+        def executor = Mock(Executor)
+        operationQueue = new DefaultBuildOperationQueue(executor, new DefaultBuildOperationWorkerRegistry(1), new SimpleWorker())
+        def success = Mock(TestBuildOperation)
+
+        when:
+        3.times { operationQueue.add(success) }
+        operationQueue.waitForCompletion()
+
+        then:
+        3 * executor.execute(_)
+        3 * success.run()
+    }
+
+    def "executor threads do not wait for a lease, so that queues sharing the executor do not starve each other"() {
+        given:
+        def executor = Executors.newSingleThreadExecutor()
+        def workerRegistry = new DefaultBuildOperationWorkerRegistry(1)
+        def firstQueue = new DefaultBuildOperationQueue(executor, workerRegistry, new SimpleWorker())
+        def secondQueue = new DefaultBuildOperationQueue(executor, workerRegistry, new SimpleWorker())
+        def firstOperation = Mock(TestBuildOperation)
+        def secondOperation = Mock(TestBuildOperation)
+        def executorAvailable = new CountDownLatch(1)
+
+        when:
+        // Another worker holds the only lease
+        def lease = workerRegistry.operationStart()
+        firstQueue.add(firstOperation)
+        secondQueue.add(secondOperation)
+        executor.execute { executorAvailable.countDown() }
+        def executorWasAvailable = executorAvailable.await(5, TimeUnit.SECONDS)
+        lease.operationFinish()
+
+        and:
+        firstQueue.waitForCompletion()
+        secondQueue.waitForCompletion()
+
+        then:
+        executorWasAvailable
+        1 * firstOperation.run()
+        1 * secondOperation.run()
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
     static class SynchronizedBuildOperation extends TestBuildOperation {
         final Runnable operationAction
         final CountDownLatch startedLatch
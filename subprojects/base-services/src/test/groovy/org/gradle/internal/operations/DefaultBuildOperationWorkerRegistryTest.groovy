@@ -69,6 +69,39 @@ class DefaultBuildOperationWorkerRegistryTest extends ConcurrentSpec {
         registry?.stop()
     }
 
+    def "operation does not start without blocking when there are no leases available"() {
+        def registry = new DefaultBuildOperationWorkerRegistry(1)
+        def started = null
+
+        when:
+        async {
+            start {
+                def cl = registry.operationStart()
+                instant.worker1
+                thread.blockUntil.worker2
+                cl.operationFinish()
+            }
+            start {
+                thread.blockUntil.worker1
+                started = registry.tryOperationStart()
+                instant.worker2
+            }
+        }
+
+        then:
+        started == null
+
+        when:
+        def cl = registry.tryOperationStart()
+
+        then:
+        cl != null
+
+        cleanup:
+        cl?.operationFinish()
+        registry?.stop()
+    }
+
     def "child operation starts immediately when there are sufficient leases available"() {
         def registry = new DefaultBuildOperationWorkerRegistry(2)
 
@@ -184,6 +217,29 @@ class DefaultBuildOperationWorkerRegistryTest extends ConcurrentSpec {
         registry?.stop()
     }
 
+    def "operation started by a thread that already has an operation runs on the lease of that operation"() {
+        def registry = new DefaultBuildOperationWorkerRegistry(1)
+
+        given:
+        def outer = registry.operationStart()
+
+        when:
+        def nested = registry.operationStart()
+
+        then:
+        registry.current == nested
+
+        when:
+        nested.operationFinish()
+
+        then:
+        registry.current == outer
+
+        cleanup:
+        outer?.operationFinish()
+        registry?.stop()
+    }
+
     def "can get operation for current thread"() {
         def registry = new DefaultBuildOperationWorkerRegistry(1)
 
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares hashing a set of files with {@link DefaultFileHasher} against copying each file into the hasher as a stream, for sets of files
+ * with different size distributions. Run with {@code -prof gc} to compare the memory allocated for each set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileHasherAllocationBenchmark {
+    private static final byte[] SIGNATURE = Hashing.md5().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
+
+    /**
+     * The kind of files: many small source files, class-file sized outputs, or a few jars.
+     */
+    @Param({"sources", "classes", "jars"})
+    private String files;
+
+    private File tempDir;
+    private List<File> inputs;
+    private FileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        tempDir = Files.createTempDir();
+        Random random = new Random(1234L);
+        if (files.equals("sources")) {
+            inputs = createFiles(random, 2000, 512, 8 * 1024);
+        } else if (files.equals("classes")) {
+            inputs = createFiles(random, 1000, 1024, 64 * 1024);
+        } else {
+            inputs = createFiles(random, 20, 256 * 1024, 8 * 1024 * 1024);
+        }
+        hasher = new DefaultFileHasher();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Benchmark
+    public void hashWithReusedBuffer(Blackhole bh) {
+        for (File input : inputs) {
+            bh.consume(hasher.hash(input));
+        }
+    }
+
+    @Benchmark
+    public void hashWithStreamCopy(Blackhole bh) throws IOException {
+        for (File input : inputs) {
+            Hasher streamHasher = Hashing.md5().newHasher();
+            streamHasher.putBytes(SIGNATURE);
+            Files.copy(input, Funnels.asOutputStream(streamHasher));
+            bh.consume(streamHasher.hash());
+        }
+    }
+
+    private List<File> createFiles(Random random, int count, int minSize, int maxSize) throws IOException {
+        List<File> created = new ArrayList<File>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[minSize + random.nextInt(maxSize - minSize)];
+            random.nextBytes(content);
+            File file = new File(tempDir, "file" + i);
+            Files.write(content, file);
+            created.add(file);
+        }
+        return created;
+    }
+}
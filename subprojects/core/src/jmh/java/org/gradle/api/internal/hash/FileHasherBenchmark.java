@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the file content hash algorithms on files of the sizes of typical inputs: small source and class files,
+ * medium sized resources and large jars.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileHasherBenchmark {
+    @Param({"2048", "262144", "16777216"})
+    private int fileSize;
+
+    @Param({"MD5", "MURMUR3_128"})
+    private FileContentHashAlgorithm algorithm;
+
+    private File tempDir;
+    private File file;
+    private FileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        tempDir = Files.createTempDir();
+        file = new File(tempDir, "input.bin");
+        byte[] content = new byte[fileSize];
+        new Random(1234L).nextBytes(content);
+        Files.write(content, file);
+        hasher = new DefaultFileHasher(algorithm);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Benchmark
+    public Object hash() {
+        return hasher.hash(file);
+    }
+}
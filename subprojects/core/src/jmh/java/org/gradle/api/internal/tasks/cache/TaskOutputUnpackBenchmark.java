@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotter;
+import org.gradle.api.internal.changedetection.state.GenericFileCollectionSnapshotter;
+import org.gradle.api.internal.changedetection.state.SnapshotNormalizationStrategy;
+import org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy;
+import org.gradle.api.internal.changedetection.state.TaskFilePropertySnapshotNormalizationStrategy;
+import org.gradle.api.internal.file.collections.SimpleFileCollection;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
+import org.gradle.api.internal.tasks.properties.CacheableTaskOutputFilePropertySpec;
+import org.gradle.api.internal.tasks.properties.TaskOutputFilePropertySpec;
+import org.gradle.api.internal.tasks.properties.TaskPropertySpec;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.nativeintegration.services.FileSystems;
+import org.gradle.internal.nativeintegration.services.NativeServices;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures unpacking a cached directory output with many class-file sized files, with and without writing files in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskOutputUnpackBenchmark {
+    private static final Random RANDOM = new Random(1234L);
+
+    @Param({"10000"})
+    private int fileCount;
+
+    @Param({"true", "false"})
+    private boolean parallel;
+
+    private File tempDir;
+    private File targetDir;
+    private DefaultExecutorFactory executorFactory;
+    private TaskOutputPacker packer;
+    private byte[] packed;
+
+    @Setup(Level.Trial)
+    public void packOutput() throws Exception {
+        tempDir = Files.createTempDir();
+        NativeServices.initialize(new File(tempDir, "native"));
+        executorFactory = new DefaultExecutorFactory();
+        TarTaskOutputPacker tarPacker = parallel
+            ? new TarTaskOutputPacker(FileSystems.getDefault(), executorFactory)
+            : new TarTaskOutputPacker(FileSystems.getDefault());
+        packer = new CompressingTaskOutputPacker(tarPacker, TaskOutputCompression.GZIP);
+
+        File sourceDir = new File(tempDir, "source");
+        for (int i = 0; i < fileCount; i++) {
+            // Spread the files over packages, like the output of a Java compiler
+            File file = new File(sourceDir, "package" + (i % 100) + "/Class" + i + ".class");
+            byte[] contents = new byte[1024 + RANDOM.nextInt(4096)];
+            RANDOM.nextBytes(contents);
+            Files.createParentDirs(file);
+            Files.write(contents, file);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packer.pack(outputsFor(sourceDir), output);
+        packed = output.toByteArray();
+        targetDir = new File(tempDir, "target");
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanTarget() throws Exception {
+        FileUtils.deleteDirectory(targetDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws Exception {
+        executorFactory.stop();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Benchmark
+    public void unpack() throws Exception {
+        packer.unpack(outputsFor(targetDir), new ByteArrayInputStream(packed));
+    }
+
+    private static TaskOutputsInternal outputsFor(File directory) {
+        final SortedSet<TaskOutputFilePropertySpec> properties = ImmutableSortedSet.<TaskOutputFilePropertySpec>of(new DirectoryProperty(directory));
+        return (TaskOutputsInternal) Proxy.newProxyInstance(TaskOutputsInternal.class.getClassLoader(), new Class<?>[]{TaskOutputsInternal.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getFileProperties")) {
+                    return properties;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static class DirectoryProperty implements CacheableTaskOutputFilePropertySpec {
+        private final File directory;
+
+        private DirectoryProperty(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public File getOutputFile() {
+            return directory;
+        }
+
+        @Override
+        public OutputType getOutputType() {
+            return OutputType.DIRECTORY;
+        }
+
+        @Override
+        public FileCollection getPropertyFiles() {
+            return new SimpleFileCollection(directory);
+        }
+
+        @Override
+        public Class<? extends FileCollectionSnapshotter> getSnapshotter() {
+            return GenericFileCollectionSnapshotter.class;
+        }
+
+        @Override
+        public TaskFilePropertyCompareStrategy getCompareStrategy() {
+            return TaskFilePropertyCompareStrategy.OUTPUT;
+        }
+
+        @Override
+        public SnapshotNormalizationStrategy getSnapshotNormalizationStrategy() {
+            return TaskFilePropertySnapshotNormalizationStrategy.RELATIVE;
+        }
+
+        @Override
+        public String getPropertyName() {
+            return "classes";
+        }
+
+        @Override
+        public int compareTo(TaskPropertySpec o) {
+            return getPropertyName().compareTo(o.getPropertyName());
+        }
+    }
+}
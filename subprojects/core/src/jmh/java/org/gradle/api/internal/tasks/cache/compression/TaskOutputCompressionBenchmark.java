@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares packing and unpacking throughput of the task output compression codecs on data resembling typical task outputs.
+ * The compression ratio of each combination is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TaskOutputCompressionBenchmark {
+    private static final int OUTPUT_SIZE = 16 * 1024 * 1024;
+    private static final String[] IDENTIFIERS = {
+        "java/lang/Object", "java/lang/String", "java/util/List", "java/util/Map", "org/gradle/api/Project",
+        "<init>", "()V", "(Ljava/lang/String;)V", "Code", "LineNumberTable", "LocalVariableTable", "this", "getName", "setName",
+    };
+
+    /**
+     * The kind of output: class files like the ones produced by {@code JavaCompile}, XML reports like the ones
+     * produced by {@code Test}, or already compressed files like JARs.
+     */
+    @Param({"classes", "test-reports", "jars"})
+    private String output;
+
+    @Param({"gzip", "lz4", "store"})
+    private String compression;
+
+    private TaskOutputCompression codec;
+    private byte[] uncompressed;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void generateOutput() throws IOException {
+        codec = TaskOutputCompression.forDisplayName(compression);
+        Random random = new Random(1234L);
+        if (output.equals("classes")) {
+            uncompressed = classFiles(random);
+        } else if (output.equals("test-reports")) {
+            uncompressed = testReports(random);
+        } else {
+            uncompressed = new byte[OUTPUT_SIZE];
+            random.nextBytes(uncompressed);
+        }
+        compressed = compress();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportRatio() {
+        System.out.println(String.format("%n%s compressed %s from %d to %d bytes (ratio %.2f)", compression, output, uncompressed.length, compressed.length, (double) uncompressed.length / compressed.length));
+    }
+
+    @Benchmark
+    public void pack(Blackhole bh) throws IOException {
+        bh.consume(compress());
+    }
+
+    @Benchmark
+    public void unpack(Blackhole bh) throws IOException {
+        InputStream input = codec.decompress(new ByteArrayInputStream(compressed));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            bh.consume(read);
+        }
+        input.close();
+    }
+
+    private byte[] compress() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(uncompressed.length);
+        OutputStream output = codec.compress(bytes);
+        ByteStreams.copy(new ByteArrayInputStream(uncompressed), output);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] classFiles(Random random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(OUTPUT_SIZE);
+        while (bytes.size() < OUTPUT_SIZE) {
+            // Magic number and version, then a constant pool of common identifiers, then bytecode
+            writeBytes(bytes, new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 50});
+            for (int i = 0; i < 20 + random.nextInt(40); i++) {
+                writeBytes(bytes, IDENTIFIERS[random.nextInt(IDENTIFIERS.length)].getBytes());
+                writeBytes(bytes, ("Type" + random.nextInt(500)).getBytes());
+            }
+            byte[] code = new byte[500 + random.nextInt(2000)];
+            for (int i = 0; i < code.length; i++) {
+                // Bytecode uses a small set of common opcodes
+                code[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 0x2A + random.nextInt(16));
+            }
+            writeBytes(bytes, code);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] testReports(Random random) {
+        StringBuilder report = new StringBuilder(OUTPUT_SIZE);
+        while (report.length() < OUTPUT_SIZE) {
+            report.append("  <testcase name=\"test").append(random.nextInt(10000))
+                .append("\" classname=\"org.gradle.sample.SampleTest").append(random.nextInt(100))
+                .append("\" time=\"").append(random.nextInt(1000) / 1000.0).append("\"/>\n");
+            if (random.nextInt(20) == 0) {
+                report.append("  <system-out><![CDATA[Running test ").append(random.nextLong()).append("]]></system-out>\n");
+            }
+        }
+        return report.toString().getBytes();
+    }
+
+    private static void writeBytes(ByteArrayOutputStream output, byte[] bytes) {
+        output.write(bytes, 0, bytes.length);
+    }
+}
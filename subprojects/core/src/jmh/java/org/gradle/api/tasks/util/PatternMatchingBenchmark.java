@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.tasks.util;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.pattern.PatternMatcherFactory;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.specs.Specs;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares matching paths against the patterns of a {@link PatternSet} one pattern at a time, as done before, with matching them against
+ * all of the patterns compiled together. Uses the default excludes and the kind of includes found in Java and Groovy builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PatternMatchingBenchmark {
+    private static final List<String> INCLUDES = Arrays.asList("**/*.java", "**/*.groovy", "**/*.properties", "org/gradle/**/internal/**", "META-INF/**");
+
+    @Param({"perPattern", "combined"})
+    private String matcher;
+
+    private Spec<RelativePath> includeSpec;
+    private Spec<RelativePath> excludeSpec;
+    private List<RelativePath> paths;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> excludes = Arrays.asList(DirectoryScanner.getDefaultExcludes());
+        if (matcher.equals("perPattern")) {
+            includeSpec = perPattern(true, INCLUDES);
+            excludeSpec = perPattern(false, excludes);
+        } else {
+            includeSpec = PatternMatcherFactory.getPatternsMatcher(true, true, INCLUDES);
+            excludeSpec = PatternMatcherFactory.getPatternsMatcher(false, true, excludes);
+        }
+
+        paths = new ArrayList<RelativePath>();
+        String[] packages = {"org/gradle/api", "org/gradle/api/internal/file", "org/gradle/internal/service", "com/acme/app/model"};
+        String[] extensions = {".java", ".groovy", ".properties", ".xml", ".txt~"};
+        for (String packageName : packages) {
+            paths.add(RelativePath.parse(false, packageName));
+            for (int i = 0; i < 50; i++) {
+                paths.add(RelativePath.parse(true, packageName + "/Type" + i + extensions[i % extensions.length]));
+            }
+        }
+        paths.add(RelativePath.parse(false, "org/gradle/.git"));
+        paths.add(RelativePath.parse(true, "META-INF/MANIFEST.MF"));
+    }
+
+    private static Spec<RelativePath> perPattern(boolean include, List<String> patterns) {
+        List<Spec<RelativePath>> matchers = new ArrayList<Spec<RelativePath>>(patterns.size());
+        for (String pattern : patterns) {
+            matchers.add(PatternMatcherFactory.getPatternMatcher(include, true, pattern));
+        }
+        return Specs.union(matchers);
+    }
+
+    @Benchmark
+    public int match() {
+        int matched = 0;
+        for (RelativePath path : paths) {
+            if (includeSpec.isSatisfiedBy(path) && !excludeSpec.isSatisfiedBy(path)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
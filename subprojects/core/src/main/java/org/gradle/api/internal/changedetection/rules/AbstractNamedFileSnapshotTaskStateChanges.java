@@ -30,6 +30,7 @@ import org.gradle.api.internal.tasks.properties.TaskFilePropertySpec;
 import org.gradle.util.ChangeListener;
 import org.gradle.util.DiffUtil;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -45,13 +46,20 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
     protected final TaskExecution current;
 
     protected AbstractNamedFileSnapshotTaskStateChanges(String taskName, TaskExecution previous, TaskExecution current, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, SortedSet<? extends TaskFilePropertySpec> fileProperties) {
+        this(taskName, previous, current, snapshotterRegistry, title, fileProperties, Collections.<String, FileCollectionSnapshot>emptyMap());
+    }
+
+    /**
+     * @param existingSnapshots snapshots of the properties that are known to be current, keyed by property name. Properties not included here are snapshot.
+     */
+    protected AbstractNamedFileSnapshotTaskStateChanges(String taskName, TaskExecution previous, TaskExecution current, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, SortedSet<? extends TaskFilePropertySpec> fileProperties, Map<String, FileCollectionSnapshot> existingSnapshots) {
         this.taskName = taskName;
         this.previous = previous;
         this.current = current;
         this.snapshotterRegistry = snapshotterRegistry;
         this.title = title;
         this.fileProperties = fileProperties;
-        this.fileSnapshotsBeforeExecution = buildSnapshots(taskName, snapshotterRegistry, title, fileProperties);
+        this.fileSnapshotsBeforeExecution = buildSnapshots(taskName, snapshotterRegistry, title, fileProperties, existingSnapshots);
     }
 
     protected String getTaskName() {
@@ -79,9 +87,17 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
     }
 
     protected static Map<String, FileCollectionSnapshot> buildSnapshots(String taskName, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, SortedSet<? extends TaskFilePropertySpec> fileProperties) {
+        return buildSnapshots(taskName, snapshotterRegistry, title, fileProperties, Collections.<String, FileCollectionSnapshot>emptyMap());
+    }
+
+    private static Map<String, FileCollectionSnapshot> buildSnapshots(String taskName, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, SortedSet<? extends TaskFilePropertySpec> fileProperties, Map<String, FileCollectionSnapshot> existingSnapshots) {
         ImmutableMap.Builder<String, FileCollectionSnapshot> builder = ImmutableMap.builder();
         for (TaskFilePropertySpec propertySpec : fileProperties) {
-            FileCollectionSnapshot result;
+            FileCollectionSnapshot result = existingSnapshots.get(propertySpec.getPropertyName());
+            if (result != null) {
+                builder.put(propertySpec.getPropertyName(), result);
+                continue;
+            }
             try {
                 FileCollectionSnapshotter snapshotter = snapshotterRegistry.getSnapshotter(propertySpec.getSnapshotter());
                 result = snapshotter.snapshot(propertySpec.getPropertyFiles(), propertySpec.getCompareStrategy(), propertySpec.getSnapshotNormalizationStrategy());
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.rules;
+
+import org.gradle.api.internal.changedetection.state.TaskExecution;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
+
+import java.util.List;
+
+/**
+ * Reports a change when the file snapshots of the previous execution were hashed with a different algorithm, as none of its file hashes can be compared.
+ */
+class FileContentHashAlgorithmTaskStateChanges extends SimpleTaskStateChanges {
+    private final TaskExecution previousExecution;
+    private final TaskExecution currentExecution;
+
+    public FileContentHashAlgorithmTaskStateChanges(TaskExecution previousExecution, TaskExecution currentExecution) {
+        this.previousExecution = previousExecution;
+        this.currentExecution = currentExecution;
+    }
+
+    @Override
+    protected void addAllChanges(List<TaskStateChange> changes) {
+        FileContentHashAlgorithm previousAlgorithm = previousExecution.getFileContentHashAlgorithm();
+        FileContentHashAlgorithm currentAlgorithm = currentExecution.getFileContentHashAlgorithm();
+        if (previousAlgorithm != currentAlgorithm) {
+            changes.add(new DescriptiveChange("File content hash algorithm has changed from %s to %s.", previousAlgorithm, currentAlgorithm));
+        }
+    }
+}
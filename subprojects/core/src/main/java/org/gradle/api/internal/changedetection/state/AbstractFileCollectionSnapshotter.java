@@ -18,6 +18,7 @@ package org.gradle.api.internal.changedetection.state;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
@@ -27,43 +28,33 @@ import org.gradle.api.internal.file.FileCollectionVisitor;
 import org.gradle.api.internal.file.FileTreeInternal;
 import org.gradle.api.internal.file.collections.DirectoryFileTree;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
-import org.gradle.api.internal.file.collections.SingletonFileTree;
 import org.gradle.api.internal.hash.FileHasher;
-import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
-import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.serialize.SerializerRegistry;
 
 import java.io.File;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static org.gradle.api.internal.changedetection.state.FileDetails.FileType.*;
 
 /**
  * Responsible for calculating a {@link FileCollectionSnapshot} for a particular {@link FileCollection}.
  *
- * <p>Implementation performs some in-memory caching, should be notified of potential changes by calling {@link #beforeTaskOutputsGenerated()}.</p>
+ * <p>Implementation uses a {@link DirectoryTreeSnapshotCache} for root files and directory trees, which should be notified of potential changes.</p>
  */
-public abstract class AbstractFileCollectionSnapshotter implements FileCollectionSnapshotter, TaskOutputsGenerationListener {
+public abstract class AbstractFileCollectionSnapshotter implements FileCollectionSnapshotter {
     private final FileHasher hasher;
     private final StringInterner stringInterner;
-    private final FileSystem fileSystem;
     private final DirectoryFileTreeFactory directoryFileTreeFactory;
-    // Map from interned absolute path for a file to known details for the file. Currently used only for root files, not those nested in a directory
-    private final Map<String, DefaultFileDetails> rootFiles = new ConcurrentHashMap<String, DefaultFileDetails>();
+    private final DirectoryTreeSnapshotCache directoryTreeSnapshotCache;
+    private final ParallelFileHasher parallelFileHasher;
 
-    public AbstractFileCollectionSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory) {
+    public AbstractFileCollectionSnapshotter(FileHasher hasher, StringInterner stringInterner, DirectoryFileTreeFactory directoryFileTreeFactory, DirectoryTreeSnapshotCache directoryTreeSnapshotCache, ParallelFileHasher parallelFileHasher) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
-        this.fileSystem = fileSystem;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
-    }
-
-    @Override
-    public void beforeTaskOutputsGenerated() {
-        // When the task outputs are generated, throw away all cached state. This is intentionally very simple, to be improved later
-        rootFiles.clear();
+        this.directoryTreeSnapshotCache = directoryTreeSnapshotCache;
+        this.parallelFileHasher = parallelFileHasher;
     }
 
     public void registerSerializers(SerializerRegistry registry) {
@@ -81,6 +72,14 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
             return FileCollectionSnapshot.EMPTY;
         }
 
+        List<DefaultFileDetails> unhashedFiles = Lists.newArrayList();
+        for (DefaultFileDetails fileDetails : fileTreeElements) {
+            if (fileDetails.getType() == RegularFile && !fileDetails.hasContentHash()) {
+                unhashedFiles.add(fileDetails);
+            }
+        }
+        parallelFileHasher.hashContents(unhashedFiles, hasher);
+
         Map<String, NormalizedFileSnapshot> snapshots = Maps.newLinkedHashMap();
         for (DefaultFileDetails fileDetails : fileTreeElements) {
             String absolutePath = fileDetails.path;
@@ -94,7 +93,7 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
                         snapshot = DirSnapshot.getInstance();
                         break;
                     case RegularFile:
-                        snapshot = new FileHashSnapshot(hasher.hash(fileDetails.details), fileDetails.details.getLastModified());
+                        snapshot = new FileHashSnapshot(getContentHash(fileDetails), fileDetails.details.getLastModified());
                         break;
                     default:
                         throw new AssertionError();
@@ -105,7 +104,14 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
                 }
             }
         }
-        return new DefaultFileCollectionSnapshot(snapshots, compareStrategy, snapshotNormalizationStrategy.isPathAbsolute());
+        return new DefaultFileCollectionSnapshot(CompactNormalizedFileSnapshotMap.copyOf(snapshots), compareStrategy, snapshotNormalizationStrategy.isPathAbsolute());
+    }
+
+    /**
+     * Returns the hash used to detect changes to the given regular file.
+     */
+    protected HashCode getContentHash(DefaultFileDetails fileDetails) {
+        return fileDetails.getContentHash(hasher);
     }
 
     private class FileCollectionVisitorImpl implements FileCollectionVisitor {
@@ -118,11 +124,7 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
         @Override
         public void visitCollection(FileCollectionInternal fileCollection) {
             for (File file : fileCollection) {
-                DefaultFileDetails details = rootFiles.get(file.getPath());
-                if (details == null) {
-                    details = calculateDetails(file);
-                    rootFiles.put(details.path, details);
-                }
+                DefaultFileDetails details = directoryTreeSnapshotCache.getRootFileDetails(file);
                 switch (details.type) {
                     case Missing:
                     case RegularFile:
@@ -139,17 +141,6 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
             }
         }
 
-        private DefaultFileDetails calculateDetails(File file) {
-            String path = getPath(file);
-            if (!file.exists()) {
-                return new DefaultFileDetails(path, Missing, new MissingFileVisitDetails(file));
-            } else if (file.isDirectory()) {
-                return new DefaultFileDetails(path, Directory, new SingletonFileTree.SingletonFileVisitDetails(file, fileSystem, true));
-            } else {
-                return new DefaultFileDetails(path, RegularFile, new SingletonFileTree.SingletonFileVisitDetails(file, fileSystem, false));
-            }
-        }
-
         @Override
         public void visitTree(FileTreeInternal fileTree) {
             AbstractFileCollectionSnapshotter.this.visitTreeOrBackingFile(fileTree, fileTreeElements);
@@ -170,7 +161,7 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
     }
 
     protected void visitDirectoryTree(DirectoryFileTree directoryTree, List<DefaultFileDetails> fileTreeElements) {
-        directoryTree.visit(new FileVisitorImpl(fileTreeElements));
+        fileTreeElements.addAll(directoryTreeSnapshotCache.getDirectoryTreeDetails(directoryTree));
     }
 
     private class FileVisitorImpl implements FileVisitor {
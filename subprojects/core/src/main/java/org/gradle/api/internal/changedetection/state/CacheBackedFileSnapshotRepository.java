@@ -15,23 +15,40 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.gradle.cache.PersistentIndexedCache;
-import org.gradle.internal.id.IdGenerator;
-import org.gradle.internal.id.RandomLongIdGenerator;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.serialize.BaseSerializerFactory;
 import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+/**
+ * Stores each distinct file collection snapshot once, using a hash of its serialized form as its id.
+ *
+ * <p>Tasks that snapshot the same files, such as the tasks sharing a classpath, reference the same entry. The repository counts the
+ * references to each entry, and removes the entry when the last one is removed.</p>
+ */
 public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository {
     private final PersistentIndexedCache<Long, FileCollectionSnapshot> cache;
-    private IdGenerator<Long> idGenerator = new RandomLongIdGenerator();
+    private final PersistentIndexedCache<Long, Long> references;
+    private final Serializer<FileCollectionSnapshot> serializer;
 
-    public CacheBackedFileSnapshotRepository(TaskHistoryStore cacheAccess, Serializer<FileCollectionSnapshot> serializer, IdGenerator<Long> idGenerator) {
-        this.idGenerator = idGenerator;
+    public CacheBackedFileSnapshotRepository(TaskHistoryStore cacheAccess, Serializer<FileCollectionSnapshot> serializer) {
+        this.serializer = serializer;
         cache = cacheAccess.createCache("fileSnapshots", Long.class, serializer);
+        references = cacheAccess.createCache("fileSnapshotReferences", Long.class, BaseSerializerFactory.LONG_SERIALIZER);
     }
 
-    public Long add(FileCollectionSnapshot snapshot) {
-        Long id = idGenerator.generateId();
-        cache.put(id, snapshot);
+    public synchronized Long add(FileCollectionSnapshot snapshot) {
+        Long id = idOf(snapshot);
+        Long count = references.get(id);
+        if (count == null) {
+            cache.put(id, snapshot);
+            count = 0L;
+        }
+        references.put(id, count + 1);
         return id;
     }
 
@@ -39,7 +56,25 @@ public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository
         return cache.get(id);
     }
 
-    public void remove(Long id) {
-        cache.remove(id);
+    public synchronized void remove(Long id) {
+        Long count = references.get(id);
+        if (count == null || count <= 1) {
+            cache.remove(id);
+            references.remove(id);
+        } else {
+            references.put(id, count - 1);
+        }
+    }
+
+    private Long idOf(FileCollectionSnapshot snapshot) {
+        Hasher hasher = Hashing.md5().newHasher();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(Funnels.asOutputStream(hasher));
+        try {
+            serializer.write(encoder, snapshot);
+            encoder.flush();
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return hasher.hash().asLong();
     }
 }
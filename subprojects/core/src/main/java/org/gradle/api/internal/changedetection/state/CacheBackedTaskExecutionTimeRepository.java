@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+
+public class CacheBackedTaskExecutionTimeRepository implements TaskExecutionTimeRepository {
+    private final PersistentIndexedCache<String, Long> cache;
+
+    public CacheBackedTaskExecutionTimeRepository(TaskHistoryStore cacheAccess) {
+        this(cacheAccess, "taskExecutionTimes");
+    }
+
+    /**
+     * Creates a repository backed by the cache with the given name, for times measured differently from those of the default cache.
+     */
+    public CacheBackedTaskExecutionTimeRepository(TaskHistoryStore cacheAccess, String cacheName) {
+        cache = cacheAccess.createCache(cacheName, String.class, BaseSerializerFactory.LONG_SERIALIZER);
+    }
+
+    @Override
+    public Long getLastExecutionTime(String taskPath) {
+        return cache.get(taskPath);
+    }
+
+    @Override
+    public void recordExecutionTime(String taskPath, long executionTime) {
+        cache.put(taskPath, executionTime);
+    }
+}
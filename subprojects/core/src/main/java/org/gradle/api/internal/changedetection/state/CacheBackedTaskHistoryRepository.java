@@ -26,6 +26,7 @@ import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.properties.CacheableTaskOutputFilePropertySpec;
 import org.gradle.api.internal.tasks.properties.TaskOutputFilePropertySpec;
@@ -54,10 +55,12 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
     private final PersistentIndexedCache<String, ImmutableList<TaskExecutionSnapshot>> taskHistoryCache;
     private final TaskExecutionListSerializer serializer;
     private final StringInterner stringInterner;
+    private final FileContentHashAlgorithm fileContentHashAlgorithm;
 
-    public CacheBackedTaskHistoryRepository(TaskHistoryStore cacheAccess, FileSnapshotRepository snapshotRepository, StringInterner stringInterner) {
+    public CacheBackedTaskHistoryRepository(TaskHistoryStore cacheAccess, FileSnapshotRepository snapshotRepository, StringInterner stringInterner, FileContentHashAlgorithm fileContentHashAlgorithm) {
         this.snapshotRepository = snapshotRepository;
         this.stringInterner = stringInterner;
+        this.fileContentHashAlgorithm = fileContentHashAlgorithm;
         this.serializer = new TaskExecutionListSerializer(stringInterner);
         taskHistoryCache = cacheAccess.createCache("taskArtifacts", String.class, serializer);
     }
@@ -68,6 +71,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
         currentExecution.snapshotRepository = snapshotRepository;
         currentExecution.setOutputPropertyNamesForCacheKey(getOutputPropertyNamesForCacheKey(task));
         currentExecution.setDeclaredOutputFilePaths(getDeclaredOutputFilePaths(task));
+        currentExecution.setFileContentHashAlgorithm(fileContentHashAlgorithm);
         final LazyTaskExecution previousExecution = findBestMatchingPreviousExecution(currentExecution, previousExecutions.executions);
         if (previousExecution != null) {
             previousExecution.snapshotRepository = snapshotRepository;
@@ -278,6 +282,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
             setInputProperties(new HashMap<String, Object>(taskExecutionSnapshot.getInputProperties()));
             setOutputPropertyNamesForCacheKey(taskExecutionSnapshot.getCacheableOutputProperties());
             setDeclaredOutputFilePaths(taskExecutionSnapshot.getDeclaredOutputFilePaths());
+            setFileContentHashAlgorithm(taskExecutionSnapshot.getFileContentHashAlgorithm());
             inputFilesSnapshotIds = taskExecutionSnapshot.getInputFilesSnapshotIds();
             outputFilesSnapshotIds = taskExecutionSnapshot.getOutputFilesSnapshotIds();
             discoveredFilesSnapshotId = taskExecutionSnapshot.getDiscoveredFilesSnapshotId();
@@ -347,7 +352,8 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                 new HashMap<String, Object>(getInputProperties()),
                 inputFilesSnapshotIds,
                 discoveredFilesSnapshotId,
-                outputFilesSnapshotIds);
+                outputFilesSnapshotIds,
+                getFileContentHashAlgorithm());
         }
 
         static class TaskExecutionSnapshotSerializer implements Serializer<TaskExecutionSnapshot> {
@@ -364,6 +370,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                 ImmutableSortedMap<String, Long> outputFilesSnapshotIds = readSnapshotIds(decoder);
                 Long discoveredFilesSnapshotId = decoder.readLong();
                 String taskClass = decoder.readString();
+                FileContentHashAlgorithm fileContentHashAlgorithm = FileContentHashAlgorithm.values()[decoder.readSmallInt()];
                 HashCode taskClassLoaderHash = null;
                 if (decoder.readBoolean()) {
                     taskClassLoaderHash = HashCode.fromBytes(decoder.readBinary());
@@ -403,7 +410,8 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                     inputProperties,
                     inputFilesSnapshotIds,
                     discoveredFilesSnapshotId,
-                    outputFilesSnapshotIds
+                    outputFilesSnapshotIds,
+                    fileContentHashAlgorithm
                 );
             }
 
@@ -412,6 +420,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                 writeSnapshotIds(encoder, execution.getOutputFilesSnapshotIds());
                 encoder.writeLong(execution.getDiscoveredFilesSnapshotId());
                 encoder.writeString(execution.getTaskClass());
+                encoder.writeSmallInt(execution.getFileContentHashAlgorithm().ordinal());
                 HashCode classLoaderHash = execution.getTaskClassLoaderHash();
                 if (classLoaderHash == null) {
                     encoder.writeBoolean(false);
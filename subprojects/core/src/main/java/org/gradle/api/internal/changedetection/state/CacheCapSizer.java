@@ -26,8 +26,11 @@ class CacheCapSizer {
 
     static {
         DEFAULT_CAP_SIZES.put("fileSnapshots", 10000);
+        DEFAULT_CAP_SIZES.put("fileSnapshotReferences", 10000);
         DEFAULT_CAP_SIZES.put("taskArtifacts", 2000);
+        DEFAULT_CAP_SIZES.put("taskExecutionTimes", 2000);
         DEFAULT_CAP_SIZES.put("fileHashes", 400000);
+        DEFAULT_CAP_SIZES.put("jarContentHashes", 10000);
         DEFAULT_CAP_SIZES.put("compilationState", 1000);
     }
 
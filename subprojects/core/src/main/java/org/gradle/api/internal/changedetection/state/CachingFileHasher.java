@@ -19,6 +19,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.hash.HashCode;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
 import org.gradle.api.internal.hash.FileHasher;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentStore;
@@ -33,10 +34,19 @@ import java.io.File;
 public class CachingFileHasher implements FileHasher {
     private final PersistentIndexedCache<String, FileInfo> cache;
     private final FileHasher delegate;
+    private final FileContentHashAlgorithm algorithm;
     private final StringInterner stringInterner;
 
     public CachingFileHasher(FileHasher delegate, PersistentStore store, StringInterner stringInterner) {
+        this(delegate, FileContentHashAlgorithm.MD5, store, stringInterner);
+    }
+
+    /**
+     * @param algorithm the algorithm used by the delegate. Cached hashes calculated with a different algorithm are ignored.
+     */
+    public CachingFileHasher(FileHasher delegate, FileContentHashAlgorithm algorithm, PersistentStore store, StringInterner stringInterner) {
         this.delegate = delegate;
+        this.algorithm = algorithm;
         this.cache = store.createCache("fileHashes", String.class, new FileInfoSerializer());
         this.stringInterner = stringInterner;
     }
@@ -72,12 +82,12 @@ public class CachingFileHasher implements FileHasher {
         String absolutePath = file.getAbsolutePath();
         FileInfo info = cache.get(absolutePath);
 
-        if (info != null && length == info.length && timestamp == info.timestamp) {
+        if (info != null && length == info.length && timestamp == info.timestamp && algorithm == info.algorithm) {
             return info;
         }
 
         HashCode hash = delegate.hash(file);
-        info = new FileInfo(hash, length, timestamp);
+        info = new FileInfo(hash, length, timestamp, algorithm);
         cache.put(stringInterner.intern(absolutePath), info);
         return info;
     }
@@ -87,11 +97,13 @@ public class CachingFileHasher implements FileHasher {
         private final HashCode hash;
         private final long timestamp;
         private final long length;
+        private final FileContentHashAlgorithm algorithm;
 
-        public FileInfo(HashCode hash, long length, long timestamp) {
+        public FileInfo(HashCode hash, long length, long timestamp, FileContentHashAlgorithm algorithm) {
             this.hash = hash;
             this.length = length;
             this.timestamp = timestamp;
+            this.algorithm = algorithm;
         }
 
         public HashCode getHash() {
@@ -106,13 +118,15 @@ public class CachingFileHasher implements FileHasher {
             HashCode hash = hashCodeSerializer.read(decoder);
             long timestamp = decoder.readLong();
             long length = decoder.readLong();
-            return new FileInfo(hash, length, timestamp);
+            FileContentHashAlgorithm algorithm = FileContentHashAlgorithm.values()[decoder.readSmallInt()];
+            return new FileInfo(hash, length, timestamp, algorithm);
         }
 
         public void write(Encoder encoder, FileInfo value) throws Exception {
             hashCodeSerializer.write(encoder, value.hash);
             encoder.writeLong(value.timestamp);
             encoder.writeLong(value.length);
+            encoder.writeSmallInt(value.algorithm.ordinal());
         }
     }
 }
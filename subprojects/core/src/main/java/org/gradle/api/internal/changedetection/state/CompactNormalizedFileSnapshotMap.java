@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.hash.HashCode;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from absolute path to {@link NormalizedFileSnapshot} that keeps the snapshots in a few arrays instead of an object graph per file.
+ *
+ * <p>The entries keep the order of the map they were copied from. Lookups by path use a table of the entries sorted by path. The
+ * snapshots are recreated as short-lived objects when they are read, so a retained snapshot of a large file collection only costs
+ * the arrays.</p>
+ */
+class CompactNormalizedFileSnapshotMap extends AbstractMap<String, NormalizedFileSnapshot> {
+    private static final byte DIR_SNAPSHOT = 1;
+    private static final byte MISSING_FILE_SNAPSHOT = 2;
+    private static final byte REGULAR_FILE_SNAPSHOT = 3;
+
+    private static final byte NO_NORMALIZATION = 1 << 2;
+    private static final byte DEFAULT_NORMALIZATION = 2 << 2;
+    private static final byte INDEXED_NORMALIZATION = 3 << 2;
+    private static final byte IGNORED_PATH_NORMALIZATION = 4 << 2;
+
+    private static final int FILE_SNAPSHOT_MASK = 3;
+    private static final int NORMALIZATION_MASK = 7 << 2;
+
+    private final String[] absolutePaths;
+    // Positions of the entries ordered by absolute path
+    private final int[] sortedPositions;
+    private final byte[] kinds;
+    private final int hashLength;
+    private final byte[] hashes;
+    // Null when no entry has a timestamp, as for snapshots read from the task history
+    private final long[] lastModified;
+    // Null when no entry uses the normalization
+    private final String[] normalizedPaths;
+    private final int[] normalizedPathIndexes;
+    private Set<String> keySet;
+    private Set<Entry<String, NormalizedFileSnapshot>> entrySet;
+
+    private CompactNormalizedFileSnapshotMap(String[] absolutePaths, int[] sortedPositions, byte[] kinds, int hashLength, byte[] hashes, long[] lastModified, String[] normalizedPaths, int[] normalizedPathIndexes) {
+        this.absolutePaths = absolutePaths;
+        this.sortedPositions = sortedPositions;
+        this.kinds = kinds;
+        this.hashLength = hashLength;
+        this.hashes = hashes;
+        this.lastModified = lastModified;
+        this.normalizedPaths = normalizedPaths;
+        this.normalizedPathIndexes = normalizedPathIndexes;
+    }
+
+    /**
+     * Returns a compact copy of the given snapshots, or the given snapshots when they cannot be represented compactly.
+     */
+    static Map<String, NormalizedFileSnapshot> copyOf(Map<String, NormalizedFileSnapshot> snapshots) {
+        if (snapshots.isEmpty() || snapshots instanceof CompactNormalizedFileSnapshotMap) {
+            return snapshots;
+        }
+        int size = snapshots.size();
+        final String[] absolutePaths = new String[size];
+        byte[] kinds = new byte[size];
+        int hashLength = -1;
+        byte[] hashes = null;
+        long[] lastModified = null;
+        String[] normalizedPaths = null;
+        int[] normalizedPathIndexes = null;
+
+        int position = 0;
+        for (Entry<String, NormalizedFileSnapshot> entry : snapshots.entrySet()) {
+            NormalizedFileSnapshot normalizedSnapshot = entry.getValue();
+            IncrementalFileSnapshot snapshot = normalizedSnapshot.getSnapshot();
+            absolutePaths[position] = entry.getKey();
+
+            byte kind;
+            if (snapshot instanceof DirSnapshot) {
+                kind = DIR_SNAPSHOT;
+            } else if (snapshot instanceof MissingFileSnapshot) {
+                kind = MISSING_FILE_SNAPSHOT;
+            } else if (snapshot instanceof FileHashSnapshot) {
+                kind = REGULAR_FILE_SNAPSHOT;
+                byte[] hash = snapshot.getHash().asBytes();
+                if (hashes == null) {
+                    hashLength = hash.length;
+                    hashes = new byte[size * hashLength];
+                } else if (hash.length != hashLength) {
+                    return snapshots;
+                }
+                System.arraycopy(hash, 0, hashes, position * hashLength, hashLength);
+                long timestamp = ((FileHashSnapshot) snapshot).getLastModified();
+                if (timestamp != 0) {
+                    if (lastModified == null) {
+                        lastModified = new long[size];
+                    }
+                    lastModified[position] = timestamp;
+                }
+            } else {
+                return snapshots;
+            }
+
+            if (normalizedSnapshot instanceof NonNormalizedFileSnapshot) {
+                kind |= NO_NORMALIZATION;
+            } else if (normalizedSnapshot instanceof DefaultNormalizedFileSnapshot) {
+                kind |= DEFAULT_NORMALIZATION;
+                if (normalizedPaths == null) {
+                    normalizedPaths = new String[size];
+                }
+                normalizedPaths[position] = normalizedSnapshot.getNormalizedPath();
+            } else if (normalizedSnapshot instanceof IndexedNormalizedFileSnapshot) {
+                IndexedNormalizedFileSnapshot indexedSnapshot = (IndexedNormalizedFileSnapshot) normalizedSnapshot;
+                if (!indexedSnapshot.getAbsolutePath().equals(entry.getKey())) {
+                    return snapshots;
+                }
+                kind |= INDEXED_NORMALIZATION;
+                if (normalizedPathIndexes == null) {
+                    normalizedPathIndexes = new int[size];
+                }
+                normalizedPathIndexes[position] = indexedSnapshot.getIndex();
+            } else if (normalizedSnapshot instanceof IgnoredPathFileSnapshot) {
+                kind |= IGNORED_PATH_NORMALIZATION;
+            } else {
+                return snapshots;
+            }
+            kinds[position] = kind;
+            position++;
+        }
+
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return absolutePaths[o1].compareTo(absolutePaths[o2]);
+            }
+        });
+        int[] sortedPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedPositions[i] = sorted[i];
+        }
+        return new CompactNormalizedFileSnapshotMap(absolutePaths, sortedPositions, kinds, hashLength, hashes, lastModified, normalizedPaths, normalizedPathIndexes);
+    }
+
+    @Override
+    public int size() {
+        return absolutePaths.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && positionOf((String) key) >= 0;
+    }
+
+    @Override
+    public NormalizedFileSnapshot get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int position = positionOf((String) key);
+        return position < 0 ? null : snapshotAt(position);
+    }
+
+    private int positionOf(String absolutePath) {
+        int low = 0;
+        int high = sortedPositions.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = sortedPositions[middle];
+            int result = absolutePaths[position].compareTo(absolutePath);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private NormalizedFileSnapshot snapshotAt(int position) {
+        int kind = kinds[position];
+        IncrementalFileSnapshot snapshot;
+        switch (kind & FILE_SNAPSHOT_MASK) {
+            case DIR_SNAPSHOT:
+                snapshot = DirSnapshot.getInstance();
+                break;
+            case MISSING_FILE_SNAPSHOT:
+                snapshot = MissingFileSnapshot.getInstance();
+                break;
+            case REGULAR_FILE_SNAPSHOT:
+                int offset = position * hashLength;
+                HashCode hash = HashCode.fromBytes(Arrays.copyOfRange(hashes, offset, offset + hashLength));
+                snapshot = new FileHashSnapshot(hash, lastModified == null ? 0L : lastModified[position]);
+                break;
+            default:
+                throw new AssertionError();
+        }
+        switch (kind & NORMALIZATION_MASK) {
+            case NO_NORMALIZATION:
+                return new NonNormalizedFileSnapshot(absolutePaths[position], snapshot);
+            case DEFAULT_NORMALIZATION:
+                return new DefaultNormalizedFileSnapshot(normalizedPaths[position], snapshot);
+            case INDEXED_NORMALIZATION:
+                return new IndexedNormalizedFileSnapshot(absolutePaths[position], normalizedPathIndexes[position], snapshot);
+            case IGNORED_PATH_NORMALIZATION:
+                return new IgnoredPathFileSnapshot(snapshot);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    @Override
+    public Set<String> keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new PositionIterator<String>() {
+                        @Override
+                        protected String elementAt(int position) {
+                            return absolutePaths[position];
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public int size() {
+                    return absolutePaths.length;
+                }
+            };
+        }
+        return keySet;
+    }
+
+    @Override
+    public Set<Entry<String, NormalizedFileSnapshot>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, NormalizedFileSnapshot>>() {
+                @Override
+                public Iterator<Entry<String, NormalizedFileSnapshot>> iterator() {
+                    return new PositionIterator<Entry<String, NormalizedFileSnapshot>>() {
+                        @Override
+                        protected Entry<String, NormalizedFileSnapshot> elementAt(int position) {
+                            return new SimpleImmutableEntry<String, NormalizedFileSnapshot>(absolutePaths[position], snapshotAt(position));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return absolutePaths.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private abstract class PositionIterator<T> extends AbstractIterator<T> {
+        private int position;
+
+        @Override
+        protected T computeNext() {
+            if (position == absolutePaths.length) {
+                return endOfData();
+            }
+            return elementAt(position++);
+        }
+
+        protected abstract T elementAt(int position);
+    }
+}
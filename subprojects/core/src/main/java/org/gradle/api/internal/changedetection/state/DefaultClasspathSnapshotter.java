@@ -17,16 +17,17 @@
 package org.gradle.api.internal.changedetection.state;
 
 import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.file.FileTreeInternal;
 import org.gradle.api.internal.file.collections.DirectoryFileTree;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
 import org.gradle.api.internal.hash.FileHasher;
-import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
 public class DefaultClasspathSnapshotter extends AbstractFileCollectionSnapshotter implements ClasspathSnapshotter {
     private static final Comparator<DefaultFileDetails> FILE_DETAILS_COMPARATOR = new Comparator<DefaultFileDetails>() {
@@ -36,8 +37,11 @@ public class DefaultClasspathSnapshotter extends AbstractFileCollectionSnapshott
         }
     };
 
-    public DefaultClasspathSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory) {
-        super(hasher, stringInterner, fileSystem, directoryFileTreeFactory);
+    private final JarContentHasher jarContentHasher;
+
+    public DefaultClasspathSnapshotter(FileHasher hasher, StringInterner stringInterner, DirectoryFileTreeFactory directoryFileTreeFactory, DirectoryTreeSnapshotCache directoryTreeSnapshotCache, ParallelFileHasher parallelFileHasher, JarContentHasher jarContentHasher) {
+        super(hasher, stringInterner, directoryFileTreeFactory, directoryTreeSnapshotCache, parallelFileHasher);
+        this.jarContentHasher = jarContentHasher;
     }
 
     @Override
@@ -45,6 +49,21 @@ public class DefaultClasspathSnapshotter extends AbstractFileCollectionSnapshott
         return ClasspathSnapshotter.class;
     }
 
+    @Override
+    protected HashCode getContentHash(DefaultFileDetails fileDetails) {
+        HashCode contentHash = super.getContentHash(fileDetails);
+        if (fileDetails.isRoot() && isJar(fileDetails.getName())) {
+            // Rebuilding a jar changes its content through the timestamps of its entries, so use the hash of the entries instead
+            return jarContentHasher.hash(fileDetails.details.getFile(), contentHash);
+        }
+        return contentHash;
+    }
+
+    private static boolean isJar(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return lowerCaseName.endsWith(".jar") || lowerCaseName.endsWith(".zip");
+    }
+
     @Override
     protected void visitTreeOrBackingFile(FileTreeInternal fileTree, List<DefaultFileDetails> fileTreeElements) {
         // Sort non-root elements as their order is not important
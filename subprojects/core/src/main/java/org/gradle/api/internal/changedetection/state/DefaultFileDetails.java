@@ -16,14 +16,17 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import com.google.common.hash.HashCode;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.RelativePath;
 import org.gradle.api.internal.file.collections.SingletonFileTree;
+import org.gradle.api.internal.hash.FileHasher;
 
 class DefaultFileDetails implements FileDetails {
     final String path;
     final FileType type;
     final FileTreeElement details;
+    private volatile HashCode contentHash;
 
     DefaultFileDetails(String path, FileType type, FileTreeElement details) {
         this.path = path;
@@ -31,6 +34,22 @@ class DefaultFileDetails implements FileDetails {
         this.details = details;
     }
 
+    boolean hasContentHash() {
+        return contentHash != null;
+    }
+
+    /**
+     * Returns the hash of the content of this regular file, calculating it on first use.
+     */
+    HashCode getContentHash(FileHasher hasher) {
+        HashCode hash = contentHash;
+        if (hash == null) {
+            hash = hasher.hash(details);
+            contentHash = hash;
+        }
+        return hash;
+    }
+
     @Override
     public String getPath() {
         return path;
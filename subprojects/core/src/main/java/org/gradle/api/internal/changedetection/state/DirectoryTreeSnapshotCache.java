@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.file.collections.DirectoryFileTree;
+import org.gradle.api.internal.file.collections.SingletonFileTree;
+import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
+import org.gradle.api.tasks.util.PatternSet;
+import org.gradle.internal.FileUtils;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.gradle.api.internal.changedetection.state.FileDetails.FileType.*;
+
+/**
+ * Build scoped, in-memory cache of the files found in the root files and directory trees visited by the {@link FileCollectionSnapshotter}s.
+ *
+ * <p>The cache is shared by all snapshotters, so a directory tree that is an input to several tasks is only walked, and its files only hashed, once.
+ * Each cached element keeps its type, length, last modified time and, once calculated, its content hash.</p>
+ *
+ * <p>Entries are kept by the absolute path of the root they were found from, so that when a task generates its outputs only the entries at,
+ * beneath or above the output paths need to be discarded. A task that declares no outputs may change any file, so all entries are discarded
+ * for such a task. Changes made by anything other than a task, or made by a task outside its declared outputs, are not detected.</p>
+ */
+public class DirectoryTreeSnapshotCache implements TaskOutputsGenerationListener {
+    private final StringInterner stringInterner;
+    private final FileSystem fileSystem;
+    // Map from interned absolute path for a root file to known details for the file
+    private final ConcurrentNavigableMap<String, DefaultFileDetails> rootFiles = new ConcurrentSkipListMap<String, DefaultFileDetails>();
+    // Map from interned absolute path for a root directory to the elements found beneath it, for each set of patterns the directory was visited with
+    private final ConcurrentNavigableMap<String, ConcurrentMap<PatternSet, List<DefaultFileDetails>>> trees = new ConcurrentSkipListMap<String, ConcurrentMap<PatternSet, List<DefaultFileDetails>>>();
+    // Incremented on each invalidation, so that the result of a walk that overlapped an invalidation is not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    public DirectoryTreeSnapshotCache(StringInterner stringInterner, FileSystem fileSystem) {
+        this.stringInterner = stringInterner;
+        this.fileSystem = fileSystem;
+    }
+
+    @Override
+    public void beforeTaskOutputsGenerated(TaskInternal task) {
+        invalidate(task);
+    }
+
+    @Override
+    public void afterTaskOutputsGenerated(TaskInternal task) {
+        // Also invalidate afterwards, to discard anything that was visited while the task was running
+        invalidate(task);
+    }
+
+    private void invalidate(TaskInternal task) {
+        if (task.getOutputs().hasDeclaredOutputs()) {
+            invalidate(task.getOutputs().getFiles());
+        } else {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Discards all cached state for the given files, the files beneath them and their parent directories.
+     */
+    public void invalidate(Iterable<File> files) {
+        generation.incrementAndGet();
+        for (File file : files) {
+            File absoluteFile = file.getAbsoluteFile();
+            invalidate(absoluteFile);
+            File canonicalFile = FileUtils.canonicalize(absoluteFile);
+            if (!canonicalFile.equals(absoluteFile)) {
+                invalidate(canonicalFile);
+            }
+        }
+    }
+
+    private void invalidate(File file) {
+        String path = file.getPath();
+        removeSelfAndDescendants(rootFiles, path);
+        removeSelfAndDescendants(trees, path);
+        // A tree rooted at a parent directory contains the file, and the type of a parent directory may have changed when it was created
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            rootFiles.remove(parent.getPath());
+            trees.remove(parent.getPath());
+        }
+    }
+
+    private static void removeSelfAndDescendants(ConcurrentNavigableMap<String, ?> map, String path) {
+        map.remove(path);
+        map.subMap(path + File.separatorChar, (path + (char) (File.separatorChar + 1))).clear();
+    }
+
+    /**
+     * Discards all cached state.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        rootFiles.clear();
+        trees.clear();
+    }
+
+    /**
+     * Returns the details of the given root file.
+     */
+    DefaultFileDetails getRootFileDetails(File file) {
+        DefaultFileDetails details = rootFiles.get(file.getAbsolutePath());
+        if (details == null) {
+            boolean retain = beforeSnapshot(file);
+            long startGeneration = generation.get();
+            details = calculateDetails(file);
+            if (retain && generation.get() == startGeneration) {
+                rootFiles.put(details.path, details);
+                if (generation.get() != startGeneration) {
+                    rootFiles.remove(details.path, details);
+                }
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Invoked before the details of the given root file or directory tree are calculated. Returns whether the details can be cached, as changes
+     * made to the root from now on will be detected.
+     */
+    protected boolean beforeSnapshot(File root) {
+        return true;
+    }
+
+    private DefaultFileDetails calculateDetails(File file) {
+        String path = getPath(file);
+        if (!file.exists()) {
+            return new DefaultFileDetails(path, Missing, new MissingFileVisitDetails(file));
+        } else if (file.isDirectory()) {
+            return new DefaultFileDetails(path, Directory, new SingletonFileTree.SingletonFileVisitDetails(file, fileSystem, true));
+        } else {
+            return new DefaultFileDetails(path, RegularFile, new SingletonFileTree.SingletonFileVisitDetails(file, fileSystem, false));
+        }
+    }
+
+    /**
+     * Returns the details of the elements of the given directory tree, in the order they are visited by the tree.
+     *
+     * <p>The returned details are shared and must not be used to stop the visit.</p>
+     */
+    List<DefaultFileDetails> getDirectoryTreeDetails(DirectoryFileTree directoryTree) {
+        PatternSet patterns = directoryTree.getPatterns();
+        if (patterns.getClass() != PatternSet.class || directoryTree.isPostfix()) {
+            // Other kinds of pattern sets do not take all of their state into account for equality, and postfix trees are visited in a different order
+            return visit(directoryTree);
+        }
+        String path = getPath(directoryTree.getDir());
+        ConcurrentMap<PatternSet, List<DefaultFileDetails>> visits = trees.get(path);
+        List<DefaultFileDetails> elements = visits == null ? null : visits.get(patterns);
+        if (elements == null) {
+            boolean retain = beforeSnapshot(directoryTree.getDir());
+            long startGeneration = generation.get();
+            elements = visit(directoryTree);
+            if (retain && generation.get() == startGeneration) {
+                if (visits == null) {
+                    visits = new ConcurrentHashMap<PatternSet, List<DefaultFileDetails>>();
+                    ConcurrentMap<PatternSet, List<DefaultFileDetails>> existing = trees.putIfAbsent(path, visits);
+                    if (existing != null) {
+                        visits = existing;
+                    }
+                }
+                // Copy the patterns, as the tree's own pattern set may change later
+                PatternSet key = new PatternSet().copyFrom(patterns);
+                visits.put(key, elements);
+                if (generation.get() != startGeneration) {
+                    visits.remove(key, elements);
+                }
+            }
+        }
+        return elements;
+    }
+
+    private List<DefaultFileDetails> visit(DirectoryFileTree directoryTree) {
+        final ImmutableList.Builder<DefaultFileDetails> elements = ImmutableList.builder();
+        directoryTree.visit(new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                elements.add(new DefaultFileDetails(getPath(dirDetails.getFile()), Directory, dirDetails));
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                elements.add(new DefaultFileDetails(getPath(fileDetails.getFile()), RegularFile, fileDetails));
+            }
+        });
+        return elements.build();
+    }
+
+    private String getPath(File file) {
+        return stringInterner.intern(file.getAbsolutePath());
+    }
+}
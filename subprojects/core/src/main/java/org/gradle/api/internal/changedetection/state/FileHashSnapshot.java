@@ -75,4 +75,8 @@ class FileHashSnapshot implements IncrementalFileSnapshot {
     public HashCode getHash() {
         return hash;
     }
+
+    long getLastModified() {
+        return lastModified;
+    }
 }
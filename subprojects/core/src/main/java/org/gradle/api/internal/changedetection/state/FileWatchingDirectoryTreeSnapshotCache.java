@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.os.OperatingSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A {@link DirectoryTreeSnapshotCache} that is kept by the daemon between builds, and that uses file system events to discard the cached state
+ * of files changed outside of the build.
+ *
+ * <p>Each root is watched before it is visited, so any change made to it after that is reported. The details of a root that cannot be watched are
+ * not kept. When events may have been lost, for example when the watch service overflows or the watcher fails, all cached state is discarded and
+ * every root is visited again. The cache should not be used on platforms whose watch service reports events with a delay, see {@link #isSupported}.</p>
+ *
+ * <p>The cache is not {@link org.gradle.internal.concurrent.Stoppable}, so that the build scoped registries it is made available to do not stop it
+ * at the end of each build. Its watcher is stopped by the daemon through {@link RetainedFileSnapshots}.</p>
+ */
+public class FileWatchingDirectoryTreeSnapshotCache extends DirectoryTreeSnapshotCache {
+    public static final String TOGGLE = "org.gradle.internal.retainFileSnapshots";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWatchingDirectoryTreeSnapshotCache.class);
+
+    private final FileWatcherFactory fileWatcherFactory;
+    // Absolute paths of the roots registered with the current watcher
+    private final NavigableSet<String> watchedRoots = new ConcurrentSkipListSet<String>();
+    private FileWatcher watcher;
+
+    public FileWatchingDirectoryTreeSnapshotCache(StringInterner stringInterner, FileSystem fileSystem, FileWatcherFactory fileWatcherFactory) {
+        super(stringInterner, fileSystem);
+        this.fileWatcherFactory = fileWatcherFactory;
+    }
+
+    /**
+     * Returns whether snapshots can be retained between builds on the given operating system. On macOS, the JDK's watch service polls the
+     * watched directories every few seconds, so a change made shortly before a build would be reported too late for that build.
+     */
+    public static boolean isSupported(OperatingSystem operatingSystem) {
+        return !operatingSystem.isMacOsX();
+    }
+
+    @Override
+    protected boolean beforeSnapshot(File root) {
+        String path = root.getAbsolutePath();
+        if (watchedRoots.contains(path)) {
+            return true;
+        }
+        synchronized (this) {
+            if (watcher == null) {
+                watcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                    @Override
+                    public void execute(Throwable throwable) {
+                        LOGGER.info("Watching for file changes failed, discarding retained file snapshots.", throwable);
+                        reset();
+                    }
+                }, new FileWatcherListener() {
+                    @Override
+                    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+                        onEvent(event);
+                    }
+                });
+            }
+            try {
+                watcher.watch(FileSystemSubset.builder().add(root).build());
+                watchedRoots.add(path);
+                return true;
+            } catch (IOException e) {
+                // For example, when the limit of watches has been reached partway through the tree. The details of the root are not kept,
+                // so the root is visited and registered again the next time it is used
+                LOGGER.info("Could not watch {} for changes, its file snapshots will not be retained.", root, e);
+                return false;
+            }
+        }
+    }
+
+    private void onEvent(FileWatcherEvent event) {
+        File file = event.getFile();
+        if (event.getType() == FileWatcherEvent.Type.UNDEFINED || file == null) {
+            // Events have been lost
+            LOGGER.debug("Received {}, discarding all retained file snapshots.", event);
+            watchedRoots.clear();
+            invalidateAll();
+            return;
+        }
+        invalidate(Collections.singleton(file));
+        // The watches for the roots at, beneath or above the changed file may no longer be valid, for example when a root was deleted
+        String path = file.getAbsolutePath();
+        watchedRoots.remove(path);
+        watchedRoots.subSet(path + File.separatorChar, path + (char) (File.separatorChar + 1)).clear();
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            watchedRoots.remove(parent.getPath());
+        }
+    }
+
+    private synchronized void reset() {
+        watcher = null;
+        watchedRoots.clear();
+        invalidateAll();
+    }
+
+    /**
+     * Stops watching for file changes and discards all cached state.
+     */
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        watchedRoots.clear();
+        invalidateAll();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentStore;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Calculates a hash of the entries of a jar that does not depend on the timestamps of the entries or on their order in the jar.
+ *
+ * <p>The hashes are cached by the content hash of the jar, so the entries of each distinct jar are only hashed once. A jar that is
+ * rebuilt with the same entries gets a new content hash, but the same entries hash.</p>
+ */
+public class JarContentHasher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JarContentHasher.class);
+
+    private final PersistentIndexedCache<String, HashCode> cache;
+    private final HashFunction hashFunction;
+    private final byte[] signature;
+
+    public JarContentHasher(FileContentHashAlgorithm algorithm, PersistentStore store) {
+        this.cache = store.createCache("jarContentHashes", String.class, new HashCodeSerializer());
+        this.hashFunction = algorithm.getHashFunction();
+        this.signature = hashFunction.hashString(JarContentHasher.class.getName(), Charsets.UTF_8).asBytes();
+    }
+
+    /**
+     * Returns the hash of the entries of the given jar, or its content hash when the jar cannot be read.
+     *
+     * @param contentHash the hash of the content of the jar.
+     */
+    public HashCode hash(File jar, HashCode contentHash) {
+        String key = contentHash.toString();
+        HashCode hash = cache.get(key);
+        if (hash != null) {
+            return hash;
+        }
+        try {
+            hash = hashEntries(jar);
+        } catch (IOException e) {
+            // Not a jar, so treat it as an opaque file
+            LOGGER.debug("Could not hash entries of {}.", jar, e);
+            return contentHash;
+        }
+        cache.put(key, hash);
+        return hash;
+    }
+
+    private HashCode hashEntries(File jar) throws IOException {
+        List<EntryHash> entryHashes = Lists.newArrayList();
+        byte[] buffer = new byte[8192];
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                Hasher hasher = hashFunction.newHasher();
+                InputStream input = zipFile.getInputStream(entry);
+                try {
+                    int read;
+                    while ((read = input.read(buffer)) >= 0) {
+                        hasher.putBytes(buffer, 0, read);
+                    }
+                } finally {
+                    input.close();
+                }
+                entryHashes.add(new EntryHash(entry.getName(), hasher.hash().toString()));
+            }
+        } finally {
+            zipFile.close();
+        }
+
+        Collections.sort(entryHashes);
+        Hasher hasher = hashFunction.newHasher();
+        hasher.putBytes(signature);
+        for (EntryHash entryHash : entryHashes) {
+            hasher.putInt(entryHash.name.length());
+            hasher.putString(entryHash.name, Charsets.UTF_8);
+            hasher.putString(entryHash.hash, Charsets.UTF_8);
+        }
+        return hasher.hash();
+    }
+
+    private static class EntryHash implements Comparable<EntryHash> {
+        private final String name;
+        private final String hash;
+
+        EntryHash(String name, String hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public int compareTo(EntryHash o) {
+            int result = name.compareTo(o.name);
+            return result != 0 ? result : hash.compareTo(o.hash);
+        }
+    }
+}
@@ -53,7 +53,7 @@ public class OutputFilesSnapshotter {
             if (newEntryCount == afterSnapshots.size()) {
                 filesSnapshot = afterExecution;
             } else {
-                filesSnapshot = new DefaultFileCollectionSnapshot(outputEntries.build(), TaskFilePropertyCompareStrategy.OUTPUT, true);
+                filesSnapshot = new DefaultFileCollectionSnapshot(CompactNormalizedFileSnapshotMap.copyOf(outputEntries.build()), TaskFilePropertyCompareStrategy.OUTPUT, true);
             }
         } else {
             filesSnapshot = afterExecution;
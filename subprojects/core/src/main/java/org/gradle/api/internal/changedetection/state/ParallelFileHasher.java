@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.hash.FileHasher;
+import org.gradle.internal.operations.BuildOperationProcessor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.BuildOperationWorkerRegistry;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Calculates the content hashes of many regular files at once on the build operation thread pool.
+ *
+ * <p>Each batch of files is hashed as a child operation of the build operation of the calling thread, so hashing does not use more than
+ * the maximum number of workers. The hashes are kept by the {@link DefaultFileDetails}, so the order in which the files are hashed does
+ * not affect the snapshot. Files that cannot be hashed are left alone, so that the problem is reported by the calling thread.</p>
+ */
+public class ParallelFileHasher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileHasher.class);
+    // Hashing fewer files than this is not worth handing off to other threads
+    private static final int MIN_FILES = 100;
+    private static final int BATCH_SIZE = 50;
+
+    private final BuildOperationProcessor buildOperationProcessor;
+    private final BuildOperationWorkerRegistry buildOperationWorkerRegistry;
+
+    public ParallelFileHasher(BuildOperationProcessor buildOperationProcessor, BuildOperationWorkerRegistry buildOperationWorkerRegistry) {
+        this.buildOperationProcessor = buildOperationProcessor;
+        this.buildOperationWorkerRegistry = buildOperationWorkerRegistry;
+    }
+
+    /**
+     * Calculates the content hashes of the given regular files, when there are enough of them to be worth doing in parallel.
+     */
+    void hashContents(final List<DefaultFileDetails> files, final FileHasher hasher) {
+        if (files.size() < MIN_FILES) {
+            return;
+        }
+        final BuildOperationWorkerRegistry.Operation parent;
+        try {
+            parent = buildOperationWorkerRegistry.getCurrent();
+        } catch (IllegalStateException e) {
+            // Without a lease to share, leave the files to be hashed by the calling thread
+            return;
+        }
+        buildOperationProcessor.run(new Action<BuildOperationQueue<HashContents>>() {
+            @Override
+            public void execute(BuildOperationQueue<HashContents> queue) {
+                for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+                    queue.add(new HashContents(files.subList(start, Math.min(start + BATCH_SIZE, files.size())), hasher, parent));
+                }
+            }
+        });
+    }
+
+    private static class HashContents implements RunnableBuildOperation {
+        private final List<DefaultFileDetails> files;
+        private final FileHasher hasher;
+        private final BuildOperationWorkerRegistry.Operation parent;
+
+        HashContents(List<DefaultFileDetails> files, FileHasher hasher, BuildOperationWorkerRegistry.Operation parent) {
+            this.files = files;
+            this.hasher = hasher;
+            this.parent = parent;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Hash contents of " + files.size() + " files";
+        }
+
+        @Override
+        public void run() {
+            BuildOperationWorkerRegistry.Completion completion = parent.operationStart();
+            try {
+                for (DefaultFileDetails file : files) {
+                    try {
+                        file.getContentHash(hasher);
+                    } catch (Exception e) {
+                        LOGGER.debug("Could not hash contents of {}.", file.path, e);
+                    }
+                }
+            } finally {
+                completion.operationFinish();
+            }
+        }
+    }
+}
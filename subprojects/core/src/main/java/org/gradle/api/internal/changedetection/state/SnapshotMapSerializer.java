@@ -52,7 +52,7 @@ public class SnapshotMapSerializer implements Serializer<Map<String, NormalizedF
             NormalizedFileSnapshot snapshot = readSnapshot(absolutePath, decoder, stringInterner);
             snapshots.put(absolutePath, snapshot);
         }
-        return snapshots;
+        return CompactNormalizedFileSnapshotMap.copyOf(snapshots);
     }
 
     private NormalizedFileSnapshot readSnapshot(String absolutePath, Decoder decoder, StringInterner stringInterner) throws IOException {
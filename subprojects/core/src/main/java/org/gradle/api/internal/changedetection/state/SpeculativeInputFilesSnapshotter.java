@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.file.FileCollectionInternal;
+import org.gradle.api.internal.file.FileCollectionVisitor;
+import org.gradle.api.internal.file.FileTreeInternal;
+import org.gradle.api.internal.file.collections.DirectoryFileTree;
+import org.gradle.api.internal.tasks.properties.TaskInputFilePropertySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshots the input files of tasks ahead of their execution, so that the snapshots can be reused by the up-to-date check and cache key calculation once the task starts.
+ *
+ * <p>A speculative snapshot is only reused when none of the files and directories it was taken from have changed since. This includes the root files and directories
+ * of the property, whether they exist or not, and every directory in its directory trees, so that files added to or removed from a tree are noticed. The files are
+ * checked by comparing their type, length and modification time. Properties containing files that were modified just before or while the snapshot was taken are not
+ * snapshot ahead, as changes to them might not be visible from their modification time. Properties containing file trees that are not backed by a directory are
+ * not snapshot ahead either, as the files they are read from are not known. Changes to the definition of the input properties after the snapshot has been taken
+ * are not detected.</p>
+ */
+public class SpeculativeInputFilesSnapshotter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpeculativeInputFilesSnapshotter.class);
+    // File systems with coarse timestamps record modifications up to this long before they happen
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
+    private final FileCollectionSnapshotterRegistry snapshotterRegistry;
+    private final Map<TaskInternal, Map<String, PropertySnapshot>> snapshots = Collections.synchronizedMap(Maps.<TaskInternal, Map<String, PropertySnapshot>>newIdentityHashMap());
+
+    public SpeculativeInputFilesSnapshotter(FileCollectionSnapshotterRegistry snapshotterRegistry) {
+        this.snapshotterRegistry = snapshotterRegistry;
+    }
+
+    /**
+     * Snapshots the input files of the given task. Must not be called while the task, or any other task of the same project is executing.
+     */
+    public void snapshotAhead(TaskInternal task) {
+        Map<String, PropertySnapshot> propertySnapshots = Maps.newHashMap();
+        for (TaskInputFilePropertySpec propertySpec : task.getInputs().getFileProperties()) {
+            long startTime = System.currentTimeMillis();
+            FileCollectionSnapshot snapshot;
+            try {
+                FileCollectionSnapshotter snapshotter = snapshotterRegistry.getSnapshotter(propertySpec.getSnapshotter());
+                snapshot = snapshotter.snapshot(propertySpec.getPropertyFiles(), propertySpec.getCompareStrategy(), propertySpec.getSnapshotNormalizationStrategy());
+            } catch (Exception e) {
+                // The task will report the problem when it is executed
+                LOGGER.debug("Could not snapshot input property '{}' of {} ahead of execution", propertySpec.getPropertyName(), task, e);
+                continue;
+            }
+            List<FileState> fileStates = captureFileStates(propertySpec, snapshot, startTime - TIMESTAMP_GRANULARITY);
+            if (fileStates != null) {
+                propertySnapshots.put(propertySpec.getPropertyName(), new PropertySnapshot(snapshot, fileStates));
+            }
+        }
+        LOGGER.debug("Snapshot {} of {} input properties of {} ahead of execution", propertySnapshots.size(), task.getInputs().getFileProperties().size(), task);
+        snapshots.put(task, propertySnapshots);
+    }
+
+    /**
+     * Captures the state of the files the snapshot was taken from, or returns {@code null} when changes to them might go unnoticed.
+     */
+    private static List<FileState> captureFileStates(TaskInputFilePropertySpec propertySpec, FileCollectionSnapshot snapshot, long modifiedBefore) {
+        Set<File> files = Sets.newLinkedHashSet();
+        for (String path : snapshot.getSnapshots().keySet()) {
+            files.add(new File(path));
+        }
+        RootFilesCollector rootFiles = new RootFilesCollector(files);
+        ((FileCollectionInternal) propertySpec.getPropertyFiles()).visitRootElements(rootFiles);
+        if (rootFiles.unknownTree) {
+            return null;
+        }
+
+        List<FileState> fileStates = Lists.newArrayListWithCapacity(files.size());
+        for (File file : files) {
+            FileState fileState = FileState.of(file);
+            if (fileState.lastModified >= modifiedBefore) {
+                return null;
+            }
+            fileStates.add(fileState);
+        }
+        return fileStates;
+    }
+
+    /**
+     * Removes the snapshots taken ahead for the given task, and returns those that are still valid, keyed by property name.
+     */
+    public Map<String, FileCollectionSnapshot> takeValidSnapshots(TaskInternal task) {
+        Map<String, PropertySnapshot> propertySnapshots = snapshots.remove(task);
+        if (propertySnapshots == null || propertySnapshots.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        ImmutableMap.Builder<String, FileCollectionSnapshot> builder = ImmutableMap.builder();
+        for (Map.Entry<String, PropertySnapshot> entry : propertySnapshots.entrySet()) {
+            PropertySnapshot propertySnapshot = entry.getValue();
+            if (propertySnapshot.isValid()) {
+                builder.put(entry.getKey(), propertySnapshot.snapshot);
+            } else {
+                LOGGER.debug("Discarding snapshot of input property '{}' of {} taken ahead of execution, as its files have changed", entry.getKey(), task);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Discards all snapshots that have not been used.
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * Collects the root files and directories of a file collection, including missing ones, and the directories of its directory trees.
+     */
+    private static class RootFilesCollector implements FileCollectionVisitor {
+        private final Set<File> files;
+        private boolean unknownTree;
+
+        RootFilesCollector(Set<File> files) {
+            this.files = files;
+        }
+
+        @Override
+        public void visitCollection(FileCollectionInternal fileCollection) {
+            for (File file : fileCollection) {
+                addRoot(file);
+            }
+        }
+
+        @Override
+        public void visitTree(FileTreeInternal fileTree) {
+            unknownTree = true;
+        }
+
+        @Override
+        public void visitDirectoryTree(DirectoryFileTree directoryTree) {
+            addRoot(directoryTree.getDir());
+        }
+
+        private void addRoot(File file) {
+            files.add(file);
+            addDirectories(file);
+        }
+
+        private void addDirectories(File directory) {
+            // The listing of a directory changes its modification time
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    files.add(child);
+                    addDirectories(child);
+                }
+            }
+        }
+    }
+
+    private static class PropertySnapshot {
+        private final FileCollectionSnapshot snapshot;
+        private final List<FileState> fileStates;
+
+        PropertySnapshot(FileCollectionSnapshot snapshot, List<FileState> fileStates) {
+            this.snapshot = snapshot;
+            this.fileStates = fileStates;
+        }
+
+        boolean isValid() {
+            for (FileState fileState : fileStates) {
+                if (!fileState.equals(FileState.of(fileState.file))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class FileState {
+        private final File file;
+        private final boolean exists;
+        private final boolean directory;
+        private final long length;
+        private final long lastModified;
+
+        private FileState(File file, boolean exists, boolean directory, long length, long lastModified) {
+            this.file = file;
+            this.exists = exists;
+            this.directory = directory;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        static FileState of(File file) {
+            // A directory's modification time changes when entries are added to or removed from it
+            long lastModified = file.lastModified();
+            boolean directory = file.isDirectory();
+            long length = directory ? 0 : file.length();
+            return new FileState(file, lastModified != 0 || file.exists(), directory, length, lastModified);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileState other = (FileState) o;
+            return exists == other.exists
+                && directory == other.directory
+                && length == other.length
+                && lastModified == other.lastModified
+                && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode();
+        }
+    }
+}
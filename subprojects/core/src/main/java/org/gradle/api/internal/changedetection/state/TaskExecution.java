@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashCode;
 import org.apache.commons.lang.SerializationUtils;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
 import org.gradle.api.internal.tasks.cache.DefaultTaskCacheKeyBuilder;
 import org.gradle.api.internal.tasks.cache.TaskCacheKey;
 import org.gradle.api.internal.tasks.cache.TaskCacheKeyBuilder;
@@ -43,6 +44,7 @@ public abstract class TaskExecution {
     private Map<String, Object> inputProperties;
     private Iterable<String> outputPropertyNamesForCacheKey;
     private ImmutableSet<String> declaredOutputFilePaths;
+    private FileContentHashAlgorithm fileContentHashAlgorithm;
 
     /**
      * Returns the names of all cacheable output property names that have a value set.
@@ -95,6 +97,17 @@ public abstract class TaskExecution {
         this.taskActionsClassLoaderHash = taskActionsClassLoaderHash;
     }
 
+    /**
+     * Returns the algorithm used to hash the contents of the files in the snapshots of this execution.
+     */
+    public FileContentHashAlgorithm getFileContentHashAlgorithm() {
+        return fileContentHashAlgorithm;
+    }
+
+    public void setFileContentHashAlgorithm(FileContentHashAlgorithm fileContentHashAlgorithm) {
+        this.fileContentHashAlgorithm = fileContentHashAlgorithm;
+    }
+
     public Map<String, Object> getInputProperties() {
         return inputProperties;
     }
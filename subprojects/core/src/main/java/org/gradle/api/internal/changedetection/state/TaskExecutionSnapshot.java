@@ -19,6 +19,7 @@ package org.gradle.api.internal.changedetection.state;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.hash.HashCode;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
 
 import java.util.Map;
 
@@ -36,8 +37,9 @@ public class TaskExecutionSnapshot {
     private final ImmutableSortedMap<String, Long> inputFilesSnapshotIds;
     private final ImmutableSortedMap<String, Long> outputFilesSnapshotIds;
     private final Long discoveredFilesSnapshotId;
+    private final FileContentHashAlgorithm fileContentHashAlgorithm;
 
-    public TaskExecutionSnapshot(String taskClass, ImmutableSet<String> cacheableOutputProperties, ImmutableSet<String> declaredOutputFilePaths, HashCode taskClassLoaderHash, HashCode taskActionsClassLoaderHash, Map<String, Object> inputProperties, ImmutableSortedMap<String, Long> inputFilesSnapshotIds, Long discoveredFilesSnapshotId, ImmutableSortedMap<String, Long> outputFilesSnapshotIds) {
+    public TaskExecutionSnapshot(String taskClass, ImmutableSet<String> cacheableOutputProperties, ImmutableSet<String> declaredOutputFilePaths, HashCode taskClassLoaderHash, HashCode taskActionsClassLoaderHash, Map<String, Object> inputProperties, ImmutableSortedMap<String, Long> inputFilesSnapshotIds, Long discoveredFilesSnapshotId, ImmutableSortedMap<String, Long> outputFilesSnapshotIds, FileContentHashAlgorithm fileContentHashAlgorithm) {
         this.taskClass = taskClass;
         this.cacheableOutputProperties = cacheableOutputProperties;
         this.declaredOutputFilePaths = declaredOutputFilePaths;
@@ -47,6 +49,7 @@ public class TaskExecutionSnapshot {
         this.inputFilesSnapshotIds = inputFilesSnapshotIds;
         this.discoveredFilesSnapshotId = discoveredFilesSnapshotId;
         this.outputFilesSnapshotIds = outputFilesSnapshotIds;
+        this.fileContentHashAlgorithm = fileContentHashAlgorithm;
     }
 
     public ImmutableSet<String> getCacheableOutputProperties() {
@@ -61,6 +64,10 @@ public class TaskExecutionSnapshot {
         return discoveredFilesSnapshotId;
     }
 
+    public FileContentHashAlgorithm getFileContentHashAlgorithm() {
+        return fileContentHashAlgorithm;
+    }
+
     public ImmutableSortedMap<String, Long> getInputFilesSnapshotIds() {
         return inputFilesSnapshotIds;
     }
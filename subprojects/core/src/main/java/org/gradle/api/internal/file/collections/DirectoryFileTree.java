@@ -179,6 +179,10 @@ public class DirectoryFileTree implements MinimalFileTree, PatternFilterableFile
         return new DirectoryFileTree(dir, patternSet, directoryWalkerFactory, fileSystem, true);
     }
 
+    public boolean isPostfix() {
+        return postfix;
+    }
+
     public PatternSet getPatternSet() {
         return patternSet;
     }
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.collections.jdk7;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.DefaultFileVisitDetails;
+import org.gradle.api.internal.file.collections.DirectoryWalker;
+import org.gradle.api.specs.Spec;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DirectoryWalker} that lists the directories of a tree concurrently, for trees on file systems where listing a directory is slow.
+ *
+ * <p>Each directory is listed by a fork/join task, which reads the attributes of its entries. The calling thread visits the listings as they
+ * become available, in the same order as {@link org.gradle.api.internal.file.collections.DefaultDirectoryWalker}: the files of a directory,
+ * then each of its subdirectories, with the entries of a directory sorted by name. The spec is only applied by the calling thread, as it may
+ * not be safe to use from several threads, and the listing of a subdirectory is started once the spec allows it. Excluded directories are
+ * never listed.</p>
+ *
+ * <p>Symbolic links are followed, and links that point back to a directory being walked are skipped, as with {@link Jdk7DirectoryWalker}.</p>
+ */
+public class ParallelDirectoryWalker implements DirectoryWalker {
+    public static final String TOGGLE = "org.gradle.internal.parallelDirectoryWalking";
+
+    // Listing directories is mostly waiting for the file system, so use more threads than there are processors
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final Comparator<Path> FILE_NAME_COMPARATOR = new Comparator<Path>() {
+        @Override
+        public int compare(Path o1, Path o2) {
+            return o1.getFileName().toString().compareTo(o2.getFileName().toString());
+        }
+    };
+
+    private final FileSystem fileSystem;
+    private final ForkJoinPool pool;
+
+    public ParallelDirectoryWalker(FileSystem fileSystem) {
+        this(fileSystem, new ForkJoinPool(DEFAULT_PARALLELISM));
+    }
+
+    ParallelDirectoryWalker(FileSystem fileSystem, ForkJoinPool pool) {
+        this.fileSystem = fileSystem;
+        this.pool = pool;
+    }
+
+    @Override
+    public void walkDir(File rootDir, RelativePath rootPath, FileVisitor visitor, Spec<? super FileTreeElement> spec, AtomicBoolean stopFlag, boolean postfix) {
+        Path root = rootDir.toPath();
+        Object rootKey;
+        try {
+            rootKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            throw new GradleException(String.format("Could not read path '%s'.", rootDir), e);
+        }
+        ListDirectory rootTask = new ListDirectory(root, rootPath, stopFlag);
+        pool.execute(rootTask);
+        try {
+            visit(rootTask, new Ancestor(rootKey, null), visitor, spec, stopFlag, postfix);
+        } finally {
+            // Stop listing the directories that have not been visited
+            stopFlag.set(true);
+        }
+    }
+
+    private void visit(ListDirectory task, Ancestor ancestors, FileVisitor visitor, Spec<? super FileTreeElement> spec, AtomicBoolean stopFlag, boolean postfix) {
+        DirectoryListing listing = task.join();
+        if (listing.failure != null) {
+            throw listing.failure;
+        }
+        List<Entry> directories = new ArrayList<Entry>();
+        for (int i = 0; !stopFlag.get() && i < listing.entries.size(); i++) {
+            Entry entry = listing.entries.get(i);
+            if (entry.details == null) {
+                throw entry.failure;
+            }
+            if (!spec.isSatisfiedBy(entry.details)) {
+                continue;
+            }
+            if (entry.details.isDirectory()) {
+                if (ancestors.contains(entry.fileKey)) {
+                    // A link to a directory that is already being walked
+                    continue;
+                }
+                // Start listing the directory, so that it is listed while the files before it are visited
+                entry.contents = new ListDirectory(entry.path, entry.details.getRelativePath(), stopFlag);
+                pool.execute(entry.contents);
+                directories.add(entry);
+            } else if (entry.failure != null) {
+                throw entry.failure;
+            } else {
+                visitor.visitFile(entry.details);
+            }
+        }
+        for (int i = 0; !stopFlag.get() && i < directories.size(); i++) {
+            Entry dir = directories.get(i);
+            Ancestor dirAncestors = new Ancestor(dir.fileKey, ancestors);
+            if (postfix) {
+                visit(dir.contents, dirAncestors, visitor, spec, stopFlag, postfix);
+                visitor.visitDir(dir.details);
+            } else {
+                visitor.visitDir(dir.details);
+                visit(dir.contents, dirAncestors, visitor, spec, stopFlag, postfix);
+            }
+        }
+    }
+
+    private class ListDirectory extends RecursiveTask<DirectoryListing> {
+        private final Path dir;
+        private final RelativePath path;
+        private final AtomicBoolean stopFlag;
+
+        ListDirectory(Path dir, RelativePath path, AtomicBoolean stopFlag) {
+            this.dir = dir;
+            this.path = path;
+            this.stopFlag = stopFlag;
+        }
+
+        @Override
+        protected DirectoryListing compute() {
+            DirectoryListing listing = new DirectoryListing();
+            if (stopFlag.get()) {
+                return listing;
+            }
+            List<Path> children = new ArrayList<Path>();
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+                try {
+                    for (Path child : stream) {
+                        children.add(child);
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                listing.failure = new GradleException(String.format("Could not read path '%s'.", dir), e);
+                return listing;
+            }
+            Collections.sort(children, FILE_NAME_COMPARATOR);
+
+            for (int i = 0; !stopFlag.get() && i < children.size(); i++) {
+                Path child = children.get(i);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    try {
+                        // Might be a link that cannot be followed
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e1) {
+                        listing.entries.add(new Entry(child, null, null, new GradleException(String.format("Could not read path '%s'.", child), e1)));
+                        continue;
+                    }
+                }
+                boolean isDirectory = attrs.isDirectory();
+                File file = child.toFile();
+                RelativePath childPath = path.append(!isDirectory, file.getName());
+                FileVisitDetails details = new DefaultFileVisitDetails(file, childPath, stopFlag, fileSystem, fileSystem, isDirectory, attrs.lastModifiedTime().toMillis(), attrs.size());
+                if (!isDirectory && attrs.isSymbolicLink()) {
+                    listing.entries.add(new Entry(child, details, null, new GradleException(String.format("Could not list contents of '%s'. Couldn't follow symbolic link.", child))));
+                } else {
+                    listing.entries.add(new Entry(child, details, attrs.fileKey(), null));
+                }
+            }
+            return listing;
+        }
+    }
+
+    private static class DirectoryListing {
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private GradleException failure;
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final FileVisitDetails details;
+        private final Object fileKey;
+        private final GradleException failure;
+        // The listing of a directory, once the spec has allowed it. Only used by the visiting thread
+        private ListDirectory contents;
+
+        Entry(Path path, FileVisitDetails details, Object fileKey, GradleException failure) {
+            this.path = path;
+            this.details = details;
+            this.fileKey = fileKey;
+            this.failure = failure;
+        }
+    }
+    /**
+     * The file keys of the directories above a directory, used to detect cycles through links.
+     */
+    private static class Ancestor {
+        private final Object fileKey;
+        private final Ancestor parent;
+
+        Ancestor(Object fileKey, Ancestor parent) {
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        boolean contains(Object key) {
+            if (key == null) {
+                // The file system does not provide keys, so cycles cannot be detected
+                return false;
+            }
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (key.equals(ancestor.fileKey)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.pattern;
+
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.specs.Spec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches a path against many patterns at once.
+ *
+ * <p>The patterns are sorted by their shape when compiled. Patterns like {@code **}{@code /name} only look at the last segment of a path,
+ * and patterns like {@code **}{@code /name/**} at each segment, so the fixed names of these patterns are looked up in a set rather than
+ * compared one by one. These patterns also partially match every directory. The remaining patterns are indexed by their first segment when
+ * it is fixed, so a path is only matched against the patterns that can match its first segment.</p>
+ */
+class CombinedPatternMatcher implements Spec<RelativePath> {
+    private static final String GREEDY = "**";
+
+    private final boolean partialMatchDirs;
+    private final SegmentMatcher lastSegmentMatcher = new SegmentMatcher();
+    private final SegmentMatcher anySegmentMatcher = new SegmentMatcher();
+    private final Map<String, List<PathMatcher>> matchersByFirstSegment = new HashMap<String, List<PathMatcher>>();
+    private final List<PathMatcher> unindexedMatchers = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> allMatchers = new ArrayList<PathMatcher>();
+
+    CombinedPatternMatcher(boolean partialMatchDirs, boolean caseSensitive, Collection<String> patterns) {
+        this.partialMatchDirs = partialMatchDirs;
+        for (String pattern : patterns) {
+            add(pattern, caseSensitive);
+        }
+    }
+
+    private void add(String pattern, boolean caseSensitive) {
+        String[] parts = PatternMatcherFactory.split(pattern);
+        int start = 0;
+        while (start < parts.length && parts[start].equals(GREEDY)) {
+            start++;
+        }
+        int end = parts.length;
+        while (end > start && parts[end - 1].equals(GREEDY)) {
+            end--;
+        }
+        if (start > 0 && end == start + 1) {
+            if (end == parts.length) {
+                lastSegmentMatcher.add(parts[start], caseSensitive);
+            } else {
+                anySegmentMatcher.add(parts[start], caseSensitive);
+            }
+            return;
+        }
+
+        PathMatcher matcher = PatternMatcherFactory.compile(parts, 0, caseSensitive);
+        allMatchers.add(matcher);
+        if (caseSensitive && parts.length > 0 && isLiteral(parts[0])) {
+            List<PathMatcher> matchers = matchersByFirstSegment.get(parts[0]);
+            if (matchers == null) {
+                matchers = new ArrayList<PathMatcher>(1);
+                matchersByFirstSegment.put(parts[0], matchers);
+            }
+            matchers.add(matcher);
+        } else {
+            unindexedMatchers.add(matcher);
+        }
+    }
+
+    private static boolean isLiteral(String part) {
+        return part.indexOf('*') < 0 && part.indexOf('?') < 0;
+    }
+
+    @Override
+    public boolean isSatisfiedBy(RelativePath element) {
+        String[] segments = element.getSegments();
+        if (element.isFile() || !partialMatchDirs) {
+            return matches(segments);
+        } else {
+            return isPrefix(segments);
+        }
+    }
+
+    private boolean matches(String[] segments) {
+        if (segments.length > 0) {
+            if (lastSegmentMatcher.matches(segments[segments.length - 1])) {
+                return true;
+            }
+            if (!anySegmentMatcher.isEmpty()) {
+                for (String segment : segments) {
+                    if (anySegmentMatcher.matches(segment)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (PathMatcher matcher : candidates(segments)) {
+            if (matcher.matches(segments, 0)) {
+                return true;
+            }
+        }
+        for (PathMatcher matcher : unindexedCandidates(segments)) {
+            if (matcher.matches(segments, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPrefix(String[] segments) {
+        if (!lastSegmentMatcher.isEmpty() || !anySegmentMatcher.isEmpty()) {
+            // These patterns start with '**', so may match something below any directory
+            return true;
+        }
+        for (PathMatcher matcher : candidates(segments)) {
+            if (matcher.isPrefix(segments, 0)) {
+                return true;
+            }
+        }
+        for (PathMatcher matcher : unindexedCandidates(segments)) {
+            if (matcher.isPrefix(segments, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PathMatcher> candidates(String[] segments) {
+        if (segments.length == 0) {
+            // Any pattern might match an empty path
+            return allMatchers;
+        }
+        List<PathMatcher> matchers = matchersByFirstSegment.get(segments[0]);
+        return matchers == null ? Collections.<PathMatcher>emptyList() : matchers;
+    }
+
+    private List<PathMatcher> unindexedCandidates(String[] segments) {
+        return segments.length == 0 ? Collections.<PathMatcher>emptyList() : unindexedMatchers;
+    }
+
+    /**
+     * Matches a single segment against the steps of many patterns.
+     */
+    private static class SegmentMatcher {
+        private final Set<String> names = new HashSet<String>();
+        private final List<PatternStep> steps = new ArrayList<PatternStep>();
+
+        void add(String part, boolean caseSensitive) {
+            if (caseSensitive && isLiteral(part)) {
+                names.add(part);
+            } else {
+                steps.add(PatternStepFactory.getStep(part, caseSensitive));
+            }
+        }
+
+        boolean isEmpty() {
+            return names.isEmpty() && steps.isEmpty();
+        }
+
+        boolean matches(String segment) {
+            if (names.contains(segment)) {
+                return true;
+            }
+            for (int i = 0; i < steps.size(); i++) {
+                if (steps.get(i).matches(segment)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.gradle.api.file.RelativePath;
 import org.gradle.api.specs.Spec;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class PatternMatcherFactory {
@@ -32,20 +33,30 @@ public class PatternMatcherFactory {
         return new PathMatcherBackedSpec(partialMatchDirs, pathMatcher);
     }
 
+    /**
+     * Returns a spec that matches a path when it matches any of the given patterns. The patterns are compiled together, so that
+     * a path is only matched against the patterns that can match it.
+     */
+    public static Spec<RelativePath> getPatternsMatcher(boolean partialMatchDirs, boolean caseSensitive, Collection<String> patterns) {
+        return new CombinedPatternMatcher(partialMatchDirs, caseSensitive, patterns);
+    }
+
     private static PathMatcher compile(boolean caseSensitive, String pattern) {
         if (pattern.length() == 0) {
             return END_OF_PATH_MATCHER;
         }
+        return compile(split(pattern), 0, caseSensitive);
+    }
 
+    static String[] split(String pattern) {
         // trailing / or \ assumes **
         if (pattern.endsWith("/") || pattern.endsWith("\\")) {
             pattern = pattern + "**";
         }
-        String[] parts = StringUtils.split(pattern, PATH_SEPARATORS);
-        return compile(parts, 0, caseSensitive);
+        return StringUtils.split(pattern, PATH_SEPARATORS);
     }
 
-    private static PathMatcher compile(String[] parts, int startIndex, boolean caseSensitive) {
+    static PathMatcher compile(String[] parts, int startIndex, boolean caseSensitive) {
         if (startIndex >= parts.length) {
             return END_OF_PATH_MATCHER;
         }
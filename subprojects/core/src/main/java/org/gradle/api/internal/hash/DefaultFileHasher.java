@@ -16,20 +16,41 @@
 package org.gradle.api.internal.hash;
 
 import com.google.common.base.Charsets;
-import com.google.common.hash.Funnels;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.internal.resource.TextResource;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 public class DefaultFileHasher implements FileHasher {
-    private static final byte[] SIGNATURE = Hashing.md5().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
+    // Large enough to read most source and class files in one go, small enough to keep one per worker thread
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final FileContentHashAlgorithm algorithm;
+    private final byte[] signature;
+
+    public DefaultFileHasher() {
+        this(FileContentHashAlgorithm.MD5);
+    }
+
+    public DefaultFileHasher(FileContentHashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.signature = algorithm.getHashFunction().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
+    }
+
+    public FileContentHashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
 
     @Override
     public HashCode hash(TextResource resource) {
@@ -42,10 +63,20 @@ public class DefaultFileHasher implements FileHasher {
     public HashCode hash(File file) {
         try {
             Hasher hasher = createFileHasher();
-            Files.copy(file, Funnels.asOutputStream(hasher));
+            // Read straight into a buffer reused by the thread, rather than allocating buffers and streams for each file
+            byte[] buffer = BUFFER.get();
+            FileInputStream input = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    hasher.putBytes(buffer, 0, read);
+                }
+            } finally {
+                input.close();
+            }
             return hasher.hash();
         } catch (IOException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s'.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s'.", algorithm, file), e);
         }
     }
 
@@ -54,9 +85,9 @@ public class DefaultFileHasher implements FileHasher {
         return hash(fileDetails.getFile());
     }
 
-    private static Hasher createFileHasher() {
-        Hasher hasher = Hashing.md5().newHasher();
-        hasher.putBytes(SIGNATURE);
+    private Hasher createFileHasher() {
+        Hasher hasher = algorithm.getHashFunction().newHasher();
+        hasher.putBytes(signature);
         return hasher;
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The hash function used to hash the contents of files for change detection. Both functions produce 128 bit hashes.
+ *
+ * <p>The algorithm is persisted with file hashes and task history by its ordinal, so new values must only be added at the end.</p>
+ */
+public enum FileContentHashAlgorithm {
+    MD5(Hashing.md5()),
+    /**
+     * A non-cryptographic hash that is several times faster than MD5 for large files. Only suitable for detecting changes.
+     */
+    MURMUR3_128(Hashing.murmur3_128());
+
+    public static final String PROPERTY = "org.gradle.internal.fileContentHash";
+
+    private final HashFunction hashFunction;
+
+    FileContentHashAlgorithm(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the algorithm selected by the {@value #PROPERTY} system property, defaulting to {@link #MD5}.
+     */
+    public static FileContentHashAlgorithm fromSystemProperty() {
+        String value = System.getProperty(PROPERTY);
+        if (value == null) {
+            return MD5;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown file content hash algorithm '%s' specified by system property '%s'. Supported values are %s.", value, PROPERTY, Arrays.toString(values())), e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Adds compression to the packed task output, using the configured {@link TaskOutputCompression}.
+ *
+ * <p>The codec is recorded at the start of the archive, so that archives written with any codec can be unpacked.
+ * GZIP archives are written without an extra header, and are recognized by the GZIP magic number instead. This way
+ * GZIP is compatible with archives written before the codec was made selectable. Other codecs write {@link #MAGIC}
+ * followed by the identifier of the codec.</p>
+ */
+public class CompressingTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    private static final byte[] MAGIC = {(byte) 'G', (byte) 'T'};
+
+    private final TarTaskOutputPacker delegate;
+    private final TaskOutputCompression compression;
+
+    public CompressingTaskOutputPacker(TarTaskOutputPacker delegate, TaskOutputCompression compression) {
+        this.delegate = delegate;
+        this.compression = compression;
+    }
+
+    @Override
+    public void pack(TaskOutputsInternal taskOutputs, OutputStream output) throws IOException {
+        OutputStream compressedOutput = compress(output, compression);
+        try {
+            delegate.pack(taskOutputs, compressedOutput);
+        } finally {
+            compressedOutput.close();
+        }
+    }
+
+    @Override
+    public void unpack(TaskOutputsInternal taskOutputs, InputStream input) throws IOException {
+        InputStream decompressedInput = decompress(input);
+        try {
+            delegate.unpack(taskOutputs, decompressedInput);
+        } finally {
+            decompressedInput.close();
+        }
+    }
+
+    /**
+     * Writes the header for the given compression, and returns a stream that compresses the archive written to it.
+     */
+    static OutputStream compress(OutputStream output, TaskOutputCompression compression) throws IOException {
+        if (compression != TaskOutputCompression.GZIP) {
+            output.write(MAGIC);
+            output.write(compression.getId());
+        }
+        return compression.compress(output);
+    }
+
+    /**
+     * Reads the compression header, and returns a stream that decompresses the rest of the archive.
+     */
+    static InputStream decompress(InputStream input) throws IOException {
+        PushbackInputStream headerInput = new PushbackInputStream(input, GZIP_MAGIC.length);
+        return readCompression(headerInput).decompress(headerInput);
+    }
+
+    private static TaskOutputCompression readCompression(PushbackInputStream input) throws IOException {
+        byte[] magic = new byte[2];
+        int length = readFully(input, magic);
+        if (length == magic.length && magic[0] == GZIP_MAGIC[0] && magic[1] == GZIP_MAGIC[1]) {
+            input.unread(magic);
+            return TaskOutputCompression.GZIP;
+        }
+        if (length == magic.length && magic[0] == MAGIC[0] && magic[1] == MAGIC[1]) {
+            int id = input.read();
+            TaskOutputCompression compression = id < 0 ? null : TaskOutputCompression.forId(id);
+            if (compression != null) {
+                return compression;
+            }
+            throw new IllegalStateException("Cached result format error, unknown compression: " + id);
+        }
+        throw new IllegalStateException("Cached result format error, no compression header found");
+    }
+
+    private static int readFully(InputStream input, byte[] bytes) throws IOException {
+        int length = 0;
+        while (length < bytes.length) {
+            int read = input.read(bytes, length, bytes.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.apache.tools.tar.TarOutputStream;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A task output cache that stores the contents of larger files separately from the rest of the archive, addressed by their hash.
+ *
+ * <p>When storing, the archive produced by the packer is split into a manifest and a number of blobs. The manifest lists
+ * the entries of the archive together with the contents of small files, and is stored under the task's cache key. The
+ * contents of larger files are stored as blobs under the MD5 hash of their contents, so that identical files produced by
+ * different tasks are only stored once. The backing cache is probed for all the blobs of an archive at once, and blobs already
+ * present there are not stored again. When a local cache is used in front of a remote one, the remote cache is the backing cache,
+ * so that only missing blobs are uploaded.</p>
+ *
+ * <p>When loading, the blobs referenced by the manifest are looked up one by one, and the archive is put back together
+ * in a temporary file before it is unpacked. Blobs already present in a local cache are not downloaded again. The contents of
+ * each blob are checked against its hash. If any blob is missing or corrupt, the result is treated as not cached. Results stored
+ * without content addressing are loaded as they are.</p>
+ */
+public class ContentAddressedTaskOutputCache implements ProbingTaskOutputCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedTaskOutputCache.class);
+    private static final byte[] MANIFEST_MAGIC = {(byte) 'G', (byte) 'M'};
+    private static final byte[] BLOB_MAGIC = {(byte) 'G', (byte) 'B'};
+    private static final int FORMAT_VERSION = 1;
+    private static final int END = 0;
+    private static final int DIRECTORY = 1;
+    private static final int INLINE_FILE = 2;
+    private static final int BLOB_FILE = 3;
+    // Storing small files separately would cost more in requests than it saves in transfer
+    private static final int INLINE_THRESHOLD = 4 * 1024;
+    // Larger files are buffered in a temporary file while they are hashed and stored
+    private static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+    private final TaskOutputCache delegate;
+    private final TaskOutputCache backingCache;
+    private final TaskOutputCompression compression;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final Set<String> knownBlobs = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param delegate the cache to store manifests and blobs in.
+     * @param backingCache the cache that decides whether a blob needs to be stored, usually the one furthest away.
+     * It must be the delegate itself, or a cache that the delegate stores everything in.
+     * @param compression the compression used for manifests and blobs.
+     */
+    public ContentAddressedTaskOutputCache(TaskOutputCache delegate, TaskOutputCache backingCache, TaskOutputCompression compression, TemporaryFileProvider temporaryFileProvider) {
+        this.delegate = delegate;
+        this.backingCache = backingCache;
+        this.compression = compression;
+        this.temporaryFileProvider = temporaryFileProvider;
+    }
+
+    @Override
+    public boolean load(TaskCacheKey key, final TaskOutputReader reader) throws IOException {
+        final AtomicReference<byte[]> manifest = new AtomicReference<byte[]>();
+        boolean found = delegate.load(key, new TaskOutputReader() {
+            @Override
+            public void readFrom(InputStream input) throws IOException {
+                PushbackInputStream headerInput = new PushbackInputStream(input, MANIFEST_MAGIC.length);
+                if (readMagic(headerInput, MANIFEST_MAGIC)) {
+                    manifest.set(ByteStreams.toByteArray(headerInput));
+                } else {
+                    reader.readFrom(headerInput);
+                }
+            }
+        });
+        if (!found || manifest.get() == null) {
+            return found;
+        }
+
+        File archive = temporaryFileProvider.createTemporaryFile("task-output-", ".bin", "task-output-cache");
+        try {
+            if (!assemble(key, manifest.get(), archive)) {
+                return false;
+            }
+            Closer closer = Closer.create();
+            InputStream input = closer.register(new FileInputStream(archive));
+            try {
+                reader.readFrom(input);
+            } catch (Throwable ex) {
+                throw closer.rethrow(ex);
+            } finally {
+                closer.close();
+            }
+            return true;
+        } finally {
+            delete(archive);
+        }
+    }
+
+    /**
+     * Writes the archive described by the manifest to the given file, uncompressed.
+     *
+     * @return {@code false} if any of the blobs is missing.
+     */
+    private boolean assemble(TaskCacheKey key, byte[] manifest, File archive) throws IOException {
+        DataInputStream input = openManifest(manifest);
+        Closer closer = Closer.create();
+        OutputStream fileOutput = closer.register(new FileOutputStream(archive));
+        try {
+            TarOutputStream tarOutput = new TarOutputStream(CompressingTaskOutputPacker.compress(new BufferedOutputStream(fileOutput), TaskOutputCompression.STORE), "utf-8");
+            tarOutput.setLongFileMode(TarOutputStream.LONGFILE_POSIX);
+            tarOutput.setBigNumberMode(TarOutputStream.BIGNUMBER_POSIX);
+            tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+            int type;
+            while ((type = input.readByte()) != END) {
+                TarEntry entry = new TarEntry(input.readUTF());
+                entry.setMode(input.readInt());
+                entry.setModTime(input.readLong());
+                entry.setGroupId(input.readLong());
+                switch (type) {
+                    case DIRECTORY:
+                        tarOutput.putNextEntry(entry);
+                        break;
+                    case INLINE_FILE:
+                        entry.setSize(input.readLong());
+                        tarOutput.putNextEntry(entry);
+                        copy(ByteStreams.limit(input, entry.getSize()), tarOutput, entry.getSize(), entry.getName());
+                        break;
+                    case BLOB_FILE:
+                        entry.setSize(input.readLong());
+                        String hash = input.readUTF();
+                        tarOutput.putNextEntry(entry);
+                        if (!loadBlob(key, hash, entry, tarOutput)) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Cached result format error, unknown manifest entry: " + type);
+                }
+                tarOutput.closeEntry();
+            }
+            tarOutput.close();
+        } catch (Throwable ex) {
+            throw closer.rethrow(ex);
+        } finally {
+            closer.close();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the contents of the blob to the given output.
+     *
+     * @return {@code false} if the blob is missing, or its contents do not match its hash.
+     */
+    private boolean loadBlob(TaskCacheKey key, final String hash, final TarEntry entry, final OutputStream output) throws IOException {
+        final AtomicBoolean valid = new AtomicBoolean();
+        boolean found = delegate.load(new BlobKey(hash), new TaskOutputReader() {
+            @Override
+            public void readFrom(InputStream input) throws IOException {
+                byte[] header = new byte[BLOB_MAGIC.length + 1];
+                ByteStreams.readFully(input, header);
+                if (header[0] != BLOB_MAGIC[0] || header[1] != BLOB_MAGIC[1]) {
+                    throw new IllegalStateException("Cached result format error, invalid content header for " + hash);
+                }
+                InputStream content = readCompression(header[2]).decompress(input);
+                // Don't write more than the size of the entry, so that a blob that is too long is reported as corrupt
+                HashingOutputStream hashingOutput = new HashingOutputStream(Hashing.md5(), output);
+                long copied = ByteStreams.copy(ByteStreams.limit(content, entry.getSize()), hashingOutput);
+                valid.set(copied == entry.getSize() && content.read() < 0 && hashingOutput.hash().toString().equals(hash));
+            }
+        });
+        if (!found) {
+            LOGGER.info("Content {} of cached result with cache key {} is missing, treating result as not cached", hash, key);
+            return false;
+        }
+        if (!valid.get()) {
+            LOGGER.warn("Content {} of cached result with cache key {} is corrupt, treating result as not cached", hash, key);
+            return false;
+        }
+        return true;
+    }
+
+    private static DataInputStream openManifest(byte[] manifest) throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(manifest);
+        int version = input.read();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Cached result format error, unsupported manifest version: " + version);
+        }
+        return new DataInputStream(readCompression(input.read()).decompress(input));
+    }
+
+    @Override
+    public void store(TaskCacheKey key, TaskOutputWriter writer) throws IOException {
+        File archive = temporaryFileProvider.createTemporaryFile("task-output-", ".bin", "task-output-cache");
+        try {
+            Closer closer = Closer.create();
+            OutputStream output = closer.register(new FileOutputStream(archive));
+            try {
+                writer.writeTo(output);
+            } catch (Throwable ex) {
+                throw closer.rethrow(ex);
+            } finally {
+                closer.close();
+            }
+
+            final byte[] manifest = createManifest(archive);
+            delegate.store(key, new TaskOutputWriter() {
+                @Override
+                public void writeTo(OutputStream output) throws IOException {
+                    output.write(MANIFEST_MAGIC);
+                    output.write(manifest);
+                }
+            });
+        } finally {
+            delete(archive);
+        }
+    }
+
+    /**
+     * Stores the contents of the larger files in the archive as blobs, and returns the manifest describing the archive.
+     */
+    private byte[] createManifest(File archive) throws IOException {
+        List<String> blobHashes = hashBlobs(archive);
+        Set<String> storedBlobs = findStoredBlobs(blobHashes);
+        Iterator<String> blobHashIterator = blobHashes.iterator();
+
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        manifest.write(FORMAT_VERSION);
+        manifest.write(compression.getId());
+        DataOutputStream output = new DataOutputStream(compression.compress(manifest));
+        Closer closer = Closer.create();
+        InputStream fileInput = closer.register(new FileInputStream(archive));
+        try {
+            TarInputStream input = new TarInputStream(CompressingTaskOutputPacker.decompress(new BufferedInputStream(fileInput)));
+            TarEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    writeEntry(DIRECTORY, entry, output);
+                } else if (entry.getSize() <= INLINE_THRESHOLD) {
+                    writeEntry(INLINE_FILE, entry, output);
+                    output.writeLong(entry.getSize());
+                    copy(input, output, entry.getSize(), entry.getName());
+                } else {
+                    String hash = blobHashIterator.next();
+                    if (storedBlobs.contains(hash) || knownBlobs.contains(hash)) {
+                        LOGGER.debug("Content {} is already stored in {}", hash, backingCache.getDescription());
+                    } else {
+                        storeBlob(hash, entry, input);
+                    }
+                    knownBlobs.add(hash);
+                    writeEntry(BLOB_FILE, entry, output);
+                    output.writeLong(entry.getSize());
+                    output.writeUTF(hash);
+                }
+            }
+            output.writeByte(END);
+            output.close();
+        } catch (Throwable ex) {
+            throw closer.rethrow(ex);
+        } finally {
+            closer.close();
+        }
+        return manifest.toByteArray();
+    }
+
+    private static void writeEntry(int type, TarEntry entry, DataOutputStream output) throws IOException {
+        output.writeByte(type);
+        output.writeUTF(entry.getName());
+        output.writeInt(entry.getMode());
+        output.writeLong(entry.getModTime().getTime());
+        output.writeLong(entry.getLongGroupId());
+    }
+
+    /**
+     * Returns the hashes of the contents of the files in the archive that are stored as blobs, in the order of the archive.
+     */
+    private static List<String> hashBlobs(File archive) throws IOException {
+        List<String> hashes = Lists.newArrayList();
+        Closer closer = Closer.create();
+        InputStream fileInput = closer.register(new FileInputStream(archive));
+        try {
+            TarInputStream input = new TarInputStream(CompressingTaskOutputPacker.decompress(new BufferedInputStream(fileInput)));
+            TarEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getSize() > INLINE_THRESHOLD) {
+                    HashingInputStream hashingInput = new HashingInputStream(Hashing.md5(), ByteStreams.limit(input, entry.getSize()));
+                    copy(hashingInput, ByteStreams.nullOutputStream(), entry.getSize(), entry.getName());
+                    hashes.add(hashingInput.hash().toString());
+                }
+            }
+        } catch (Throwable ex) {
+            throw closer.rethrow(ex);
+        } finally {
+            closer.close();
+        }
+        return hashes;
+    }
+
+    /**
+     * Probes the backing cache for the given blobs at once, returning the hashes of those already stored.
+     */
+    private Set<String> findStoredBlobs(List<String> hashes) throws IOException {
+        if (!(backingCache instanceof ProbingTaskOutputCache)) {
+            return Collections.emptySet();
+        }
+        Set<String> unknownHashes = Sets.newLinkedHashSet();
+        for (String hash : hashes) {
+            if (!knownBlobs.contains(hash)) {
+                unknownHashes.add(hash);
+            }
+        }
+        if (unknownHashes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<TaskCacheKey> keys = Lists.newArrayListWithCapacity(unknownHashes.size());
+        for (String hash : unknownHashes) {
+            keys.add(new BlobKey(hash));
+        }
+        return ((ProbingTaskOutputCache) backingCache).probe(keys);
+    }
+
+    private void storeBlob(String hash, TarEntry entry, InputStream input) throws IOException {
+        if (entry.getSize() <= MEMORY_THRESHOLD) {
+            byte[] content = new byte[(int) entry.getSize()];
+            ByteStreams.readFully(input, content);
+            storeBlob(hash, ByteSource.wrap(content));
+            return;
+        }
+        File contentFile = temporaryFileProvider.createTemporaryFile("task-output-", ".bin", "task-output-cache");
+        try {
+            OutputStream output = new FileOutputStream(contentFile);
+            try {
+                copy(input, output, entry.getSize(), entry.getName());
+            } finally {
+                output.close();
+            }
+            storeBlob(hash, Files.asByteSource(contentFile));
+        } finally {
+            delete(contentFile);
+        }
+    }
+
+    private void storeBlob(String hash, final ByteSource content) throws IOException {
+        delegate.store(new BlobKey(hash), new TaskOutputWriter() {
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                output.write(BLOB_MAGIC);
+                output.write(compression.getId());
+                OutputStream compressedOutput = compression.compress(output);
+                try {
+                    content.copyTo(compressedOutput);
+                } finally {
+                    compressedOutput.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public Set<String> probe(Collection<TaskCacheKey> keys) throws IOException {
+        if (delegate instanceof ProbingTaskOutputCache) {
+            return ((ProbingTaskOutputCache) delegate).probe(keys);
+        }
+        // Nothing is known about the keys, so report all of them as possibly present
+        Set<String> all = Sets.newHashSet();
+        for (TaskCacheKey key : keys) {
+            all.add(key.getHashCode());
+        }
+        return all;
+    }
+
+    private static TaskOutputCompression readCompression(int id) {
+        TaskOutputCompression compression = id < 0 ? null : TaskOutputCompression.forId(id);
+        if (compression == null) {
+            throw new IllegalStateException("Cached result format error, unknown compression: " + id);
+        }
+        return compression;
+    }
+
+    private static boolean readMagic(PushbackInputStream input, byte[] magic) throws IOException {
+        byte[] header = new byte[magic.length];
+        int length = ByteStreams.read(input, header, 0, header.length);
+        if (length == header.length && Arrays.equals(header, magic)) {
+            return true;
+        }
+        input.unread(header, 0, length);
+        return false;
+    }
+
+    private static void copy(InputStream input, OutputStream output, long size, String name) throws IOException {
+        long copied = ByteStreams.copy(input, output);
+        if (copied != size) {
+            throw new IllegalStateException(String.format("Cached result format error, expected %d bytes for '%s' but found %d", size, name, copied));
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            LOGGER.debug("Could not delete temporary file {}", file);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "content addressed " + delegate.getDescription();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private static class BlobKey implements TaskCacheKey {
+        private final String hash;
+
+        private BlobKey(String hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public String getHashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return hash;
+        }
+    }
+}
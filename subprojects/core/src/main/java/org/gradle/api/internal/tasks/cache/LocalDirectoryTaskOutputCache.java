@@ -16,12 +16,15 @@
 
 package org.gradle.api.internal.tasks.cache;
 
+import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
 import org.gradle.internal.Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
@@ -29,26 +32,32 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Set;
 
 import static org.gradle.cache.internal.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
-public class LocalDirectoryTaskOutputCache implements TaskOutputCache, Closeable {
+public class LocalDirectoryTaskOutputCache implements ProbingTaskOutputCache, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalDirectoryTaskOutputCache.class);
+
     private final PersistentCache persistentCache;
+    private final LocalDirectoryTaskOutputCacheCleaner cleaner;
 
-    public LocalDirectoryTaskOutputCache(CacheRepository cacheRepository, File directory) {
-        this(cacheRepository.cache(checkDirectory(directory)));
+    public LocalDirectoryTaskOutputCache(CacheRepository cacheRepository, File directory, LocalDirectoryTaskOutputCacheCleaner cleaner) {
+        this(cacheRepository.cache(checkDirectory(directory)), cleaner);
     }
 
-    public LocalDirectoryTaskOutputCache(CacheRepository cacheRepository, String cacheKey) {
-        this(cacheRepository.cache(cacheKey));
+    public LocalDirectoryTaskOutputCache(CacheRepository cacheRepository, String cacheKey, LocalDirectoryTaskOutputCacheCleaner cleaner) {
+        this(cacheRepository.cache(cacheKey), cleaner);
     }
 
-    private LocalDirectoryTaskOutputCache(CacheBuilder cacheBuilder) {
+    private LocalDirectoryTaskOutputCache(CacheBuilder cacheBuilder, LocalDirectoryTaskOutputCacheCleaner cleaner) {
         this.persistentCache = cacheBuilder
             .withDisplayName("Task output cache")
             .withLockOptions(mode(None))
             .open();
+        this.cleaner = cleaner;
     }
 
     private static File checkDirectory(File directory) {
@@ -77,6 +86,10 @@ public class LocalDirectoryTaskOutputCache implements TaskOutputCache, Closeable
             public Boolean create() {
                 File file = getFile(key.getHashCode());
                 if (file.isFile()) {
+                    // Record the access, so that recently used entries are kept when cleaning up the cache
+                    if (!file.setLastModified(System.currentTimeMillis())) {
+                        LOGGER.debug("Could not update access time of {}", file);
+                    }
                     try {
                         Closer closer = Closer.create();
                         FileInputStream stream = closer.register(new FileInputStream(file));
@@ -104,14 +117,27 @@ public class LocalDirectoryTaskOutputCache implements TaskOutputCache, Closeable
             public void run() {
                 File file = getFile(key.getHashCode());
                 try {
-                    Closer closer = Closer.create();
-                    OutputStream output = closer.register(new FileOutputStream(file));
+                    // Write to a temporary file first, so that a failed or interrupted write never leaves a partial entry behind
+                    File tempFile = File.createTempFile(key.getHashCode(), ".part", persistentCache.getBaseDir());
                     try {
-                        result.writeTo(output);
-                    } catch (Throwable ex) {
-                        throw closer.rethrow(ex);
+                        Closer closer = Closer.create();
+                        OutputStream output = closer.register(new FileOutputStream(tempFile));
+                        try {
+                            result.writeTo(output);
+                        } catch (Throwable ex) {
+                            throw closer.rethrow(ex);
+                        } finally {
+                            closer.close();
+                        }
+                        if (!tempFile.renameTo(file)) {
+                            if (!file.delete() || !tempFile.renameTo(file)) {
+                                throw new IOException(String.format("Could not move temporary file %s to %s", tempFile, file));
+                            }
+                        }
                     } finally {
-                        closer.close();
+                        if (tempFile.exists() && !tempFile.delete()) {
+                            tempFile.deleteOnExit();
+                        }
                     }
                 } catch (IOException ex) {
                     throw new UncheckedIOException(ex);
@@ -120,6 +146,22 @@ public class LocalDirectoryTaskOutputCache implements TaskOutputCache, Closeable
         });
     }
 
+    @Override
+    public Set<String> probe(final Collection<TaskCacheKey> keys) throws IOException {
+        return persistentCache.useCache("probe task outputs", new Factory<Set<String>>() {
+            @Override
+            public Set<String> create() {
+                Set<String> found = Sets.newHashSet();
+                for (TaskCacheKey key : keys) {
+                    if (getFile(key.getHashCode()).isFile()) {
+                        found.add(key.getHashCode());
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
     private File getFile(String key) {
         return new File(persistentCache.getBaseDir(), key);
     }
@@ -132,5 +174,6 @@ public class LocalDirectoryTaskOutputCache implements TaskOutputCache, Closeable
     @Override
     public void close() throws IOException {
         persistentCache.close();
+        cleaner.cleanupInBackground(persistentCache.getBaseDir());
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.Lists;
+import org.gradle.internal.concurrent.AsyncStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes least recently used entries from the directory of a {@link LocalDirectoryTaskOutputCache}.
+ *
+ * <p>The cache updates the modification time of an entry whenever it is loaded, so the modification time
+ * is used as the last access time. Entries older than the maximum age are removed first, then the least
+ * recently used entries are removed until the cache fits into the target size.</p>
+ *
+ * <p>Cleanup runs on a background thread and does not hold the cache lock, so builds can keep reading
+ * from the cache while it runs. A build that tries to load an entry just removed will simply miss.
+ * Stopping the cleaner waits for a running cleanup for a limited time, after which the cleanup is abandoned.</p>
+ */
+public class LocalDirectoryTaskOutputCacheCleaner implements AsyncStoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalDirectoryTaskOutputCacheCleaner.class);
+    private static final long STALE_TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+    private static final int STOP_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorFactory executorFactory;
+    private final long targetSizeInBytes;
+    private final long maxAgeInMillis;
+    private final Set<File> directoriesBeingCleaned = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private StoppableExecutor executor;
+
+    /**
+     * @param targetSizeInBytes the size the cache is trimmed to, or a non-positive value for no size limit.
+     * @param maxAgeInMillis the time after which unused entries are removed, or a non-positive value for no age limit.
+     */
+    public LocalDirectoryTaskOutputCacheCleaner(ExecutorFactory executorFactory, long targetSizeInBytes, long maxAgeInMillis) {
+        this.executorFactory = executorFactory;
+        this.targetSizeInBytes = targetSizeInBytes;
+        this.maxAgeInMillis = maxAgeInMillis;
+    }
+
+    public boolean isEnabled() {
+        return targetSizeInBytes > 0 || maxAgeInMillis > 0;
+    }
+
+    /**
+     * Schedules cleaning up the given cache directory in the background. Does nothing when the directory is already being cleaned.
+     */
+    public void cleanupInBackground(final File directory) {
+        if (!isEnabled() || !directoriesBeingCleaned.add(directory)) {
+            return;
+        }
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cleanup(directory);
+                } catch (Exception e) {
+                    LOGGER.warn("Could not clean up task output cache in {}", directory, e);
+                } finally {
+                    directoriesBeingCleaned.remove(directory);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cleans up the given cache directory on the calling thread.
+     */
+    public void cleanup(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long totalSize = 0;
+        List<AccessedEntry> entries = Lists.newArrayListWithCapacity(files.length);
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            String name = file.getName();
+            if (name.endsWith(".part")) {
+                // Left behind by a store that crashed
+                if (now - file.lastModified() > STALE_TEMP_FILE_AGE) {
+                    delete(file);
+                }
+            } else if (name.indexOf('.') == -1) {
+                // Snapshot the access time, as concurrent loads may update it while sorting
+                AccessedEntry entry = new AccessedEntry(file, file.lastModified(), file.length());
+                entries.add(entry);
+                totalSize += entry.size;
+            }
+        }
+
+        Collections.sort(entries, new Comparator<AccessedEntry>() {
+            @Override
+            public int compare(AccessedEntry o1, AccessedEntry o2) {
+                return o1.lastAccessTime < o2.lastAccessTime ? -1 : o1.lastAccessTime == o2.lastAccessTime ? 0 : 1;
+            }
+        });
+
+        int removed = 0;
+        long removedSize = 0;
+        for (AccessedEntry entry : entries) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Abandoned when the cleaner was stopped, the rest is removed by the next cleanup
+                break;
+            }
+            boolean tooOld = maxAgeInMillis > 0 && now - entry.lastAccessTime > maxAgeInMillis;
+            boolean tooBig = targetSizeInBytes > 0 && totalSize - removedSize > targetSizeInBytes;
+            if (!tooOld && !tooBig) {
+                // Entries are sorted by access time, so none of the remaining ones need to be removed
+                break;
+            }
+            if (delete(entry.file)) {
+                removed++;
+                removedSize += entry.size;
+            }
+        }
+        if (removed > 0) {
+            LOGGER.info("Removed {} entries ({} bytes) from task output cache in {}", removed, removedSize, directory);
+        }
+    }
+
+    private static boolean delete(File file) {
+        if (file.delete()) {
+            return true;
+        }
+        // Might be in use on Windows, we'll try again next time
+        LOGGER.debug("Could not remove {} from task output cache", file);
+        return false;
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Task output cache cleanup", 1);
+        }
+        return executor;
+    }
+
+    /**
+     * Stops accepting cleanups, letting any pending cleanup finish in the background.
+     */
+    @Override
+    public synchronized void requestStop() {
+        if (executor != null) {
+            executor.requestStop();
+            executor = null;
+        }
+    }
+
+    /**
+     * Stops accepting cleanups, and waits for any pending cleanup to finish. A cleanup that does not finish in time is interrupted.
+     */
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            try {
+                executor.stop(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (IllegalStateException e) {
+                LOGGER.info("Timed out after {} seconds waiting for task output cache cleanup to finish, the cleanup was abandoned.", STOP_TIMEOUT_SECONDS);
+            }
+            executor = null;
+        }
+    }
+
+    private static class AccessedEntry {
+        private final File file;
+        private final long lastAccessTime;
+        private final long size;
+
+        private AccessedEntry(File file, long lastAccessTime, long size) {
+            this.file = file;
+            this.lastAccessTime = lastAccessTime;
+            this.size = size;
+        }
+    }
+}
@@ -16,13 +16,16 @@
 
 package org.gradle.api.internal.tasks.cache;
 
+import com.google.common.collect.Sets;
 import org.gradle.internal.io.StreamByteBuffer;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
-public class MapBasedTaskOutputCache implements TaskOutputCache {
+public class MapBasedTaskOutputCache implements ProbingTaskOutputCache {
     private final String description;
     private final ConcurrentMap<String, byte[]> delegate;
 
@@ -53,6 +56,17 @@ public class MapBasedTaskOutputCache implements TaskOutputCache {
         delegate.put(key.getHashCode(), buffer.readAsByteArray());
     }
 
+    @Override
+    public Set<String> probe(Collection<TaskCacheKey> keys) throws IOException {
+        Set<String> found = Sets.newHashSet();
+        for (TaskCacheKey key : keys) {
+            if (delegate.containsKey(key.getHashCode())) {
+                found.add(key.getHashCode());
+            }
+        }
+        return found;
+    }
+
     @Override
     public void close() throws IOException {
         // Do nothing
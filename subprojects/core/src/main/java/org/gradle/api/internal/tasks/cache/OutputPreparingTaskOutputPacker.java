@@ -20,6 +20,8 @@ import org.apache.commons.io.FileUtils;
 import org.gradle.api.internal.TaskOutputsInternal;
 import org.gradle.api.internal.tasks.properties.CacheableTaskOutputFilePropertySpec;
 import org.gradle.api.internal.tasks.properties.TaskOutputFilePropertySpec;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
 
 import java.io.File;
 import java.io.IOException;
@@ -29,7 +31,7 @@ import java.io.OutputStream;
 /**
  * Prepares a task's outputs to be loaded from cache: removes any previous output and makes sure the output directories exist.
  */
-public class OutputPreparingTaskOutputPacker implements TaskOutputPacker {
+public class OutputPreparingTaskOutputPacker implements TaskOutputPacker, Stoppable {
     private final TaskOutputPacker delegate;
 
     public OutputPreparingTaskOutputPacker(TaskOutputPacker delegate) {
@@ -77,4 +79,9 @@ public class OutputPreparingTaskOutputPacker implements TaskOutputPacker {
         FileUtils.forceMkdir(output);
         return true;
     }
+
+    @Override
+    public void stop() {
+        CompositeStoppable.stoppable(delegate).stop();
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A task output cache that can check whether it has entries for many keys in a single call.
+ */
+public interface ProbingTaskOutputCache extends TaskOutputCache {
+    /**
+     * Checks which of the given task cache keys may have an entry in the cache. Keys that are not returned are
+     * known to be missing, so there is no need to look them up.
+     *
+     * @param keys the cache keys to check.
+     * @return the hash codes of the keys that may have an entry in the cache.
+     * @throws IOException if an I/O error occurs.
+     */
+    Set<String> probe(Collection<TaskCacheKey> keys) throws IOException;
+}
@@ -19,7 +19,9 @@ package org.gradle.api.internal.tasks.cache;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
@@ -29,6 +31,7 @@ import org.apache.tools.tar.TarOutputStream;
 import org.apache.tools.zip.UnixStat;
 import org.gradle.api.GradleException;
 import org.gradle.api.JavaVersion;
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
 import org.gradle.api.file.RelativePath;
@@ -39,15 +42,24 @@ import org.gradle.api.internal.tasks.properties.CacheableTaskOutputFilePropertyS
 import org.gradle.api.internal.tasks.properties.TaskFilePropertySpec;
 import org.gradle.api.internal.tasks.properties.TaskOutputFilePropertySpec;
 import org.gradle.api.specs.Specs;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,17 +67,34 @@ import java.util.regex.Pattern;
  * Packages task output to a POSIX TAR file. Because Ant's TAR implementation
  * supports only 1 second precision for file modification times, we encode the
  * fractional nanoseconds into the group ID of the file.
+ *
+ * <p>When an {@link ExecutorFactory} is given, small files are read from the archive into
+ * a reused buffer and written by a small pool of threads, so that writing them overlaps
+ * with reading the rest of the archive. Larger files are streamed directly to disk while
+ * reading. Directories are created as soon as they are read, and their permissions and
+ * modification times are applied once all the files in them have been written. The pool is
+ * shared by all unpacks, and is stopped when the packer is stopped.</p>
  */
-public class TarTaskOutputPacker implements TaskOutputPacker {
+public class TarTaskOutputPacker implements TaskOutputPacker, Stoppable {
     private static final Pattern PROPERTY_PATH = Pattern.compile("property-([^/]+)(?:/(.*))?");
     private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int UNPACK_THREAD_COUNT = 4;
+    private static final int BUFFERS_PER_THREAD = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private final DefaultDirectoryWalkerFactory directoryWalkerFactory;
     private final FileSystem fileSystem;
+    private final ExecutorFactory executorFactory;
+    private StoppableExecutor executor;
 
     public TarTaskOutputPacker(FileSystem fileSystem) {
+        this(fileSystem, null);
+    }
+
+    public TarTaskOutputPacker(FileSystem fileSystem, @Nullable ExecutorFactory executorFactory) {
         this.directoryWalkerFactory = new DefaultDirectoryWalkerFactory(JavaVersion.current(), fileSystem);
         this.fileSystem = fileSystem;
+        this.executorFactory = executorFactory;
     }
 
     @Override
@@ -198,42 +227,199 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
                 return propertySpec.getPropertyName();
             }
         });
-        TarEntry entry;
-        while ((entry = tarInput.getNextEntry()) != null) {
-            String name = entry.getName();
-            Matcher matcher = PROPERTY_PATH.matcher(name);
-            if (!matcher.matches()) {
-                throw new IllegalStateException("Cached result format error, invalid contents: " + name);
+        EntryWriter writer = new EntryWriter();
+        try {
+            TarEntry entry;
+            while ((entry = tarInput.getNextEntry()) != null) {
+                String name = entry.getName();
+                Matcher matcher = PROPERTY_PATH.matcher(name);
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("Cached result format error, invalid contents: " + name);
+                }
+                String propertyName = matcher.group(1);
+                CacheableTaskOutputFilePropertySpec propertySpec = (CacheableTaskOutputFilePropertySpec) propertySpecs.get(propertyName);
+                if (propertySpec == null) {
+                    throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+                }
+
+                File specRoot = propertySpec.getOutputFile();
+                String path = matcher.group(2);
+                File outputFile;
+                if (Strings.isNullOrEmpty(path)) {
+                    outputFile = specRoot;
+                } else {
+                    outputFile = new File(specRoot, path);
+                }
+                //noinspection OctalInteger
+                int mode = entry.getMode() & 0777;
+                long lastModified = getModificationTime(entry);
+                if (entry.isDirectory()) {
+                    if (propertySpec.getOutputType() != OutputType.DIRECTORY) {
+                        throw new IllegalStateException("Property should be an output directory property: " + propertyName);
+                    }
+                    FileUtils.forceMkdir(outputFile);
+                    writer.directoryCreated(outputFile, mode, lastModified);
+                } else {
+                    writer.writeFile(outputFile, entry.getSize(), mode, lastModified, tarInput);
+                }
             }
-            String propertyName = matcher.group(1);
-            CacheableTaskOutputFilePropertySpec propertySpec = (CacheableTaskOutputFilePropertySpec) propertySpecs.get(propertyName);
-            if (propertySpec == null) {
-                throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+            writer.finish();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Task output unpack", UNPACK_THREAD_COUNT);
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the threads used for unpacking, waiting for any pending writes to finish.
+     */
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.stop();
+            executor = null;
+        }
+    }
+
+    private void applyMetadata(File file, int mode, long lastModified) throws IOException {
+        fileSystem.chmod(file, mode);
+        if (!file.setLastModified(lastModified)) {
+            throw new IOException(String.format("Could not set modification time for '%s'", file));
+        }
+    }
+
+    /**
+     * Writes the entries of a single archive, possibly using a pool of threads.
+     */
+    private class EntryWriter {
+        private final List<DirectoryMetadata> directories = Lists.newArrayList();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(UNPACK_THREAD_COUNT * BUFFERS_PER_THREAD);
+        private int buffersCreated;
+        // Guarded by this writer
+        private int pendingWrites;
+
+        void directoryCreated(File directory, int mode, long lastModified) {
+            // Writing files into the directory would change its modification time, and its permissions could prevent writing them
+            directories.add(new DirectoryMetadata(directory, mode, lastModified));
+        }
+
+        void writeFile(final File file, long size, final int mode, final long lastModified, InputStream input) throws IOException {
+            rethrowFailure();
+            if (executorFactory == null || size > BUFFER_SIZE) {
+                Files.asByteSink(file).writeFrom(input);
+                applyMetadata(file, mode, lastModified);
+                return;
             }
 
-            File specRoot = propertySpec.getOutputFile();
-            String path = matcher.group(2);
-            File outputFile;
-            if (Strings.isNullOrEmpty(path)) {
-                outputFile = specRoot;
-            } else {
-                outputFile = new File(specRoot, path);
+            final byte[] buffer = takeBuffer();
+            final int length = (int) size;
+            try {
+                ByteStreams.readFully(input, buffer, 0, length);
+            } catch (IOException e) {
+                buffers.add(buffer);
+                throw e;
+            }
+            synchronized (this) {
+                pendingWrites++;
             }
-            if (entry.isDirectory()) {
-                if (propertySpec.getOutputType() != OutputType.DIRECTORY) {
-                    throw new IllegalStateException("Property should be an output directory property: " + propertyName);
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (failure.get() == null) {
+                            FileOutputStream output = new FileOutputStream(file);
+                            try {
+                                output.write(buffer, 0, length);
+                            } finally {
+                                output.close();
+                            }
+                            applyMetadata(file, mode, lastModified);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        buffers.add(buffer);
+                        writeFinished();
+                    }
                 }
-                FileUtils.forceMkdir(outputFile);
-            } else {
-                Files.asByteSink(outputFile).writeFrom(tarInput);
+            });
+        }
+
+        private synchronized void writeFinished() {
+            pendingWrites--;
+            notifyAll();
+        }
+
+        private synchronized void waitForPendingWrites() {
+            try {
+                while (pendingWrites > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+
+        private byte[] takeBuffer() {
+            byte[] buffer = buffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+            if (buffersCreated < UNPACK_THREAD_COUNT * BUFFERS_PER_THREAD) {
+                buffersCreated++;
+                return new byte[BUFFER_SIZE];
             }
-            //noinspection OctalInteger
-            fileSystem.chmod(outputFile, entry.getMode() & 0777);
-            long lastModified = getModificationTime(entry);
-            if (!outputFile.setLastModified(lastModified)) {
-                throw new IOException(String.format("Could not set modification time for '%s'", outputFile));
+            try {
+                // Wait for a pending write to finish, so that we don't read ahead too far
+                return buffers.take();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
             }
         }
+
+        /**
+         * Waits for pending writes to finish, then applies the metadata of the directories, innermost first.
+         */
+        void finish() throws IOException {
+            waitForPendingWrites();
+            rethrowFailure();
+            for (DirectoryMetadata directory : Lists.reverse(directories)) {
+                applyMetadata(directory.directory, directory.mode, directory.lastModified);
+            }
+        }
+
+        void abort() {
+            // Make sure no writes are left running when the archive could not be read
+            failure.compareAndSet(null, new IllegalStateException("Unpacking was aborted"));
+            waitForPendingWrites();
+        }
+
+        private void rethrowFailure() throws IOException {
+            Throwable throwable = failure.get();
+            if (throwable != null) {
+                Throwables.propagateIfPossible(throwable, IOException.class);
+                throw Throwables.propagate(throwable);
+            }
+        }
+    }
+
+    private static class DirectoryMetadata {
+        private final File directory;
+        private final int mode;
+        private final long lastModified;
+
+        private DirectoryMetadata(File directory, int mode, long lastModified) {
+            this.directory = directory;
+            this.mode = mode;
+            this.lastModified = lastModified;
+        }
     }
 
     private static void storeModificationTime(TarEntry entry, long lastModified) {
@@ -24,26 +24,32 @@ import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatistics;
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatisticsListener;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheLoadMetrics;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheStoreMetrics;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheSummary;
 import org.gradle.api.tasks.TaskState;
 import org.gradle.initialization.BuildCompletionListener;
 
 import java.util.Arrays;
 import java.util.Map;
 
-public class TaskExecutionStatisticsEventAdapter implements BuildCompletionListener, TaskExecutionListener {
+public class TaskExecutionStatisticsEventAdapter implements BuildCompletionListener, TaskExecutionListener, TaskOutputCacheLoadListener, TaskOutputCacheStoreListener {
     private final TaskExecutionStatisticsListener listener;
     private final Map<TaskExecutionOutcome, Integer> taskCounts = Maps.newEnumMap(
         Maps.toMap(Arrays.asList(TaskExecutionOutcome.values()), Functions.constant(0))
     );
     private int cacheMissCount;
+    private int storedCount;
+    private int storeFailureCount;
+    private final TaskOutputCacheSummary cacheSummary = new TaskOutputCacheSummary();
 
     public TaskExecutionStatisticsEventAdapter(TaskExecutionStatisticsListener listener) {
         this.listener = listener;
     }
 
     @Override
-    public void completed() {
-        listener.buildFinished(new TaskExecutionStatistics(taskCounts, cacheMissCount));
+    public synchronized void completed() {
+        listener.buildFinished(new TaskExecutionStatistics(taskCounts, cacheMissCount, storedCount, storeFailureCount, cacheSummary));
     }
 
     @Override
@@ -52,7 +58,7 @@ public class TaskExecutionStatisticsEventAdapter implements BuildCompletionListe
     }
 
     @Override
-    public void afterExecute(Task task, TaskState state) {
+    public synchronized void afterExecute(Task task, TaskState state) {
         TaskStateInternal stateInternal = (TaskStateInternal) state;
         TaskExecutionOutcome outcome = stateInternal.getOutcome();
         taskCounts.put(outcome, taskCounts.get(outcome) + 1);
@@ -60,4 +66,21 @@ public class TaskExecutionStatisticsEventAdapter implements BuildCompletionListe
             cacheMissCount++;
         }
     }
+
+    @Override
+    public void loadFinished(Task task, TaskCacheKey key, TaskOutputCacheLoadMetrics metrics) {
+        cacheSummary.add(metrics);
+    }
+
+    // Stores may complete on background threads
+    @Override
+    public synchronized void storeCompleted(Task task, TaskCacheKey key, TaskOutputCacheStoreMetrics metrics) {
+        storedCount++;
+        cacheSummary.add(metrics);
+    }
+
+    @Override
+    public synchronized void storeFailed(Task task, TaskCacheKey key, Throwable failure) {
+        storeFailureCount++;
+    }
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import org.gradle.api.Task;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheLoadMetrics;
+
+/**
+ * Notified after each cacheable task with a valid cache key has been looked up in the cache, whether the lookup was a hit or not.
+ */
+public interface TaskOutputCacheLoadListener {
+    void loadFinished(Task task, TaskCacheKey key, TaskOutputCacheLoadMetrics metrics);
+}
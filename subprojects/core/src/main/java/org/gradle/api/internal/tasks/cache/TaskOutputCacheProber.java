@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.gradle.StartParameter;
+import org.gradle.api.Task;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.TaskArtifactState;
+import org.gradle.api.internal.changedetection.TaskArtifactStateRepository;
+import org.gradle.api.internal.tasks.cache.config.TaskCachingInternal;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the {@link TaskOutputCache} used by the build, and probes it for the cache keys of tasks ahead of their execution.
+ *
+ * <p>Before the task graph is executed, the cache keys of the cacheable tasks that do not depend on any other task are
+ * calculated on the build thread, as their inputs are already known. If the cache implements {@link ProbingTaskOutputCache},
+ * these keys are then checked in batches by a background thread, so that looking up keys known to be missing can be skipped
+ * once the tasks run. Keys that have not been probed yet are looked up as usual. Probing is only done when
+ * {@link org.gradle.execution.taskgraph.CacheProbingTaskPlanExecutor#TOGGLE} is set.</p>
+ */
+public class TaskOutputCacheProber implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskOutputCacheProber.class);
+    private static final int BATCH_SIZE = 32;
+
+    private final TaskCachingInternal taskCaching;
+    private final StartParameter startParameter;
+    private final TaskArtifactStateRepository repository;
+    private final ExecutorFactory executorFactory;
+    private final Map<String, Boolean> probedKeys = Maps.newConcurrentMap();
+    private volatile boolean stopped;
+    private TaskOutputCache cache;
+    private StoppableExecutor executor;
+
+    public TaskOutputCacheProber(TaskCachingInternal taskCaching, StartParameter startParameter, TaskArtifactStateRepository repository, ExecutorFactory executorFactory) {
+        this.taskCaching = taskCaching;
+        this.startParameter = startParameter;
+        this.repository = repository;
+        this.executorFactory = executorFactory;
+    }
+
+    public synchronized TaskOutputCache getCache() {
+        if (cache == null) {
+            cache = taskCaching.getCacheFactory().createCache(startParameter);
+            LOGGER.info("Using {}", cache.getDescription());
+        }
+        return cache;
+    }
+
+    /**
+     * Calculates the cache keys of the given tasks and starts probing the cache for them in the background.
+     * Must be called before any of the tasks start executing.
+     */
+    public void probe(Iterable<? extends Task> tasks) {
+        if (!taskCaching.isPullAllowed()) {
+            return;
+        }
+        final TaskOutputCache cache = getCache();
+        if (!(cache instanceof ProbingTaskOutputCache)) {
+            LOGGER.debug("Not probing {} as it does not support probing", cache.getDescription());
+            return;
+        }
+
+        List<TaskCacheKey> keys = Lists.newArrayList();
+        for (Task task : tasks) {
+            TaskCacheKey key = calculateCacheKey((TaskInternal) task);
+            if (key != null && !probedKeys.containsKey(key.getHashCode())) {
+                keys.add(key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        LOGGER.debug("Probing {} for {} cache keys", cache.getDescription(), keys.size());
+        for (final List<TaskCacheKey> batch : Lists.partition(keys, BATCH_SIZE)) {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        Set<String> found = ((ProbingTaskOutputCache) cache).probe(batch);
+                        for (TaskCacheKey key : batch) {
+                            probedKeys.put(key.getHashCode(), found.contains(key.getHashCode()));
+                        }
+                    } catch (Exception e) {
+                        LOGGER.debug("Could not probe {} for cache keys", cache.getDescription(), e);
+                    }
+                }
+            });
+        }
+    }
+
+    private TaskCacheKey calculateCacheKey(TaskInternal task) {
+        TaskOutputsInternal taskOutputs = task.getOutputs();
+        try {
+            if (!taskOutputs.isCacheEnabled() || !taskOutputs.hasDeclaredOutputs() || !taskOutputs.isCacheAllowed()) {
+                return null;
+            }
+            TaskArtifactState taskState = repository.getStateFor(task);
+            try {
+                return taskState.isAllowedToUseCachedResults() ? taskState.calculateCacheKey() : null;
+            } finally {
+                taskState.finished();
+            }
+        } catch (Exception e) {
+            // The task will report the problem when it is executed
+            LOGGER.debug("Could not build cache key for {} ahead of execution", task, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the given key has been probed and found to be missing from the cache.
+     */
+    public boolean isKnownMissing(TaskCacheKey key) {
+        return Boolean.FALSE.equals(probedKeys.get(key.getHashCode()));
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Task output cache probe", 1);
+        }
+        return executor;
+    }
+
+    /**
+     * Abandons any probes that have not started yet, and waits for the running one to finish.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+        StoppableExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import org.gradle.api.Task;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheStoreMetrics;
+
+/**
+ * Notified about the outcome of each attempt to push a task's output to the cache.
+ * Events may be delivered from background threads when outputs are pushed asynchronously.
+ */
+public interface TaskOutputCacheStoreListener {
+    /**
+     * Called when the output for the given cache key has been stored successfully.
+     */
+    void storeCompleted(Task task, TaskCacheKey key, TaskOutputCacheStoreMetrics metrics);
+
+    /**
+     * Called when the output for the given cache key could not be stored.
+     */
+    void storeFailed(Task task, TaskCacheKey key, Throwable failure);
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+import org.gradle.api.Task;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheStoreMetrics;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.time.Timer;
+import org.gradle.internal.time.Timers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes task outputs to a {@link TaskOutputCache}.
+ *
+ * <p>When pushing asynchronously, the packed output is written to a staging file on the calling thread,
+ * so that it is isolated from any later changes to the task's output files. The staged archive is then
+ * uploaded to the cache by a bounded pool of background threads, and the build only waits for pending
+ * uploads when the storer is stopped at the end of the build. The staged archives of pushes that have not started when
+ * the wait times out are deleted.</p>
+ */
+public class TaskOutputStorer implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskOutputStorer.class);
+
+    private final boolean async;
+    private final ExecutorFactory executorFactory;
+    private final int threadCount;
+    private final int drainTimeoutSeconds;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final TaskOutputCacheStoreListener listener;
+    // The staged archives of the pushes that have not yet started
+    private final Set<File> pendingPushes = Sets.newConcurrentHashSet();
+    private StoppableExecutor executor;
+
+    public TaskOutputStorer(boolean async, ExecutorFactory executorFactory, int threadCount, int drainTimeoutSeconds, TemporaryFileProvider temporaryFileProvider, TaskOutputCacheStoreListener listener) {
+        this.async = async;
+        this.executorFactory = executorFactory;
+        this.threadCount = threadCount;
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.listener = listener;
+    }
+
+    /**
+     * Stores the output of the given task. Failures are logged and reported to the {@link TaskOutputCacheStoreListener}, but never thrown.
+     */
+    public void store(final Task task, final TaskOutputCache cache, final TaskCacheKey key, TaskOutputWriter writer) {
+        if (!async) {
+            Timer clock = Timers.startTimer();
+            MeasuringTaskOutputWriter measuringWriter = new MeasuringTaskOutputWriter(writer);
+            if (storeNow(task, cache, key, measuringWriter)) {
+                long packTime = measuringWriter.getElapsedMillis();
+                listener.storeCompleted(task, key, new TaskOutputCacheStoreMetrics(packTime, clock.getElapsedMillis() - packTime, measuringWriter.getSize()));
+            }
+            return;
+        }
+
+        final File stagedFile;
+        final long packTime;
+        try {
+            Timer clock = Timers.startTimer();
+            stagedFile = stage(writer);
+            packTime = clock.getElapsedMillis();
+        } catch (Exception e) {
+            storeFailed(task, key, e);
+            return;
+        }
+
+        LOGGER.debug("Scheduling push of results from {} to cache with cache key {}", task, key);
+        pendingPushes.add(stagedFile);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!pendingPushes.remove(stagedFile)) {
+                    // Abandoned when the storer was stopped
+                    return;
+                }
+                try {
+                    Timer clock = Timers.startTimer();
+                    boolean stored = storeNow(task, cache, key, new TaskOutputWriter() {
+                        @Override
+                        public void writeTo(OutputStream output) throws IOException {
+                            Files.copy(stagedFile, output);
+                        }
+                    });
+                    if (stored) {
+                        listener.storeCompleted(task, key, new TaskOutputCacheStoreMetrics(packTime, clock.getElapsedMillis(), stagedFile.length()));
+                    }
+                } finally {
+                    if (!stagedFile.delete()) {
+                        LOGGER.debug("Could not delete staged task output {}", stagedFile);
+                    }
+                }
+            }
+        });
+    }
+
+    private File stage(TaskOutputWriter writer) throws IOException {
+        File stagedFile = temporaryFileProvider.createTemporaryFile("task-output-", ".bin", "task-output-cache");
+        Closer closer = Closer.create();
+        OutputStream output = closer.register(new FileOutputStream(stagedFile));
+        try {
+            writer.writeTo(output);
+        } catch (Throwable ex) {
+            stagedFile.delete();
+            throw closer.rethrow(ex);
+        } finally {
+            closer.close();
+        }
+        return stagedFile;
+    }
+
+    private boolean storeNow(Task task, TaskOutputCache cache, TaskCacheKey key, TaskOutputWriter writer) {
+        try {
+            cache.store(key, writer);
+            return true;
+        } catch (Exception e) {
+            storeFailed(task, key, e);
+            return false;
+        }
+    }
+
+    private void storeFailed(Task task, TaskCacheKey key, Exception e) {
+        LOGGER.warn("Could not cache results for {} for cache key {}", task, key, e);
+        listener.storeFailed(task, key, e);
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Task output cache push", threadCount);
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for pending pushes to finish, up to the configured drain timeout. This should be called while the build's logging is still
+     * running, so that the outcome is reported.
+     */
+    @Override
+    public void stop() {
+        StoppableExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        LOGGER.info("Waiting for {} pending pushes to task output cache", pendingPushes.size());
+        Timer clock = Timers.startTimer();
+        try {
+            executor.stop(drainTimeoutSeconds, TimeUnit.SECONDS);
+            LOGGER.info("Finished pushing task outputs to cache after {}", clock.getElapsed());
+        } catch (IllegalStateException e) {
+            int abandoned = deleteAbandonedPushes();
+            LOGGER.warn("Timed out after {} seconds waiting for task outputs to be pushed to cache, {} remaining pushes were abandoned.", drainTimeoutSeconds, abandoned);
+        }
+    }
+
+    private int deleteAbandonedPushes() {
+        int abandoned = 0;
+        for (File stagedFile : pendingPushes) {
+            // A push that starts concurrently removes the file from the set first, and deletes it itself
+            if (pendingPushes.remove(stagedFile)) {
+                abandoned++;
+                if (!stagedFile.delete()) {
+                    LOGGER.debug("Could not delete staged task output {}", stagedFile);
+                }
+            }
+        }
+        return abandoned;
+    }
+
+    /**
+     * Measures the time spent writing the packed output, and its size.
+     */
+    private static class MeasuringTaskOutputWriter implements TaskOutputWriter {
+        private final TaskOutputWriter delegate;
+        private long elapsedMillis;
+        private long size;
+
+        MeasuringTaskOutputWriter(TaskOutputWriter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            Timer clock = Timers.startTimer();
+            CountingOutputStream countingOutput = new CountingOutputStream(output);
+            try {
+                delegate.writeTo(countingOutput);
+            } finally {
+                // A cache may write the output more than once, only the last attempt counts
+                elapsedMillis = clock.getElapsedMillis();
+                size = countingOutput.getCount();
+            }
+        }
+
+        long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
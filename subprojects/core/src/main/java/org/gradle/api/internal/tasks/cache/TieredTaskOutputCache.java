@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A task output cache that puts a local cache in front of a remote one.
+ *
+ * <p>Results are looked up in the local cache first. Results found only in the remote cache are copied to the
+ * local cache before being read, so that repeated lookups on the same machine don't need to download the
+ * results again. Results are stored in both caches, with the remote cache receiving a copy of the local entry
+ * so that the task outputs are only packed once.</p>
+ *
+ * <p>Entries are copied between the caches through a staging file, so that the local cache is not kept busy while
+ * the remote cache transfers an entry.</p>
+ *
+ * <p>Probing checks the local cache first, and only asks the remote cache about keys not found locally.
+ * A key is only reported as missing if both caches are known not to have it.</p>
+ */
+public class TieredTaskOutputCache implements ProbingTaskOutputCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TieredTaskOutputCache.class);
+
+    private final TaskOutputCache local;
+    private final TaskOutputCache remote;
+    private final TemporaryFileProvider temporaryFileProvider;
+
+    public TieredTaskOutputCache(TaskOutputCache local, TaskOutputCache remote, TemporaryFileProvider temporaryFileProvider) {
+        this.local = local;
+        this.remote = remote;
+        this.temporaryFileProvider = temporaryFileProvider;
+    }
+
+    @Override
+    public boolean load(final TaskCacheKey key, TaskOutputReader reader) throws IOException {
+        if (local.load(key, reader)) {
+            return true;
+        }
+        final File stagedFile = createStagingFile();
+        try {
+            boolean found = remote.load(key, new TaskOutputReader() {
+                @Override
+                public void readFrom(InputStream input) throws IOException {
+                    copy(input, stagedFile);
+                }
+            });
+            if (!found) {
+                return false;
+            }
+            try {
+                local.store(key, new TaskOutputWriter() {
+                    @Override
+                    public void writeTo(OutputStream output) throws IOException {
+                        Files.copy(stagedFile, output);
+                    }
+                });
+            } catch (Exception e) {
+                LOGGER.warn("Could not copy cached result with cache key {} from {} to {}, reading it directly instead", key, remote.getDescription(), local.getDescription(), e);
+                read(stagedFile, reader);
+                return true;
+            }
+        } finally {
+            deleteStagingFile(stagedFile);
+        }
+        if (!local.load(key, reader)) {
+            throw new IllegalStateException(String.format("Cached result with cache key %s was copied to %s but cannot be found there", key.getHashCode(), local.getDescription()));
+        }
+        return true;
+    }
+
+    @Override
+    public void store(final TaskCacheKey key, TaskOutputWriter writer) throws IOException {
+        try {
+            local.store(key, writer);
+        } catch (Exception e) {
+            LOGGER.warn("Could not store result with cache key {} in {}", key, local.getDescription(), e);
+            remote.store(key, writer);
+            return;
+        }
+        final File stagedFile = createStagingFile();
+        try {
+            boolean found = local.load(key, new TaskOutputReader() {
+                @Override
+                public void readFrom(InputStream input) throws IOException {
+                    copy(input, stagedFile);
+                }
+            });
+            if (!found) {
+                throw new IllegalStateException(String.format("Result with cache key %s was stored in %s but cannot be found there", key.getHashCode(), local.getDescription()));
+            }
+            remote.store(key, new TaskOutputWriter() {
+                @Override
+                public void writeTo(OutputStream output) throws IOException {
+                    Files.copy(stagedFile, output);
+                }
+            });
+        } finally {
+            deleteStagingFile(stagedFile);
+        }
+    }
+
+    private File createStagingFile() {
+        return temporaryFileProvider.createTemporaryFile("task-output-", ".bin", "task-output-cache");
+    }
+
+    private static void copy(InputStream input, File stagedFile) throws IOException {
+        OutputStream output = new FileOutputStream(stagedFile);
+        try {
+            ByteStreams.copy(input, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void read(File stagedFile, TaskOutputReader reader) throws IOException {
+        InputStream input = new FileInputStream(stagedFile);
+        try {
+            reader.readFrom(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void deleteStagingFile(File stagedFile) {
+        if (!stagedFile.delete()) {
+            LOGGER.debug("Could not delete staged task output {}", stagedFile);
+        }
+    }
+
+    @Override
+    public Set<String> probe(Collection<TaskCacheKey> keys) throws IOException {
+        Set<String> found = probe(local, keys);
+        List<TaskCacheKey> remaining = Lists.newArrayList();
+        for (TaskCacheKey key : keys) {
+            if (!found.contains(key.getHashCode())) {
+                remaining.add(key);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            found.addAll(probe(remote, remaining));
+        }
+        return found;
+    }
+
+    private static Set<String> probe(TaskOutputCache cache, Collection<TaskCacheKey> keys) throws IOException {
+        if (cache instanceof ProbingTaskOutputCache) {
+            return Sets.newHashSet(((ProbingTaskOutputCache) cache).probe(keys));
+        }
+        // Nothing is known about the keys, so report all of them as possibly present
+        Set<String> all = Sets.newHashSet();
+        for (TaskCacheKey key : keys) {
+            all.add(key.getHashCode());
+        }
+        return all;
+    }
+
+    @Override
+    public String getDescription() {
+        return local.getDescription() + " in front of " + remote.getDescription();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Closer closer = Closer.create();
+        closer.register(remote);
+        closer.register(local);
+        closer.close();
+    }
+}
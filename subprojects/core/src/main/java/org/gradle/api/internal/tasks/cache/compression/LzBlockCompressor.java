@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses single blocks using the LZ4 block format: a sequence of literal runs and
+ * back-references, found greedily via a hash table of 4-byte prefixes. There is no entropy coding, which
+ * makes both directions a lot faster than deflate at the cost of a lower compression ratio.
+ */
+class LzBlockCompressor {
+    static final int MAX_OFFSET = 0xFFFF;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int HASH_LOG = 14;
+    private static final int RUN_MASK = 0x0F;
+    // Search faster through data that doesn't compress well
+    private static final int SKIP_STRENGTH = 6;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses {@code length} bytes of {@code src} into {@code dest}, which must be at least {@link #maxCompressedLength(int)} long.
+     *
+     * @return the length of the compressed data.
+     */
+    int compress(byte[] src, int length, byte[] dest) {
+        int anchor = 0;
+        int destPos = 0;
+        if (length >= MATCH_FIND_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            int matchStartLimit = length - MATCH_FIND_LIMIT;
+            int matchEndLimit = length - LAST_LITERALS;
+            int pos = 0;
+            while (pos < matchStartLimit) {
+                int sequence = readInt(src, pos);
+                int hash = hash(sequence);
+                int ref = hashTable[hash];
+                hashTable[hash] = pos;
+                if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    pos += 1 + ((pos - anchor) >>> SKIP_STRENGTH);
+                    continue;
+                }
+                while (pos > anchor && ref > 0 && src[pos - 1] == src[ref - 1]) {
+                    pos--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (pos + matchLength < matchEndLimit && src[ref + matchLength] == src[pos + matchLength]) {
+                    matchLength++;
+                }
+                destPos = writeSequence(src, anchor, pos - anchor, pos - ref, matchLength, dest, destPos);
+                pos += matchLength;
+                anchor = pos;
+            }
+        }
+        return writeLastLiterals(src, anchor, length - anchor, dest, destPos);
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength, byte[] dest, int destPos) {
+        int tokenPos = destPos++;
+        int token = Math.min(literalLength, RUN_MASK) << 4;
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        destPos += literalLength;
+        dest[destPos++] = (byte) offset;
+        dest[destPos++] = (byte) (offset >>> 8);
+        int extraMatchLength = matchLength - MIN_MATCH;
+        token |= Math.min(extraMatchLength, RUN_MASK);
+        destPos = writeLength(extraMatchLength, dest, destPos);
+        dest[tokenPos] = (byte) token;
+        return destPos;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalStart, int literalLength, byte[] dest, int destPos) {
+        dest[destPos++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        return destPos + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dest, int destPos) {
+        if (length < RUN_MASK) {
+            return destPos;
+        }
+        int remaining = length - RUN_MASK;
+        while (remaining >= 0xFF) {
+            dest[destPos++] = (byte) 0xFF;
+            remaining -= 0xFF;
+        }
+        dest[destPos++] = (byte) remaining;
+        return destPos;
+    }
+
+    /**
+     * Decompresses {@code length} bytes of {@code src} into {@code dest}.
+     *
+     * @return the length of the decompressed data.
+     * @throws IOException if the compressed data is corrupt.
+     */
+    static int decompress(byte[] src, int length, byte[] dest) throws IOException {
+        try {
+            int srcPos = 0;
+            int destPos = 0;
+            while (true) {
+                int token = src[srcPos++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int next;
+                    do {
+                        next = src[srcPos++] & 0xFF;
+                        literalLength += next;
+                    } while (next == 0xFF);
+                }
+                System.arraycopy(src, srcPos, dest, destPos, literalLength);
+                srcPos += literalLength;
+                destPos += literalLength;
+                if (srcPos >= length) {
+                    if (srcPos > length) {
+                        throw corrupt();
+                    }
+                    return destPos;
+                }
+
+                int offset = (src[srcPos] & 0xFF) | ((src[srcPos + 1] & 0xFF) << 8);
+                srcPos += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int next;
+                    do {
+                        next = src[srcPos++] & 0xFF;
+                        matchLength += next;
+                    } while (next == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                int ref = destPos - offset;
+                if (offset == 0 || ref < 0 || destPos + matchLength > dest.length) {
+                    throw corrupt();
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dest, ref, dest, destPos, matchLength);
+                    destPos += matchLength;
+                } else {
+                    // Overlapping match, repeats the last offset bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        dest[destPos++] = dest[ref++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw corrupt();
+        }
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Compressed task output is corrupt");
+    }
+
+    private static int readInt(byte[] buffer, int pos) {
+        return (buffer[pos] & 0xFF)
+            | (buffer[pos + 1] & 0xFF) << 8
+            | (buffer[pos + 2] & 0xFF) << 16
+            | (buffer[pos + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
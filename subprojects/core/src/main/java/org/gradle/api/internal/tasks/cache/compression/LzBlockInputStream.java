@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads data written by {@link LzBlockOutputStream}.
+ */
+public class LzBlockInputStream extends InputStream {
+    private final DataInputStream input;
+    private final CRC32 checksum = new CRC32();
+    private final byte[] compressed = new byte[LzBlockCompressor.maxCompressedLength(LzBlockOutputStream.BLOCK_SIZE)];
+    private final byte[] buffer = new byte[LzBlockOutputStream.BLOCK_SIZE];
+    private int count;
+    private int position;
+    private boolean finished;
+
+    public LzBlockInputStream(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int chunk = Math.min(length, count - position);
+        System.arraycopy(buffer, position, bytes, offset, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return count - position;
+    }
+
+    private boolean fill() throws IOException {
+        while (position == count) {
+            if (finished) {
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        int compressedLength;
+        try {
+            compressedLength = input.readInt();
+        } catch (EOFException e) {
+            throw new EOFException("Unexpected end of compressed task output");
+        }
+        if (compressedLength == 0) {
+            finished = true;
+            return;
+        }
+        int length = input.readInt();
+        int expectedChecksum = input.readInt();
+        if (length <= 0 || length > buffer.length || compressedLength < 0 || compressedLength > length) {
+            throw new IOException("Compressed task output is corrupt");
+        }
+        if (compressedLength == length) {
+            input.readFully(buffer, 0, length);
+        } else {
+            input.readFully(compressed, 0, compressedLength);
+            if (LzBlockCompressor.decompress(compressed, compressedLength, buffer) != length) {
+                throw new IOException("Compressed task output is corrupt");
+            }
+        }
+        checksum.reset();
+        checksum.update(buffer, 0, length);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IOException("Compressed task output is corrupt, checksum does not match");
+        }
+        count = length;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses data in independent blocks with {@link LzBlockCompressor}.
+ *
+ * <p>Each block is written as its compressed length, its uncompressed length and the CRC32 checksum of the
+ * uncompressed data, followed by the compressed data. Blocks that don't get smaller are stored as they are,
+ * which is signalled by the compressed length being equal to the uncompressed length. A compressed length of
+ * zero marks the end of the stream.</p>
+ */
+public class LzBlockOutputStream extends FilterOutputStream {
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+    private final LzBlockCompressor compressor = new LzBlockCompressor();
+    private final CRC32 checksum = new CRC32();
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[LzBlockCompressor.maxCompressedLength(BLOCK_SIZE)];
+    private int count;
+    private boolean closed;
+
+    public LzBlockOutputStream(OutputStream output) {
+        super(output);
+        this.output = new DataOutputStream(output);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == BLOCK_SIZE) {
+            writeBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == BLOCK_SIZE) {
+                writeBlock();
+            }
+            int chunk = Math.min(length, BLOCK_SIZE - count);
+            System.arraycopy(bytes, offset, buffer, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        checksum.reset();
+        checksum.update(buffer, 0, count);
+        int compressedLength = compressor.compress(buffer, count, compressed);
+        if (compressedLength < count) {
+            writeBlockHeader(compressedLength);
+            output.write(compressed, 0, compressedLength);
+        } else {
+            writeBlockHeader(count);
+            output.write(buffer, 0, count);
+        }
+        count = 0;
+    }
+
+    private void writeBlockHeader(int compressedLength) throws IOException {
+        output.writeInt(compressedLength);
+        output.writeInt(count);
+        output.writeInt((int) checksum.getValue());
+    }
+
+    /**
+     * Writes any buffered data as a block. Note that flushing often makes compression less effective.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeBlock();
+            output.writeInt(0);
+            output.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
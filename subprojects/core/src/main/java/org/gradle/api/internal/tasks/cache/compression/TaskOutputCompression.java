@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression;
+
+import com.google.common.base.Joiner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression codecs that can be used for task output archives.
+ */
+public enum TaskOutputCompression {
+    /**
+     * Deflate compression in the GZIP format, with CRC32 checks. Good compression ratio, but expensive to pack and unpack.
+     */
+    GZIP("gzip", 0) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * LZ4 block compression with CRC32 checks. Lower compression ratio than GZIP, but a lot faster both ways.
+     */
+    LZ4("lz4", 1) {
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return new LzBlockOutputStream(output);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return new LzBlockInputStream(input);
+        }
+    },
+
+    /**
+     * No compression, useful when the outputs are already compressed, like JARs.
+     */
+    STORE("store", 2) {
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return output;
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return input;
+        }
+    };
+
+    // The default buffer of 512 bytes makes decompression issue lots of small reads on the underlying stream
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String displayName;
+    private final int id;
+
+    TaskOutputCompression(String displayName, int id) {
+        this.displayName = displayName;
+        this.id = id;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * The identifier of the codec stored in the archive header.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Wraps the given stream so that data written to it is compressed. Closing the returned stream closes the given stream.
+     */
+    public abstract OutputStream compress(OutputStream output) throws IOException;
+
+    /**
+     * Wraps the given stream so that data read from it is decompressed.
+     */
+    public abstract InputStream decompress(InputStream input) throws IOException;
+
+    public static TaskOutputCompression forId(int id) {
+        for (TaskOutputCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    public static TaskOutputCompression forDisplayName(String displayName) {
+        for (TaskOutputCompression compression : values()) {
+            if (compression.displayName.equalsIgnoreCase(displayName)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown task output compression '%s', supported values are: %s", displayName, Joiner.on(", ").join(displayNames())));
+    }
+
+    private static String[] displayNames() {
+        TaskOutputCompression[] values = values();
+        String[] displayNames = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            displayNames[i] = values[i].displayName;
+        }
+        return displayNames;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -18,28 +18,50 @@ package org.gradle.api.internal.tasks.cache.config;
 
 import com.google.common.collect.Lists;
 import org.gradle.StartParameter;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.internal.tasks.cache.ContentAddressedTaskOutputCache;
 import org.gradle.api.internal.tasks.cache.LocalDirectoryTaskOutputCache;
+import org.gradle.api.internal.tasks.cache.LocalDirectoryTaskOutputCacheCleaner;
 import org.gradle.api.internal.tasks.cache.TaskOutputCache;
 import org.gradle.api.internal.tasks.cache.TaskOutputCacheFactory;
+import org.gradle.api.internal.tasks.cache.TieredTaskOutputCache;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
 import org.gradle.cache.CacheRepository;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.concurrent.Stoppable;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultTaskCaching implements TaskCachingInternal, Stoppable {
     private final boolean pullAllowed;
     private final boolean pushAllowed;
+    private final boolean asyncPush;
+    private final int asyncPushTimeoutSeconds;
+    private final TaskOutputCompression compression;
+    private final boolean contentAddressed;
     private final CacheRepository cacheRepository;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final LocalDirectoryTaskOutputCacheCleaner localCacheCleaner;
     private final List<TaskOutputCache> cachesCreated = Lists.newCopyOnWriteArrayList();
     private TaskOutputCacheFactory factory;
 
-    public DefaultTaskCaching(CacheRepository cacheRepository) {
+    public DefaultTaskCaching(CacheRepository cacheRepository, ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider) {
         this.cacheRepository = cacheRepository;
+        this.temporaryFileProvider = temporaryFileProvider;
+        // Eviction is off unless a target size or a maximum age is given
+        long localCacheTargetSize = Long.parseLong(System.getProperty("org.gradle.cache.tasks.directory.targetSizeInMB", "0").trim()) * 1024 * 1024;
+        long localCacheMaxAge = TimeUnit.DAYS.toMillis(Long.parseLong(System.getProperty("org.gradle.cache.tasks.directory.maxAgeInDays", "0").trim()));
+        this.localCacheCleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, localCacheTargetSize, localCacheMaxAge);
         useLocalCache();
         this.pullAllowed = "true".equalsIgnoreCase(System.getProperty("org.gradle.cache.tasks.pull", "true").trim());
         this.pushAllowed = "true".equalsIgnoreCase(System.getProperty("org.gradle.cache.tasks.push", "true").trim());
+        this.asyncPush = "true".equalsIgnoreCase(System.getProperty("org.gradle.cache.tasks.push.async", "true").trim());
+        this.asyncPushTimeoutSeconds = Integer.parseInt(System.getProperty("org.gradle.cache.tasks.push.timeout", "300").trim());
+        this.compression = TaskOutputCompression.forDisplayName(System.getProperty("org.gradle.cache.tasks.compression", "gzip").trim());
+        this.contentAddressed = "true".equalsIgnoreCase(System.getProperty("org.gradle.cache.tasks.contentAddressed", "false").trim());
     }
 
     @Override
@@ -47,10 +69,7 @@ public class DefaultTaskCaching implements TaskCachingInternal, Stoppable {
         setFactory(new TaskOutputCacheFactory() {
             @Override
             public TaskOutputCache createCache(StartParameter startParameter) {
-                String cacheDirectoryPath = System.getProperty("org.gradle.cache.tasks.directory");
-                return cacheDirectoryPath != null
-                    ? new LocalDirectoryTaskOutputCache(cacheRepository, new File(cacheDirectoryPath))
-                    : new LocalDirectoryTaskOutputCache(cacheRepository, "task-cache");
+                return maybeContentAddressed(createDefaultLocalCache());
             }
         });
     }
@@ -60,14 +79,47 @@ public class DefaultTaskCaching implements TaskCachingInternal, Stoppable {
         setFactory(new TaskOutputCacheFactory() {
             @Override
             public TaskOutputCache createCache(StartParameter startParameter) {
-                return new LocalDirectoryTaskOutputCache(cacheRepository, directory);
+                return maybeContentAddressed(new LocalDirectoryTaskOutputCache(cacheRepository, directory, localCacheCleaner));
             }
         });
     }
 
     @Override
-    public void useCacheFactory(TaskOutputCacheFactory factory) {
-        setFactory(factory);
+    public void useCacheFactory(final TaskOutputCacheFactory factory) {
+        setFactory(new TaskOutputCacheFactory() {
+            @Override
+            public TaskOutputCache createCache(StartParameter startParameter) {
+                return maybeContentAddressed(factory.createCache(startParameter));
+            }
+        });
+    }
+
+    @Override
+    public void useLocalCacheInFrontOf(final TaskOutputCacheFactory factory) {
+        setFactory(new TaskOutputCacheFactory() {
+            @Override
+            public TaskOutputCache createCache(StartParameter startParameter) {
+                TaskOutputCache remote = factory.createCache(startParameter);
+                TaskOutputCache cache = new TieredTaskOutputCache(createDefaultLocalCache(), remote, temporaryFileProvider);
+                // Only blobs missing from the remote cache need to be uploaded
+                return contentAddressed ? createContentAddressedCache(cache, remote) : cache;
+            }
+        });
+    }
+
+    private TaskOutputCache maybeContentAddressed(TaskOutputCache cache) {
+        return contentAddressed ? createContentAddressedCache(cache, cache) : cache;
+    }
+
+    private TaskOutputCache createContentAddressedCache(TaskOutputCache cache, TaskOutputCache backingCache) {
+        return new ContentAddressedTaskOutputCache(cache, backingCache, compression, temporaryFileProvider);
+    }
+
+    private TaskOutputCache createDefaultLocalCache() {
+        String cacheDirectoryPath = System.getProperty("org.gradle.cache.tasks.directory");
+        return cacheDirectoryPath != null
+            ? new LocalDirectoryTaskOutputCache(cacheRepository, new File(cacheDirectoryPath), localCacheCleaner)
+            : new LocalDirectoryTaskOutputCache(cacheRepository, "task-cache", localCacheCleaner);
     }
 
     private void setFactory(final TaskOutputCacheFactory factory) {
@@ -96,8 +148,30 @@ public class DefaultTaskCaching implements TaskCachingInternal, Stoppable {
         return pushAllowed;
     }
 
+    @Override
+    public boolean isAsyncPush() {
+        return asyncPush;
+    }
+
+    @Override
+    public int getAsyncPushTimeoutSeconds() {
+        return asyncPushTimeoutSeconds;
+    }
+
+    @Override
+    public TaskOutputCompression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
     @Override
     public void stop() {
         CompositeStoppable.stoppable(cachesCreated).stop();
+        // Wait for any cleanup triggered by closing the caches, so that it doesn't outlive the build session
+        localCacheCleaner.stop();
     }
 }
@@ -17,10 +17,32 @@
 package org.gradle.api.internal.tasks.cache.config;
 
 import org.gradle.api.internal.tasks.cache.TaskOutputCacheFactory;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
 import org.gradle.api.tasks.TaskCaching;
 
 public interface TaskCachingInternal extends TaskCaching {
     TaskOutputCacheFactory getCacheFactory();
     boolean isPullAllowed();
     boolean isPushAllowed();
+
+    /**
+     * Whether task outputs are pushed to the cache in the background instead of on the task's worker thread.
+     */
+    boolean isAsyncPush();
+
+    /**
+     * The maximum time to wait at the end of the build for background pushes to finish.
+     */
+    int getAsyncPushTimeoutSeconds();
+
+    /**
+     * The compression used when packing task outputs. Outputs packed with any compression can be unpacked.
+     */
+    TaskOutputCompression getCompression();
+
+    /**
+     * Whether the contents of output files are stored separately from the rest of the archive, so that identical files are only stored once.
+     * The configured compression is then applied to the stored contents instead of the whole archive.
+     */
+    boolean isContentAddressed();
 }
@@ -25,8 +25,15 @@ public class TaskExecutionStatistics {
     private final Map<TaskExecutionOutcome, Integer> taskCounts;
     private final int allTasksCount;
     private final int cacheMissCount;
+    private final int storedCount;
+    private final int storeFailureCount;
+    private final TaskOutputCacheSummary cacheSummary;
 
     public TaskExecutionStatistics(Map<TaskExecutionOutcome, Integer> taskCounts, int cacheMissCount) {
+        this(taskCounts, cacheMissCount, 0, 0, new TaskOutputCacheSummary());
+    }
+
+    public TaskExecutionStatistics(Map<TaskExecutionOutcome, Integer> taskCounts, int cacheMissCount, int storedCount, int storeFailureCount, TaskOutputCacheSummary cacheSummary) {
         this.taskCounts = ImmutableMap.copyOf(taskCounts);
         int allTasksCount = 0;
         for (Integer taskCount : taskCounts.values()) {
@@ -34,6 +41,9 @@ public class TaskExecutionStatistics {
         }
         this.allTasksCount = allTasksCount;
         this.cacheMissCount = cacheMissCount;
+        this.storedCount = storedCount;
+        this.storeFailureCount = storeFailureCount;
+        this.cacheSummary = cacheSummary;
     }
 
     /**
@@ -58,4 +68,25 @@ public class TaskExecutionStatistics {
     public int getCacheMissCount() {
         return cacheMissCount;
     }
+
+    /**
+     * Returns the number of task outputs that were successfully pushed to the cache.
+     */
+    public int getStoredCount() {
+        return storedCount;
+    }
+
+    /**
+     * Returns the number of task outputs that could not be pushed to the cache.
+     */
+    public int getStoreFailureCount() {
+        return storeFailureCount;
+    }
+
+    /**
+     * Returns the totals of the time spent and bytes transferred while using the task output cache.
+     */
+    public TaskOutputCacheSummary getCacheSummary() {
+        return cacheSummary;
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.statistics;
+
+/**
+ * Measurements taken while looking up the output of a task in the cache. Times are in milliseconds.
+ */
+public class TaskOutputCacheLoadMetrics {
+    private final long cacheKeyCalculationTime;
+    private final boolean lookedUp;
+    private final boolean hit;
+    private final long lookupTime;
+    private final long unpackTime;
+    private final long archiveSize;
+    private final long lastExecutionTime;
+
+    public TaskOutputCacheLoadMetrics(long cacheKeyCalculationTime, boolean lookedUp, boolean hit, long lookupTime, long unpackTime, long archiveSize, long lastExecutionTime) {
+        this.cacheKeyCalculationTime = cacheKeyCalculationTime;
+        this.lookedUp = lookedUp;
+        this.hit = hit;
+        this.lookupTime = lookupTime;
+        this.unpackTime = unpackTime;
+        this.archiveSize = archiveSize;
+        this.lastExecutionTime = lastExecutionTime;
+    }
+
+    /**
+     * Returns the time spent calculating the cache key of the task.
+     */
+    public long getCacheKeyCalculationTime() {
+        return cacheKeyCalculationTime;
+    }
+
+    /**
+     * Returns whether the cache was asked for the output. It is not when pulling is disabled, or when the key was already known to be missing.
+     */
+    public boolean isLookedUp() {
+        return lookedUp;
+    }
+
+    /**
+     * Returns whether the output was loaded from the cache.
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * Returns the time until the cache either started to return the output, or reported it missing.
+     */
+    public long getLookupTime() {
+        return lookupTime;
+    }
+
+    /**
+     * Returns the time spent reading and unpacking the output, including any time spent downloading it while reading.
+     */
+    public long getUnpackTime() {
+        return unpackTime;
+    }
+
+    /**
+     * Returns the size of the loaded archive in bytes.
+     */
+    public long getArchiveSize() {
+        return archiveSize;
+    }
+
+    /**
+     * Returns the time the task took when it was last executed, or -1 if not known.
+     */
+    public long getLastExecutionTime() {
+        return lastExecutionTime;
+    }
+
+    /**
+     * Returns an estimate of the time saved by loading the output instead of executing the task, or -1 if not known.
+     * This is the time the task took when it was last executed, minus the time spent loading its output, and is negative
+     * when loading took longer than executing the task.
+     */
+    public long getEstimatedTimeSaved() {
+        if (!hit || lastExecutionTime < 0) {
+            return -1;
+        }
+        return lastExecutionTime - lookupTime - unpackTime;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.statistics;
+
+/**
+ * Measurements taken while pushing the output of a task to the cache. Times are in milliseconds.
+ *
+ * <p>When pushing synchronously, the output is packed while it is being written to the cache. The pack time then
+ * includes any time spent waiting for the cache to accept the data, and the upload time is what remains.</p>
+ */
+public class TaskOutputCacheStoreMetrics {
+    private final long packTime;
+    private final long uploadTime;
+    private final long archiveSize;
+
+    public TaskOutputCacheStoreMetrics(long packTime, long uploadTime, long archiveSize) {
+        this.packTime = packTime;
+        this.uploadTime = uploadTime;
+        this.archiveSize = archiveSize;
+    }
+
+    /**
+     * Returns the time spent packing the output.
+     */
+    public long getPackTime() {
+        return packTime;
+    }
+
+    /**
+     * Returns the time spent storing the packed output in the cache.
+     */
+    public long getUploadTime() {
+        return uploadTime;
+    }
+
+    /**
+     * Returns the size of the stored archive in bytes.
+     */
+    public long getArchiveSize() {
+        return archiveSize;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.statistics;
+
+/**
+ * Sums up the measurements taken while using the task output cache during a build. Times are in milliseconds.
+ */
+public class TaskOutputCacheSummary {
+    private long cacheKeyCalculationTime;
+    private int lookupCount;
+    private int hitCount;
+    private long lookupTime;
+    private long unpackTime;
+    private long loadedBytes;
+    private int estimatedHitCount;
+    private long estimatedTimeSaved;
+    private int storeCount;
+    private long packTime;
+    private long uploadTime;
+    private long storedBytes;
+
+    public synchronized void add(TaskOutputCacheLoadMetrics metrics) {
+        cacheKeyCalculationTime += metrics.getCacheKeyCalculationTime();
+        if (metrics.isLookedUp()) {
+            lookupCount++;
+            lookupTime += metrics.getLookupTime();
+        }
+        if (metrics.isHit()) {
+            hitCount++;
+            unpackTime += metrics.getUnpackTime();
+            loadedBytes += metrics.getArchiveSize();
+            if (metrics.getLastExecutionTime() >= 0) {
+                estimatedHitCount++;
+                estimatedTimeSaved += metrics.getEstimatedTimeSaved();
+            }
+        }
+    }
+
+    public synchronized void add(TaskOutputCacheStoreMetrics metrics) {
+        storeCount++;
+        packTime += metrics.getPackTime();
+        uploadTime += metrics.getUploadTime();
+        storedBytes += metrics.getArchiveSize();
+    }
+
+    /**
+     * Returns the time spent calculating cache keys.
+     */
+    public synchronized long getCacheKeyCalculationTime() {
+        return cacheKeyCalculationTime;
+    }
+
+    /**
+     * Returns the number of times the cache was asked for a task's output.
+     */
+    public synchronized int getLookupCount() {
+        return lookupCount;
+    }
+
+    /**
+     * Returns the number of task outputs loaded from the cache.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the time spent until the cache either started to return an output, or reported it missing.
+     */
+    public synchronized long getLookupTime() {
+        return lookupTime;
+    }
+
+    /**
+     * Returns the time spent reading and unpacking loaded outputs.
+     */
+    public synchronized long getUnpackTime() {
+        return unpackTime;
+    }
+
+    public synchronized long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    /**
+     * Returns the number of hits for which the time saved could be estimated.
+     */
+    public synchronized int getEstimatedHitCount() {
+        return estimatedHitCount;
+    }
+
+    /**
+     * Returns the estimated time saved by loading outputs instead of executing tasks.
+     *
+     * @see TaskOutputCacheLoadMetrics#getEstimatedTimeSaved()
+     */
+    public synchronized long getEstimatedTimeSaved() {
+        return estimatedTimeSaved;
+    }
+
+    /**
+     * Returns the number of task outputs stored in the cache.
+     */
+    public synchronized int getStoreCount() {
+        return storeCount;
+    }
+
+    public synchronized long getPackTime() {
+        return packTime;
+    }
+
+    public synchronized long getUploadTime() {
+        return uploadTime;
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+}
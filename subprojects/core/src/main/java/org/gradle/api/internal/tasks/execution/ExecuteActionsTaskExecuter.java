@@ -47,8 +47,9 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
 
     public void execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
         listener.beforeActions(task);
-        if (!task.getTaskActions().isEmpty()) {
-            outputsGenerationListener.beforeTaskOutputsGenerated();
+        boolean generatesOutputs = !task.getTaskActions().isEmpty();
+        if (generatesOutputs) {
+            outputsGenerationListener.beforeTaskOutputsGenerated(task);
         }
         state.setExecuting(true);
         try {
@@ -62,6 +63,9 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
             }
         } finally {
             state.setExecuting(false);
+            if (generatesOutputs) {
+                outputsGenerationListener.afterTaskOutputsGenerated(task);
+            }
             listener.afterActions(task);
         }
     }
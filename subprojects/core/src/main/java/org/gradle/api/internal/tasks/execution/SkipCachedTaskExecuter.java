@@ -16,21 +16,25 @@
 
 package org.gradle.api.internal.tasks.execution;
 
-import org.gradle.StartParameter;
+import com.google.common.io.CountingInputStream;
 import org.gradle.api.GradleException;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.TaskOutputsInternal;
 import org.gradle.api.internal.changedetection.TaskArtifactState;
+import org.gradle.api.internal.changedetection.state.TaskExecutionTimeRepository;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecutionContext;
 import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.api.internal.tasks.cache.TaskCacheKey;
-import org.gradle.api.internal.tasks.cache.TaskOutputCache;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheLoadListener;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheProber;
 import org.gradle.api.internal.tasks.cache.TaskOutputPacker;
 import org.gradle.api.internal.tasks.cache.TaskOutputReader;
+import org.gradle.api.internal.tasks.cache.TaskOutputStorer;
 import org.gradle.api.internal.tasks.cache.TaskOutputWriter;
 import org.gradle.api.internal.tasks.cache.config.TaskCachingInternal;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheLoadMetrics;
 import org.gradle.internal.time.Timer;
 import org.gradle.internal.time.Timers;
 import org.gradle.util.SingleMessageLogger;
@@ -45,16 +49,21 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
     private static final Logger LOGGER = LoggerFactory.getLogger(SkipCachedTaskExecuter.class);
 
     private final TaskCachingInternal taskCaching;
-    private final StartParameter startParameter;
     private final TaskOutputPacker packer;
+    private final TaskOutputStorer storer;
+    private final TaskOutputCacheProber prober;
+    private final TaskExecutionTimeRepository executionTimeRepository;
+    private final TaskOutputCacheLoadListener loadListener;
     private final TaskExecuter delegate;
     private final TaskOutputsGenerationListener taskOutputsGenerationListener;
-    private TaskOutputCache cache;
 
-    public SkipCachedTaskExecuter(TaskCachingInternal taskCaching, TaskOutputPacker packer, StartParameter startParameter, TaskOutputsGenerationListener taskOutputsGenerationListener, TaskExecuter delegate) {
+    public SkipCachedTaskExecuter(TaskCachingInternal taskCaching, TaskOutputPacker packer, TaskOutputStorer storer, TaskOutputCacheProber prober, TaskExecutionTimeRepository executionTimeRepository, TaskOutputCacheLoadListener loadListener, TaskOutputsGenerationListener taskOutputsGenerationListener, TaskExecuter delegate) {
         this.taskCaching = taskCaching;
-        this.startParameter = startParameter;
         this.packer = packer;
+        this.storer = storer;
+        this.prober = prober;
+        this.executionTimeRepository = executionTimeRepository;
+        this.loadListener = loadListener;
         this.taskOutputsGenerationListener = taskOutputsGenerationListener;
         this.delegate = delegate;
         SingleMessageLogger.incubatingFeatureUsed("Task output caching");
@@ -83,40 +92,44 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
                     if (taskOutputs.isCacheAllowed()) {
                         cacheable = true;
                         TaskArtifactState taskState = context.getTaskArtifactState();
+                        Timer cacheKeyClock = Timers.startTimer();
                         try {
                             cacheKey = taskState.calculateCacheKey();
                             LOGGER.info("Cache key for {} is {}", task, cacheKey);
                         } catch (Exception e) {
                             throw new GradleException(String.format("Could not build cache key for %s.", task), e);
                         }
+                        long cacheKeyCalculationTime = cacheKeyClock.getElapsedMillis();
 
-                        if (taskCaching.isPullAllowed()) {
-                            if (cacheKey != null) {
-                                if (taskState.isAllowedToUseCachedResults()) {
-                                    try {
-                                        boolean found = getCache().load(cacheKey, new TaskOutputReader() {
-                                            @Override
-                                            public void readFrom(InputStream input) throws IOException {
-                                                packer.unpack(taskOutputs, input);
-                                                LOGGER.info("Unpacked output for {} from cache (took {}).", task, clock.getElapsed());
+                        if (cacheKey != null) {
+                            LoadMeasurement measurement = new LoadMeasurement();
+                            try {
+                                if (taskCaching.isPullAllowed()) {
+                                    if (taskState.isAllowedToUseCachedResults()) {
+                                        if (prober.isKnownMissing(cacheKey)) {
+                                            LOGGER.info("Not loading {} from cache because cache key {} was found to be missing when probing the cache", task, cacheKey);
+                                        } else {
+                                            try {
+                                                boolean found = load(task, taskOutputs, cacheKey, measurement, clock);
+                                                if (found) {
+                                                    state.setOutcome(TaskExecutionOutcome.FROM_CACHE);
+                                                    return;
+                                                }
+                                            } catch (Exception e) {
+                                                LOGGER.warn("Could not load cached output for {} with cache key {}", task, cacheKey, e);
                                             }
-                                        });
-                                        if (found) {
-                                            state.setOutcome(TaskExecutionOutcome.FROM_CACHE);
-                                            taskOutputsGenerationListener.beforeTaskOutputsGenerated();
-                                            return;
                                         }
-                                    } catch (Exception e) {
-                                        LOGGER.warn("Could not load cached output for {} with cache key {}", task, cacheKey, e);
+                                    } else {
+                                        LOGGER.info("Not loading {} from cache because pulling from cache is disabled for this task", task);
                                     }
                                 } else {
-                                    LOGGER.info("Not loading {} from cache because pulling from cache is disabled for this task", task);
+                                    LOGGER.debug("Not loading {} from cache because pulling from cache is disabled for this build", task);
                                 }
-                            } else {
-                                LOGGER.info("Not caching {} because no valid cache key was generated", task);
+                            } finally {
+                                loadListener.loadFinished(task, cacheKey, measurement.toMetrics(task, cacheKeyCalculationTime));
                             }
                         } else {
-                            LOGGER.debug("Not loading {} from cache because pulling from cache is disabled for this build", task);
+                            LOGGER.info("Not caching {} because no valid cache key was generated", task);
                         }
                     } else {
                         LOGGER.info("Not caching {} because it declares multiple output files for a single output property via `@OutputFiles`, `@OutputDirectories` or `TaskOutputs.files()`", task);
@@ -131,21 +144,22 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
             state.setCacheable(cacheable);
         }
 
+        Timer executionClock = Timers.startTimer();
         delegate.execute(task, state, context);
 
         if (cacheKey != null) {
+            boolean failed = state.getFailure() != null;
+            if (!failed) {
+                executionTimeRepository.recordExecutionTime(task.getPath(), executionClock.getElapsedMillis());
+            }
             if (taskCaching.isPushAllowed()) {
-                if (state.getFailure() == null) {
-                    try {
-                        getCache().store(cacheKey, new TaskOutputWriter() {
-                            @Override
-                            public void writeTo(OutputStream output) throws IOException {
-                                packer.pack(taskOutputs, output);
-                            }
-                        });
-                    } catch (Exception e) {
-                        LOGGER.warn("Could not cache results for {} for cache key {}", task, cacheKey, e);
-                    }
+                if (!failed) {
+                    storer.store(task, prober.getCache(), cacheKey, new TaskOutputWriter() {
+                        @Override
+                        public void writeTo(OutputStream output) throws IOException {
+                            packer.pack(taskOutputs, output);
+                        }
+                    });
                 } else {
                     LOGGER.debug("Not pushing result from {} to cache because the task failed", task);
                 }
@@ -157,11 +171,55 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
         }
     }
 
-    private TaskOutputCache getCache() {
-        if (cache == null) {
-            cache = taskCaching.getCacheFactory().createCache(startParameter);
-            LOGGER.info("Using {}", cache.getDescription());
+    private boolean load(final TaskInternal task, final TaskOutputsInternal taskOutputs, TaskCacheKey cacheKey, final LoadMeasurement measurement, final Timer clock) throws IOException {
+        final Timer lookupClock = Timers.startTimer();
+        measurement.lookedUp = true;
+        boolean found;
+        try {
+            found = prober.getCache().load(cacheKey, new TaskOutputReader() {
+                @Override
+                public void readFrom(InputStream input) throws IOException {
+                    measurement.lookupTime = lookupClock.getElapsedMillis();
+                    measurement.reading = true;
+                    Timer unpackClock = Timers.startTimer();
+                    CountingInputStream countingInput = new CountingInputStream(input);
+                    taskOutputsGenerationListener.beforeTaskOutputsGenerated(task);
+                    try {
+                        packer.unpack(taskOutputs, countingInput);
+                    } finally {
+                        measurement.unpackTime = unpackClock.getElapsedMillis();
+                        measurement.archiveSize = countingInput.getCount();
+                        taskOutputsGenerationListener.afterTaskOutputsGenerated(task);
+                    }
+                    LOGGER.info("Unpacked output for {} from cache (took {}).", task, clock.getElapsed());
+                }
+            });
+        } finally {
+            if (!measurement.reading) {
+                measurement.lookupTime = lookupClock.getElapsedMillis();
+            }
+        }
+        measurement.hit = found;
+        return found;
+    }
+
+    private class LoadMeasurement {
+        boolean lookedUp;
+        boolean reading;
+        boolean hit;
+        long lookupTime;
+        long unpackTime;
+        long archiveSize;
+
+        TaskOutputCacheLoadMetrics toMetrics(TaskInternal task, long cacheKeyCalculationTime) {
+            long lastExecutionTime = -1;
+            if (hit) {
+                Long executionTime = executionTimeRepository.getLastExecutionTime(task.getPath());
+                if (executionTime != null) {
+                    lastExecutionTime = executionTime;
+                }
+            }
+            return new TaskOutputCacheLoadMetrics(cacheKeyCalculationTime, lookedUp, hit, lookupTime, unpackTime, archiveSize, lastExecutionTime);
         }
-        return cache;
     }
 }
@@ -16,10 +16,17 @@
 
 package org.gradle.api.internal.tasks.execution;
 
+import org.gradle.api.internal.TaskInternal;
+
 public interface TaskOutputsGenerationListener {
     /**
      * Invoked when the outputs for a task are about to be generated.
      * This is for example just before the task actions are executed or the outputs are loaded from the cache.
      */
-    void beforeTaskOutputsGenerated();
+    void beforeTaskOutputsGenerated(TaskInternal task);
+
+    /**
+     * Invoked when the outputs for a task have been generated, whether or not generating them succeeded.
+     */
+    void afterTaskOutputsGenerated(TaskInternal task);
 }
@@ -44,4 +44,11 @@ public interface TaskCaching {
      * Use the give task output cache factory.
      */
     void useCacheFactory(TaskOutputCacheFactory factory);
+
+    /**
+     * Use the default local directory cache in front of the cache created by the given factory.
+     * Results are looked up in the local cache first, and results found in the other cache are copied to the local cache.
+     * Results are stored in both caches.
+     */
+    void useLocalCacheInFrontOf(TaskOutputCacheFactory factory);
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheProber;
+import org.gradle.internal.Factory;
+
+/**
+ * Probes the task output cache for the tasks whose inputs are already known before handing the plan to the delegate executor.
+ *
+ * <p>The cache keys of these tasks are calculated on the build thread before any task starts, so this only pays off when looking up
+ * a key in the cache is slow compared to snapshotting the task's inputs, as with a remote cache.</p>
+ */
+public class CacheProbingTaskPlanExecutor implements TaskPlanExecutor {
+    public static final String TOGGLE = "org.gradle.cache.tasks.probe";
+
+    // This needs to be lazy, as the prober uses state that is not available when the graph is created
+    private final Factory<? extends TaskOutputCacheProber> prober;
+    private final TaskPlanExecutor delegate;
+
+    public CacheProbingTaskPlanExecutor(Factory<? extends TaskOutputCacheProber> prober, TaskPlanExecutor delegate) {
+        this.prober = prober;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void process(TaskExecutionPlan taskExecutionPlan, Action<? super TaskInternal> taskWorker) {
+        prober.create().probe(taskExecutionPlan.getTasksWithoutDependencies());
+        delegate.process(taskExecutionPlan, taskWorker);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.TaskExecutionTimeRepository;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.internal.Factory;
+import org.gradle.internal.time.Timer;
+import org.gradle.internal.time.Timers;
+
+/**
+ * Executes the ready tasks that start the longest chains of waiting tasks first, estimating how long each task takes from previous builds.
+ * Records how long a worker spends on each task that does work, including checking whether it is up-to-date, for later builds. These times are
+ * kept in a repository of their own, as they are not comparable with the times recorded when only the task's actions are measured.
+ */
+public class CriticalPathTaskPlanExecutor implements TaskPlanExecutor {
+    public static final String TOGGLE = "org.gradle.parallel.criticalPathFirst";
+
+    // Assumed for tasks that have not been executed before, so that a longer chain of such tasks still comes first
+    private static final long UNKNOWN_DURATION = 1;
+
+    // This needs to be lazy, as the repository uses state that is not available when the graph is created
+    private final Factory<? extends TaskExecutionTimeRepository> executionTimeRepository;
+    private final TaskPlanExecutor delegate;
+
+    public CriticalPathTaskPlanExecutor(Factory<? extends TaskExecutionTimeRepository> executionTimeRepository, TaskPlanExecutor delegate) {
+        this.executionTimeRepository = executionTimeRepository;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void process(TaskExecutionPlan taskExecutionPlan, final Action<? super TaskInternal> taskWorker) {
+        final TaskExecutionTimeRepository repository = executionTimeRepository.create();
+        taskExecutionPlan.prioritizeByCriticalPath(new Transformer<Long, Task>() {
+            @Override
+            public Long transform(Task task) {
+                Long executionTime = repository.getLastExecutionTime(task.getPath());
+                return executionTime == null ? UNKNOWN_DURATION : executionTime;
+            }
+        });
+        try {
+            delegate.process(taskExecutionPlan, new Action<TaskInternal>() {
+                @Override
+                public void execute(TaskInternal task) {
+                    Timer clock = Timers.startTimer();
+                    taskWorker.execute(task);
+                    TaskStateInternal state = task.getState();
+                    // Up-to-date, skipped and cached tasks say little about how long the task takes when it runs
+                    if (state.getDidWork() && !state.isFromCache() && state.getFailure() == null) {
+                        repository.recordExecutionTime(task.getPath(), clock.getElapsedMillis());
+                    }
+                }
+            });
+        } finally {
+            taskExecutionPlan.prioritizeByCriticalPath(null);
+        }
+    }
+}
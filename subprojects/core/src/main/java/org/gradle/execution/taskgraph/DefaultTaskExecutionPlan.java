@@ -18,17 +18,24 @@ package org.gradle.execution.taskgraph;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.base.StandardSystemProperty;
 import com.google.common.collect.*;
 import org.gradle.api.*;
+import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.file.FileCollectionInternal;
+import org.gradle.api.internal.file.FileCollectionVisitor;
+import org.gradle.api.internal.file.FileTreeInternal;
+import org.gradle.api.internal.file.collections.DirectoryFileTree;
 import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
 import org.gradle.api.internal.tasks.TaskContainerInternal;
+import org.gradle.api.internal.tasks.properties.TaskInputFilePropertySpec;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.ParallelizableTask;
+import org.gradle.api.tasks.TaskExecutionException;
 import org.gradle.execution.MultipleBuildFailures;
 import org.gradle.execution.TaskFailureHandler;
 import org.gradle.initialization.BuildCancellationToken;
@@ -40,7 +47,6 @@ import org.gradle.internal.graph.DirectedGraphRenderer;
 import org.gradle.internal.graph.GraphNodeRenderer;
 import org.gradle.internal.logging.text.StyledTextOutput;
 import org.gradle.util.CollectionUtils;
-import org.gradle.util.TextUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -57,16 +63,46 @@ import java.util.concurrent.locks.ReentrantLock;
 public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
     public static final String INTRA_PROJECT_TOGGLE = "org.gradle.parallel.intra";
+    public static final String DECLARED_INTRA_PROJECT_TOGGLE = "org.gradle.parallel.intra.declared";
 
     private final static Logger LOGGER = Logging.getLogger(DefaultTaskExecutionPlan.class);
 
     private final Lock lock = new ReentrantLock();
     private final Condition condition = lock.newCondition();
+    private final Condition taskReady = lock.newCondition();
+    private int waitingWorkers;
     private final Set<TaskInfo> tasksInUnknownState = new LinkedHashSet<TaskInfo>();
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final TaskDependencyGraph graph = new TaskDependencyGraph();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    // Position of each task in the execution plan, used to pick tasks in plan order
+    private final Map<TaskInfo, Integer> planPositions = Maps.newIdentityHashMap();
+    private final Comparator<TaskInfo> planOrder = new Comparator<TaskInfo>() {
+        @Override
+        public int compare(TaskInfo o1, TaskInfo o2) {
+            return planPositions.get(o1).compareTo(planPositions.get(o2));
+        }
+    };
+    // Estimated time from the start of each task to the end of the longest chain of tasks waiting for it, when prioritizing by critical path
+    private final Map<TaskInfo, Long> remainingCriticalPaths = Maps.newIdentityHashMap();
+    private final Comparator<TaskInfo> readyOrder = new Comparator<TaskInfo>() {
+        @Override
+        public int compare(TaskInfo o1, TaskInfo o2) {
+            Long path1 = remainingCriticalPaths.get(o1);
+            Long path2 = remainingCriticalPaths.get(o2);
+            if (path1 != null && path2 != null && !path1.equals(path2)) {
+                return path2.compareTo(path1);
+            }
+            return planOrder.compare(o1, o2);
+        }
+    };
+    private final Multimap<TaskInfo, TaskInfo> mustPredecessors = HashMultimap.create();
+    // Tasks that have not been picked for execution yet
+    private final Set<TaskInfo> executionQueue = Sets.newIdentityHashSet();
+    // Tasks in the queue that are not complete
+    private final TreeSet<TaskInfo> pendingTasks = new TreeSet<TaskInfo>(planOrder);
+    // Tasks in the queue that should run and whose dependencies are complete
+    private final TreeSet<TaskInfo> readyTasks = new TreeSet<TaskInfo>(readyOrder);
     private final List<Throwable> failures = new ArrayList<Throwable>();
     private Spec<? super Task> filter = Specs.satisfyAll();
 
@@ -76,22 +112,44 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Multiset<String> projectsWithRunningNonParallelizableTasks = HashMultiset.create();
     private final Set<TaskInternal> runningTasks = Sets.newIdentityHashSet();
     private final Map<Task, Set<String>> canonicalizedOutputCache = Maps.newIdentityHashMap();
+    private final Map<Task, Set<String>> canonicalizedInputCache = Maps.newIdentityHashMap();
+    // Tasks whose file paths are being canonicalized by a worker, without holding the lock
+    private final Set<TaskInternal> filesBeingCanonicalized = Sets.newIdentityHashSet();
+    // Tasks waiting to execute whose file paths could not be resolved, which fail instead of executing
+    private final Map<Task, Throwable> canonicalizationFailures = Maps.newIdentityHashMap();
+    // Running tasks whose file paths could not be resolved, which cannot run in parallel with any other task
+    private final Set<TaskInternal> runningTasksWithUnknownFiles = Sets.newIdentityHashSet();
+    private final PathTrie runningTaskOutputs = new PathTrie();
+    private final PathTrie runningTaskInputs = new PathTrie();
     private final Map<Task, Boolean> isParallelSafeCache = Maps.newIdentityHashMap();
+    private final Set<TaskInfo> preparedTasks = Sets.newIdentityHashSet();
+    private Action<? super TaskInternal> taskPreparer;
+    private Transformer<Long, ? super Task> expectedDurations;
     private boolean tasksCancelled;
 
     private final boolean intraProjectParallelization;
+    // Tasks of a project run in parallel when they are cacheable, declare their outputs and do not read or write each other's files
+    private final boolean declaredIntraProjectParallelization;
 
     public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, boolean intraProjectParallelization) {
+        this(cancellationToken, intraProjectParallelization, false);
+    }
+
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, boolean intraProjectParallelization, boolean declaredIntraProjectParallelization) {
         this.cancellationToken = cancellationToken;
         this.intraProjectParallelization = intraProjectParallelization;
+        this.declaredIntraProjectParallelization = declaredIntraProjectParallelization;
 
         if (intraProjectParallelization) {
             LOGGER.info("intra project task parallelization is enabled");
         }
+        if (declaredIntraProjectParallelization) {
+            LOGGER.info("intra project task parallelization based on declared inputs and outputs is enabled");
+        }
     }
 
     public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken) {
-        this(cancellationToken, Boolean.getBoolean(INTRA_PROJECT_TOGGLE));
+        this(cancellationToken, Boolean.getBoolean(INTRA_PROJECT_TOGGLE), Boolean.getBoolean(DECLARED_INTRA_PROJECT_TOGGLE));
     }
 
     public void addToTaskGraph(Collection<? extends Task> tasks) {
@@ -307,8 +365,99 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
             }
         }
-        executionQueue.clear();
+        clearQueue();
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            planPositions.put(taskInfo, planPositions.size());
+            for (TaskInfo mustSuccessor : taskInfo.getMustSuccessors()) {
+                mustPredecessors.put(mustSuccessor, taskInfo);
+            }
+        }
+        calculateCriticalPaths();
         executionQueue.addAll(executionPlan.values());
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            updateQueuedState(taskInfo);
+        }
+    }
+
+    private void calculateCriticalPaths() {
+        remainingCriticalPaths.clear();
+        if (expectedDurations == null) {
+            return;
+        }
+        // Tasks that wait for a task come after it in the plan, so walk the plan backwards
+        List<TaskInfo> plan = new ArrayList<TaskInfo>(executionPlan.values());
+        for (int i = plan.size() - 1; i >= 0; i--) {
+            TaskInfo taskInfo = plan.get(i);
+            long longestWaitingPath = 0;
+            for (TaskInfo waiting : Iterables.concat(taskInfo.getDependencyPredecessors(), mustPredecessors.get(taskInfo))) {
+                Long waitingPath = remainingCriticalPaths.get(waiting);
+                if (waitingPath != null) {
+                    longestWaitingPath = Math.max(longestWaitingPath, waitingPath);
+                }
+            }
+            remainingCriticalPaths.put(taskInfo, expectedDurations.transform(taskInfo.getTask()) + longestWaitingPath);
+        }
+    }
+
+    private void clearQueue() {
+        executionQueue.clear();
+        pendingTasks.clear();
+        readyTasks.clear();
+        planPositions.clear();
+        remainingCriticalPaths.clear();
+        mustPredecessors.clear();
+    }
+
+    /**
+     * Updates the sets of pending and ready tasks for a task that has not been picked for execution yet.
+     */
+    private void updateQueuedState(TaskInfo taskInfo) {
+        if (!executionQueue.contains(taskInfo)) {
+            return;
+        }
+        if (taskInfo.isComplete()) {
+            pendingTasks.remove(taskInfo);
+        } else {
+            pendingTasks.add(taskInfo);
+        }
+        if (taskInfo.isReady() && taskInfo.allDependenciesComplete()) {
+            readyTasks.add(taskInfo);
+        } else {
+            readyTasks.remove(taskInfo);
+        }
+    }
+
+    /**
+     * Updates the queued state of a task, and of the tasks that depend on it, after the task's state has changed.
+     */
+    private void taskStateChanged(TaskInfo taskInfo) {
+        updateQueuedState(taskInfo);
+        for (TaskInfo predecessor : taskInfo.getDependencyPredecessors()) {
+            updateQueuedState(predecessor);
+        }
+        for (TaskInfo predecessor : mustPredecessors.get(taskInfo)) {
+            updateQueuedState(predecessor);
+        }
+    }
+
+    private void removeFromQueue(TaskInfo taskInfo) {
+        executionQueue.remove(taskInfo);
+        pendingTasks.remove(taskInfo);
+        readyTasks.remove(taskInfo);
+    }
+
+    /**
+     * Wakes as many waiting workers as there are tasks ready to execute, or all of them when no more tasks are left to execute.
+     */
+    private void signalWorkers() {
+        if (pendingTasks.isEmpty()) {
+            taskReady.signalAll();
+            return;
+        }
+        int workersToWake = Math.min(readyTasks.size(), waitingWorkers);
+        for (int i = 0; i < workersToWake; i++) {
+            taskReady.signal();
+        }
     }
 
     private void maybeRemoveProcessedShouldRunAfterEdge(Stack<GraphEdge> walkedShouldRunAfterEdges, TaskInfo taskNode) {
@@ -451,13 +600,20 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             graph.clear();
             entryTasks.clear();
             executionPlan.clear();
-            executionQueue.clear();
+            clearQueue();
             failures.clear();
             projectsWithRunningTasks.clear();
             projectsWithRunningNonParallelizableTasks.clear();
             canonicalizedOutputCache.clear();
+            canonicalizedInputCache.clear();
+            filesBeingCanonicalized.clear();
+            canonicalizationFailures.clear();
+            runningTasksWithUnknownFiles.clear();
             isParallelSafeCache.clear();
             runningTasks.clear();
+            runningTaskOutputs.clear();
+            runningTaskInputs.clear();
+            preparedTasks.clear();
         } finally {
             lock.unlock();
         }
@@ -467,6 +623,16 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         return new ArrayList<Task>(executionPlan.keySet());
     }
 
+    public List<Task> getTasksWithoutDependencies() {
+        List<Task> tasks = new ArrayList<Task>();
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            if (taskInfo.isRequired() && taskInfo.getDependencySuccessors().isEmpty()) {
+                tasks.add(taskInfo.getTask());
+            }
+        }
+        return tasks;
+    }
+
     public void useFilter(Spec<? super Task> filter) {
         this.filter = filter;
     }
@@ -475,6 +641,30 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         this.failureHandler = handler;
     }
 
+    public void useTaskPreparer(Action<? super TaskInternal> taskPreparer) {
+        lock.lock();
+        try {
+            this.taskPreparer = taskPreparer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void prioritizeByCriticalPath(Transformer<Long, ? super Task> expectedDurations) {
+        lock.lock();
+        try {
+            this.expectedDurations = expectedDurations;
+            // The order of the ready tasks changes, so sort them again
+            readyTasks.clear();
+            calculateCriticalPaths();
+            for (TaskInfo taskInfo : executionQueue) {
+                updateQueuedState(taskInfo);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public TaskInfo getTaskToExecute() {
         lock.lock();
         try {
@@ -482,37 +672,78 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 if (cancellationToken.isCancellationRequested()) {
                     if (abortExecution()) {
                         tasksCancelled = true;
+                        signalWorkers();
+                        condition.signalAll();
                     }
                 }
+                if (pendingTasks.isEmpty()) {
+                    return null;
+                }
                 TaskInfo nextMatching = null;
-                boolean allTasksComplete = true;
-                Iterator<TaskInfo> iterator = executionQueue.iterator();
-                while (iterator.hasNext()) {
-                    TaskInfo taskInfo = iterator.next();
-                    allTasksComplete = allTasksComplete && taskInfo.isComplete();
-                    if (taskInfo.isReady() && taskInfo.allDependenciesComplete() && canRunWithWithCurrentlyExecutedTasks(taskInfo)) {
+                Throwable canonicalizationFailure = null;
+                TaskInfo taskToCanonicalize = null;
+                for (TaskInfo taskInfo : readyTasks) {
+                    TaskInternal task = taskInfo.getTask();
+                    if (canonicalizationFailures.containsKey(task)) {
+                        nextMatching = taskInfo;
+                        canonicalizationFailure = canonicalizationFailures.remove(task);
+                        break;
+                    }
+                    if (filesBeingCanonicalized.contains(task) || !canRunWithCurrentlyExecutedTasksOfProject(task)) {
+                        continue;
+                    }
+                    if (runningTasks.isEmpty()) {
+                        // Nothing to overlap with, so the paths of the task are not needed yet
+                        nextMatching = taskInfo;
+                        break;
+                    }
+                    if (!runningTasksWithUnknownFiles.isEmpty()) {
+                        break;
+                    }
+                    TaskInfo taskWithoutPaths = taskWithoutCanonicalizedFiles(taskInfo);
+                    if (taskWithoutPaths != null) {
+                        if (filesBeingCanonicalized.contains(taskWithoutPaths.getTask())) {
+                            continue;
+                        }
+                        taskToCanonicalize = taskWithoutPaths;
+                        break;
+                    }
+                    if (canRunWithWithCurrentlyExecutedTasks(taskInfo)) {
                         nextMatching = taskInfo;
-                        iterator.remove();
                         break;
                     }
                 }
-                if (allTasksComplete) {
-                    return null;
+                if (taskToCanonicalize != null) {
+                    canonicalizeFiles(taskToCanonicalize);
+                    continue;
                 }
                 if (nextMatching == null) {
+                    TaskInfo taskToPrepare = getTaskToPrepare();
+                    if (taskToPrepare != null) {
+                        prepareTask(taskToPrepare);
+                        continue;
+                    }
+                    waitingWorkers++;
                     try {
-                        condition.await();
+                        taskReady.await();
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
+                    } finally {
+                        waitingWorkers--;
                     }
                 } else {
-                    if (nextMatching.allDependenciesSuccessful()) {
+                    removeFromQueue(nextMatching);
+                    if (!nextMatching.allDependenciesSuccessful()) {
+                        nextMatching.skipExecution();
+                        taskStateChanged(nextMatching);
+                        signalWorkers();
+                        condition.signalAll();
+                    } else if (canonicalizationFailure != null) {
+                        failExecution(nextMatching, canonicalizationFailure);
+                    } else {
                         nextMatching.startExecution();
                         recordTaskStarted(nextMatching);
                         return nextMatching;
-                    } else {
-                        nextMatching.skipExecution();
-                        condition.signalAll();
                     }
                 }
             }
@@ -521,49 +752,181 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
-    private boolean canRunWithWithCurrentlyExecutedTasks(TaskInfo taskInfo) {
+    @Nullable
+    private TaskInfo getTaskToPrepare() {
+        if (taskPreparer == null || tasksCancelled) {
+            return null;
+        }
+        for (TaskInfo taskInfo : pendingTasks) {
+            if (taskInfo.isReady() && !taskInfo.allDependenciesComplete()
+                && !preparedTasks.contains(taskInfo)
+                && !projectsWithRunningTasks.contains(taskInfo.getTask().getProject().getPath())) {
+                return taskInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares the given task without holding the lock. The task's project is marked as busy meanwhile, so that none of its tasks start executing.
+     */
+    private void prepareTask(TaskInfo taskInfo) {
+        Action<? super TaskInternal> preparer = taskPreparer;
         TaskInternal task = taskInfo.getTask();
         String projectPath = task.getProject().getPath();
+        preparedTasks.add(taskInfo);
+        projectsWithRunningTasks.add(projectPath);
+        projectsWithRunningNonParallelizableTasks.add(projectPath);
+        lock.unlock();
+        try {
+            preparer.execute(task);
+        } catch (Throwable t) {
+            LOGGER.debug("Could not prepare {} ahead of execution", task, t);
+        } finally {
+            lock.lock();
+            projectsWithRunningTasks.remove(projectPath);
+            projectsWithRunningNonParallelizableTasks.remove(projectPath);
+            signalWorkers();
+        }
+    }
+
+    /**
+     * Completes the given task as failed without executing it.
+     */
+    private void failExecution(TaskInfo taskInfo, Throwable failure) {
+        TaskInternal task = taskInfo.getTask();
+        taskInfo.startExecution();
+        task.getState().setOutcome(new TaskExecutionException(task, failure));
+        enforceFinalizerTasks(taskInfo);
+        handleFailure(taskInfo);
+        taskInfo.finishExecution();
+        isParallelSafeCache.remove(task);
+        taskStateChanged(taskInfo);
+        signalWorkers();
+        condition.signalAll();
+    }
 
+    private boolean canRunWithCurrentlyExecutedTasksOfProject(TaskInternal task) {
+        String projectPath = task.getProject().getPath();
         if (isParallelizable(task)) {
-            if (projectsWithRunningNonParallelizableTasks.contains(projectPath)) {
-                return false;
-            }
-        } else {
-            if (projectsWithRunningTasks.contains(projectPath)) {
-                return false;
+            return !projectsWithRunningNonParallelizableTasks.contains(projectPath);
+        }
+        return !projectsWithRunningTasks.contains(projectPath);
+    }
+
+    /**
+     * Returns the given task or a running task whose paths are needed to check for overlaps, but are not known yet.
+     * The paths of a task that starts while no other task is running are only canonicalized once another task may run alongside it.
+     */
+    @Nullable
+    private TaskInfo taskWithoutCanonicalizedFiles(TaskInfo taskInfo) {
+        if (!canonicalizedOutputCache.containsKey(taskInfo.getTask())) {
+            return taskInfo;
+        }
+        for (TaskInternal runningTask : runningTasks) {
+            if (!canonicalizedOutputCache.containsKey(runningTask)) {
+                return executionPlan.get(runningTask);
             }
         }
+        return null;
+    }
+
+    private boolean canRunWithWithCurrentlyExecutedTasks(TaskInfo taskInfo) {
+        TaskInternal task = taskInfo.getTask();
 
         Pair<TaskInternal, String> overlap = firstTaskWithOverlappingOutput(task);
-        if (overlap == null) {
-            return true;
-        } else {
+        if (overlap != null) {
             LOGGER.info("Cannot execute task {} in parallel with task {} due to overlapping output: {}", task.getPath(), overlap.left.getPath(), overlap.right);
+            return false;
         }
 
-        return false;
+        if (declaredIntraProjectParallelization && !runningTasks.isEmpty()) {
+            overlap = firstOverlapping(canonicalizedInputCache.get(task), runningTaskOutputs);
+            if (overlap != null) {
+                LOGGER.info("Cannot execute task {} in parallel with task {} as it reads an output of that task: {}", task.getPath(), overlap.left.getPath(), overlap.right);
+                return false;
+            }
+            overlap = firstOverlapping(canonicalizedOutputCache.get(task), runningTaskInputs);
+            if (overlap != null) {
+                LOGGER.info("Cannot execute task {} in parallel with task {} as it writes an input of that task: {}", task.getPath(), overlap.left.getPath(), overlap.right);
+                return false;
+            }
+        }
+
+        return true;
     }
 
-    private Set<String> canonicalizedOutputPaths(TaskInternal task) {
-        Set<String> paths = canonicalizedOutputCache.get(task);
-        if (paths == null) {
-            paths = Sets.newHashSet(Iterables.transform(task.getOutputs().getFiles(), new Function<File, String>() {
-                @Override
-                public String apply(File file) {
-                    String path;
-                    try {
-                        path = file.getCanonicalPath();
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                    return path;
-                }
-            }));
-            canonicalizedOutputCache.put(task, paths);
+    /**
+     * Canonicalizes the output paths, and when needed the input root paths, of the given task without holding the lock, as this can access the file system.
+     *
+     * <p>When the paths cannot be resolved, a task that is waiting to execute fails instead, and a running task is left to run on its own.</p>
+     */
+    private void canonicalizeFiles(TaskInfo taskInfo) {
+        TaskInternal task = taskInfo.getTask();
+        filesBeingCanonicalized.add(task);
+        Set<String> outputPaths = null;
+        Set<String> inputPaths = null;
+        Throwable failure = null;
+        // Only needed to find tasks of the same project that read each other's files
+        boolean needsInputPaths = declaredIntraProjectParallelization && isParallelizable(task);
+        lock.unlock();
+        try {
+            outputPaths = canonicalizedPaths(task.getOutputs().getFiles());
+            inputPaths = needsInputPaths ? canonicalizedPaths(inputRoots(task)) : Collections.<String>emptySet();
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            lock.lock();
+            filesBeingCanonicalized.remove(task);
+            signalWorkers();
+        }
+        if (taskInfo.isComplete()) {
+            // Completed or skipped meanwhile
+            return;
+        }
+        boolean running = runningTasks.contains(task);
+        if (failure != null) {
+            if (running) {
+                LOGGER.info("Cannot execute other tasks in parallel with task {} as its files could not be resolved", task.getPath(), failure);
+                runningTasksWithUnknownFiles.add(task);
+            } else {
+                canonicalizationFailures.put(task, failure);
+            }
+            return;
+        }
+        canonicalizedOutputCache.put(task, outputPaths);
+        canonicalizedInputCache.put(task, inputPaths);
+        if (running) {
+            runningTaskOutputs.add(task, outputPaths);
+            runningTaskInputs.add(task, inputPaths);
+        }
+    }
+
+    /**
+     * Returns the root files and directories of the input properties of the given task, including missing ones, rather than the files beneath them.
+     * A running task that writes beneath an input directory is then found to overlap, even when the directory is still empty.
+     */
+    private static Set<File> inputRoots(TaskInternal task) {
+        InputRootsCollector inputRoots = new InputRootsCollector();
+        for (TaskInputFilePropertySpec propertySpec : task.getInputs().getFileProperties()) {
+            ((FileCollectionInternal) propertySpec.getPropertyFiles()).visitRootElements(inputRoots);
         }
+        return inputRoots.roots;
+    }
 
-        return paths;
+    private static Set<String> canonicalizedPaths(Iterable<File> files) {
+        return Sets.newHashSet(Iterables.transform(files, new Function<File, String>() {
+            @Override
+            public String apply(File file) {
+                String path;
+                try {
+                    path = file.getCanonicalPath();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return path;
+            }
+        }));
     }
 
     @Nullable
@@ -572,39 +935,23 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             return null;
         }
 
-        for (String candidateTaskOutputPath : canonicalizedOutputPaths(candidateTask)) {
-            for (TaskInternal runningTask : runningTasks) {
-                for (String runningTaskOutputPath : canonicalizedOutputPaths(runningTask)) {
-                    if (pathsOverlap(candidateTaskOutputPath, runningTaskOutputPath)) {
-                        return Pair.of(runningTask, TextUtil.shorterOf(candidateTaskOutputPath, runningTaskOutputPath));
-                    }
-                }
-            }
-        }
-
-        return null;
+        return firstOverlapping(canonicalizedOutputCache.get(candidateTask), runningTaskOutputs);
     }
 
-
-    private boolean pathsOverlap(String firstPath, String secondPath) {
-        if (firstPath.equals(secondPath)) {
-            return true;
+    @Nullable
+    private static Pair<TaskInternal, String> firstOverlapping(Set<String> candidateTaskPaths, PathTrie runningTaskPaths) {
+        for (String candidateTaskPath : candidateTaskPaths) {
+            Pair<TaskInternal, String> overlap = runningTaskPaths.firstOverlapping(candidateTaskPath);
+            if (overlap != null) {
+                return overlap;
+            }
         }
 
-        String shorter;
-        String longer;
-        if (firstPath.length() > secondPath.length()) {
-            shorter = secondPath;
-            longer = firstPath;
-        } else {
-            shorter = firstPath;
-            longer = secondPath;
-        }
-        return longer.startsWith(shorter + StandardSystemProperty.FILE_SEPARATOR.value());
+        return null;
     }
 
     boolean isParallelizable(TaskInternal task) {
-        if (intraProjectParallelization) {
+        if (intraProjectParallelization || declaredIntraProjectParallelization) {
             Boolean safe = isParallelSafeCache.get(task);
             if (safe == null) {
                 safe = detectIsParallelizable(task);
@@ -618,7 +965,12 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private boolean detectIsParallelizable(TaskInternal task) {
-        if (task.getClass().isAnnotationPresent(ParallelizableTask.class)) {
+        boolean declaresParallelizable = intraProjectParallelization && task.getClass().isAnnotationPresent(ParallelizableTask.class);
+        // Without declared outputs, the files a task changes are not known. The actions of a cacheable task type only produce its declared outputs
+        // from its declared inputs, so unlike other task types they do not change or rely on the state of the project while they execute
+        boolean declaresOutputs = declaredIntraProjectParallelization && task.getClass().isAnnotationPresent(CacheableTask.class) && task.getOutputs().hasDeclaredOutputs();
+        if (declaresParallelizable || declaresOutputs) {
+            // Custom actions can change the state of the project, so the task needs the project to itself
             if (task.isHasCustomActions()) {
                 LOGGER.info("Unable to parallelize task {} due to presence of custom actions (e.g. doFirst()/doLast())", task.getPath());
             } else {
@@ -637,6 +989,11 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         projectsWithRunningTasks.add(projectPath);
         runningTasks.add(task);
+        Set<String> outputPaths = canonicalizedOutputCache.get(task);
+        if (outputPaths != null) {
+            runningTaskOutputs.add(task, outputPaths);
+            runningTaskInputs.add(task, canonicalizedInputCache.get(task));
+        }
     }
 
     private void recordTaskCompleted(TaskInfo taskInfo) {
@@ -646,8 +1003,16 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             projectsWithRunningNonParallelizableTasks.remove(projectPath);
         }
         projectsWithRunningTasks.remove(projectPath);
-        canonicalizedOutputCache.remove(task);
+        Set<String> outputPaths = canonicalizedOutputCache.remove(task);
+        if (outputPaths != null) {
+            runningTaskOutputs.remove(task, outputPaths);
+        }
+        Set<String> inputPaths = canonicalizedInputCache.remove(task);
+        if (inputPaths != null) {
+            runningTaskInputs.remove(task, inputPaths);
+        }
         isParallelSafeCache.remove(task);
+        runningTasksWithUnknownFiles.remove(task);
         runningTasks.remove(task);
     }
 
@@ -661,6 +1026,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
             taskInfo.finishExecution();
             recordTaskCompleted(taskInfo);
+            taskStateChanged(taskInfo);
+            signalWorkers();
             condition.signalAll();
         } finally {
             lock.unlock();
@@ -687,6 +1054,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         if (node.isMustNotRun() || node.isRequired()) {
             node.enforceRun();
+            taskStateChanged(node);
         }
     }
 
@@ -716,6 +1084,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         for (TaskInfo taskInfo : executionPlan.values()) {
             if (taskInfo.isRequired()) {
                 taskInfo.skipExecution();
+                taskStateChanged(taskInfo);
                 aborted = true;
             }
         }
@@ -787,4 +1156,33 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             task.getState().rethrowFailure();
         }
     }
+
+    private static class InputRootsCollector implements FileCollectionVisitor {
+        private final Set<File> roots = Sets.newLinkedHashSet();
+
+        @Override
+        public void visitCollection(FileCollectionInternal fileCollection) {
+            if (fileCollection instanceof Configuration) {
+                // Resolving a configuration is not safe while other tasks of the project run. Its files are produced by the tasks it depends on,
+                // which have completed, or are found in the dependency caches, which tasks do not write
+                return;
+            }
+            for (File file : fileCollection) {
+                roots.add(file);
+            }
+        }
+
+        @Override
+        public void visitTree(FileTreeInternal fileTree) {
+            // The root of the tree is not known
+            for (File file : fileTree) {
+                roots.add(file);
+            }
+        }
+
+        @Override
+        public void visitDirectoryTree(DirectoryFileTree directoryTree) {
+            roots.add(directoryTree.getDir());
+        }
+    }
 }
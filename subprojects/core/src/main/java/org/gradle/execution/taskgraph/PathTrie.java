@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import com.google.common.base.Splitter;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.internal.Pair;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical file paths of the running tasks, such as their outputs, indexed by their segments. Finding a running task with a path that overlaps a given
+ * path takes time proportional to the depth of the path, rather than to the number of paths. Two paths overlap when they are the same, or one contains the other.
+ */
+class PathTrie {
+    private static final Splitter SEGMENTS = Splitter.on(File.separatorChar).omitEmptyStrings();
+
+    private final Node root = new Node();
+
+    void add(TaskInternal task, Iterable<String> paths) {
+        for (String path : paths) {
+            Node node = root;
+            node.pathCount++;
+            for (String segment : SEGMENTS.split(path)) {
+                node = node.getOrCreateChild(segment);
+                node.pathCount++;
+            }
+            node.path = path;
+            node.tasks.add(task);
+        }
+    }
+
+    void remove(TaskInternal task, Iterable<String> paths) {
+        for (String path : paths) {
+            List<String> segments = SEGMENTS.splitToList(path);
+            List<Node> nodes = new ArrayList<Node>(segments.size() + 1);
+            Node node = root;
+            nodes.add(node);
+            for (String segment : segments) {
+                node = node.getChild(segment);
+                if (node == null) {
+                    break;
+                }
+                nodes.add(node);
+            }
+            if (node == null || !node.tasks.remove(task)) {
+                continue;
+            }
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                Node current = nodes.get(i);
+                current.pathCount--;
+                if (current.pathCount == 0 && i > 0) {
+                    nodes.get(i - 1).children.remove(segments.get(i - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a running task with a path that overlaps the given path, along with the shorter of the overlapping paths, or null when there is no such task.
+     */
+    @Nullable
+    Pair<TaskInternal, String> firstOverlapping(String path) {
+        Node node = root;
+        for (String segment : SEGMENTS.split(path)) {
+            if (!node.tasks.isEmpty()) {
+                // A path of a running task contains the path
+                return Pair.of(node.tasks.get(0), node.path);
+            }
+            node = node.getChild(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.pathCount == 0) {
+            return null;
+        }
+        // A path of a running task is the path or is contained in it
+        while (node.tasks.isEmpty()) {
+            node = node.children.values().iterator().next();
+        }
+        return Pair.of(node.tasks.get(0), path);
+    }
+
+    void clear() {
+        root.pathCount = 0;
+        root.tasks.clear();
+        root.children = null;
+    }
+
+    private static class Node {
+        // The number of paths at or below this node
+        private int pathCount;
+        private String path;
+        private final List<TaskInternal> tasks = new ArrayList<TaskInternal>(1);
+        private Map<String, Node> children;
+
+        @Nullable
+        Node getChild(String segment) {
+            return children == null ? null : children.get(segment);
+        }
+
+        Node getOrCreateChild(String segment) {
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.SpeculativeInputFilesSnapshotter;
+
+/**
+ * Snapshots the input files of tasks that wait for their dependencies on idle workers, so that the snapshots are ready once the tasks start.
+ */
+public class SpeculativeSnapshottingTaskPlanExecutor implements TaskPlanExecutor {
+    public static final String TOGGLE = "org.gradle.parallel.snapshotAhead";
+
+    private final SpeculativeInputFilesSnapshotter snapshotter;
+    private final TaskPlanExecutor delegate;
+
+    public SpeculativeSnapshottingTaskPlanExecutor(SpeculativeInputFilesSnapshotter snapshotter, TaskPlanExecutor delegate) {
+        this.snapshotter = snapshotter;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void process(TaskExecutionPlan taskExecutionPlan, Action<? super TaskInternal> taskWorker) {
+        taskExecutionPlan.useTaskPreparer(new Action<TaskInternal>() {
+            @Override
+            public void execute(TaskInternal task) {
+                snapshotter.snapshotAhead(task);
+            }
+        });
+        try {
+            delegate.process(taskExecutionPlan, taskWorker);
+        } finally {
+            taskExecutionPlan.useTaskPreparer(null);
+            snapshotter.clear();
+        }
+    }
+}
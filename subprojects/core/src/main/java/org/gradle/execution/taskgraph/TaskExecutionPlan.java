@@ -16,7 +16,11 @@
 
 package org.gradle.execution.taskgraph;
 
+import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.Task;
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.TaskInternal;
 
 import java.util.List;
 
@@ -40,6 +44,23 @@ public interface TaskExecutionPlan {
      */
     List<Task> getTasks();
 
+    /**
+     * @return The tasks in the plan that do not depend on any other task, in execution order. The inputs of these tasks are known before execution starts.
+     */
+    List<Task> getTasksWithoutDependencies();
+
+    /**
+     * Uses the given action to prepare tasks that are waiting for their dependencies, on workers that would otherwise be idle. Each task is prepared at most once.
+     * No task of the same project executes while a task is being prepared.
+     */
+    void useTaskPreparer(Action<? super TaskInternal> taskPreparer);
+
+    /**
+     * Executes the ready-to-execute tasks that start the longest chains of waiting tasks first, rather than in execution order. The length of a chain is the sum
+     * of the expected durations of its tasks, as provided by the given transformer. Passing null executes the tasks in execution order again.
+     */
+    void prioritizeByCriticalPath(@Nullable Transformer<Long, ? super Task> expectedDurations);
+
     /**
      * Provides a ready-to-execute task. A task is ready-to-execute if all of its dependencies have been completed successfully.
      * This method blocks until the at least one task is ready-to-execute.
@@ -19,9 +19,11 @@ package org.gradle.internal.buildevents;
 import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatistics;
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatisticsListener;
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheSummary;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.internal.logging.text.StyledTextOutput;
 import org.gradle.internal.logging.text.StyledTextOutputFactory;
+import org.gradle.internal.time.Clock;
 
 public class CacheStatisticsReporter implements TaskExecutionStatisticsListener {
     private final StyledTextOutputFactory textOutputFactory;
@@ -47,6 +49,38 @@ public class CacheStatisticsReporter implements TaskExecutionStatisticsListener
         statisticsLine(textOutput, fromCacheTasks, allTasks, "loaded from cache");
         statisticsLine(textOutput, cacheableExecutedTasks, allTasks, "cache miss");
         statisticsLine(textOutput, nonCacheableExecutedTasks, allTasks, "not cacheable");
+        int storeFailures = statistics.getStoreFailureCount();
+        if (storeFailures > 0) {
+            int allStores = statistics.getStoredCount() + storeFailures;
+            textOutput.formatln("%d out of %d task outputs could not be stored in the cache", storeFailures, allStores);
+        }
+        cacheSummary(textOutput, statistics.getCacheSummary());
+    }
+
+    private void cacheSummary(StyledTextOutput textOutput, TaskOutputCacheSummary summary) {
+        if (summary.getLookupCount() > 0) {
+            textOutput.formatln("Task output cache: %d lookups took %s, calculating cache keys took %s", summary.getLookupCount(), Clock.prettyTime(summary.getLookupTime()), Clock.prettyTime(summary.getCacheKeyCalculationTime()));
+        }
+        if (summary.getHitCount() > 0) {
+            textOutput.formatln("Task output cache: loaded %s for %d tasks, unpacking took %s", formatBytes(summary.getLoadedBytes()), summary.getHitCount(), Clock.prettyTime(summary.getUnpackTime()));
+        }
+        if (summary.getEstimatedHitCount() > 0) {
+            long saved = summary.getEstimatedTimeSaved();
+            textOutput.formatln("Task output cache: loading %d tasks from cache %s an estimated %s", summary.getEstimatedHitCount(), saved >= 0 ? "saved" : "cost", Clock.prettyTime(Math.abs(saved)));
+        }
+        if (summary.getStoreCount() > 0) {
+            textOutput.formatln("Task output cache: stored %s for %d tasks, packing took %s, uploading took %s", formatBytes(summary.getStoredBytes()), summary.getStoreCount(), Clock.prettyTime(summary.getPackTime()), Clock.prettyTime(summary.getUploadTime()));
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f kB", bytes / 1024d);
+        }
+        return String.format("%.1f MB", bytes / (1024d * 1024d));
     }
 
     private void statisticsLine(StyledTextOutput textOutput, int fraction, int total, String description) {
@@ -32,6 +32,7 @@ import org.gradle.cache.internal.CacheRepositoryServices;
 import org.gradle.deployment.internal.DefaultDeploymentRegistry;
 import org.gradle.deployment.internal.DeploymentRegistry;
 import org.gradle.internal.classpath.ClassPath;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.id.LongIdGenerator;
 import org.gradle.internal.jvm.inspection.JvmVersionDetector;
 import org.gradle.internal.remote.MessagingServer;
@@ -93,8 +94,8 @@ public class BuildSessionScopeServices extends DefaultServiceRegistry {
         return new WorkerProcessClassPathProvider(cacheRepository);
     }
 
-    TaskCachingInternal createTaskCaching(CacheRepository cacheRepository) {
-        return new DefaultTaskCaching(cacheRepository);
+    TaskCachingInternal createTaskCaching(CacheRepository cacheRepository, ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider) {
+        return new DefaultTaskCaching(cacheRepository, executorFactory, temporaryFileProvider);
     }
 
     GeneratedGradleJarCache createGeneratedGradleJarCache(CacheRepository cacheRepository) {
@@ -29,7 +29,9 @@ import org.gradle.api.internal.DocumentationRegistry;
 import org.gradle.api.internal.DynamicModulesClassPathProvider;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
+import org.gradle.api.internal.changedetection.state.FileWatchingDirectoryTreeSnapshotCache;
 import org.gradle.api.internal.changedetection.state.InMemoryTaskArtifactCache;
+import org.gradle.api.internal.changedetection.state.RetainedFileSnapshots;
 import org.gradle.api.internal.changedetection.state.ShortLivedProcessInMemoryTaskArtifactCache;
 import org.gradle.api.internal.classpath.DefaultModuleRegistry;
 import org.gradle.api.internal.classpath.DefaultPluginModuleRegistry;
@@ -363,6 +365,10 @@ public class GlobalScopeServices {
         return new DefaultFileWatcherFactory(executorFactory, fileSystem);
     }
 
+    RetainedFileSnapshots createRetainedFileSnapshots(StringInterner stringInterner, FileSystem fileSystem, FileWatcherFactory fileWatcherFactory) {
+        return new RetainedFileSnapshots(new FileWatchingDirectoryTreeSnapshotCache(stringInterner, fileSystem, fileWatcherFactory));
+    }
+
     StringInterner createStringInterner() {
         return new StringInterner();
     }
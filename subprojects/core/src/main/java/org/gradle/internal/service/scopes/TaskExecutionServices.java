@@ -15,6 +15,8 @@
  */
 package org.gradle.internal.service.scopes;
 
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
 import org.gradle.StartParameter;
 import org.gradle.api.execution.TaskActionListener;
 import org.gradle.api.execution.internal.TaskInputsListener;
@@ -24,6 +26,7 @@ import org.gradle.api.internal.changedetection.TaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.DefaultTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.ShortCircuitTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.state.CacheBackedFileSnapshotRepository;
+import org.gradle.api.internal.changedetection.state.CacheBackedTaskExecutionTimeRepository;
 import org.gradle.api.internal.changedetection.state.CacheBackedTaskHistoryRepository;
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
 import org.gradle.api.internal.changedetection.state.ClasspathSnapshotter;
@@ -31,23 +34,37 @@ import org.gradle.api.internal.changedetection.state.DefaultClasspathSnapshotter
 import org.gradle.api.internal.changedetection.state.DefaultFileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.DefaultGenericFileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.DefaultTaskHistoryStore;
+import org.gradle.api.internal.changedetection.state.DirectoryTreeSnapshotCache;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRegistry;
+import org.gradle.api.internal.changedetection.state.FileWatchingDirectoryTreeSnapshotCache;
 import org.gradle.api.internal.changedetection.state.GenericFileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.InMemoryTaskArtifactCache;
+import org.gradle.api.internal.changedetection.state.JarContentHasher;
 import org.gradle.api.internal.changedetection.state.OutputFilesSnapshotter;
+import org.gradle.api.internal.changedetection.state.ParallelFileHasher;
+import org.gradle.api.internal.changedetection.state.RetainedFileSnapshots;
+import org.gradle.api.internal.changedetection.state.SpeculativeInputFilesSnapshotter;
+import org.gradle.api.internal.changedetection.state.TaskExecutionTimeRepository;
 import org.gradle.api.internal.changedetection.state.TaskHistoryRepository;
 import org.gradle.api.internal.changedetection.state.TaskHistoryStore;
 import org.gradle.api.internal.file.FileCollectionFactory;
+import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
 import org.gradle.api.internal.hash.DefaultFileHasher;
+import org.gradle.api.internal.hash.FileContentHashAlgorithm;
 import org.gradle.api.internal.hash.FileHasher;
 import org.gradle.api.internal.tasks.TaskExecuter;
-import org.gradle.api.internal.tasks.cache.GZipTaskOutputPacker;
+import org.gradle.api.internal.tasks.cache.CompressingTaskOutputPacker;
 import org.gradle.api.internal.tasks.cache.OutputPreparingTaskOutputPacker;
 import org.gradle.api.internal.tasks.cache.TarTaskOutputPacker;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheLoadListener;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheProber;
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheStoreListener;
 import org.gradle.api.internal.tasks.cache.TaskOutputPacker;
+import org.gradle.api.internal.tasks.cache.TaskOutputStorer;
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression;
 import org.gradle.api.internal.tasks.cache.config.TaskCachingInternal;
 import org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter;
@@ -61,20 +78,26 @@ import org.gradle.api.internal.tasks.execution.SkipUpToDateTaskExecuter;
 import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
 import org.gradle.api.internal.tasks.execution.ValidatingTaskExecuter;
 import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.cache.CacheRepository;
+import org.gradle.execution.taskgraph.CacheProbingTaskPlanExecutor;
+import org.gradle.execution.taskgraph.CriticalPathTaskPlanExecutor;
+import org.gradle.execution.taskgraph.SpeculativeSnapshottingTaskPlanExecutor;
 import org.gradle.execution.taskgraph.TaskPlanExecutor;
 import org.gradle.execution.taskgraph.TaskPlanExecutorFactory;
+import org.gradle.internal.Factory;
 import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.environment.GradleBuildEnvironment;
 import org.gradle.internal.event.ListenerManager;
-import org.gradle.internal.id.RandomLongIdGenerator;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationProcessor;
 import org.gradle.internal.operations.BuildOperationWorkerRegistry;
 import org.gradle.internal.operations.DefaultBuildOperationProcessor;
 import org.gradle.internal.operations.DefaultBuildOperationQueueFactory;
 import org.gradle.internal.operations.DefaultBuildOperationWorkerRegistry;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.serialize.DefaultSerializerRegistry;
 import org.gradle.internal.serialize.SerializerRegistry;
@@ -83,8 +106,9 @@ import org.gradle.internal.service.ServiceRegistry;
 import java.util.List;
 
 public class TaskExecutionServices {
+    private static final Logger LOGGER = Logging.getLogger(TaskExecutionServices.class);
 
-    TaskExecuter createTaskExecuter(TaskArtifactStateRepository repository, TaskOutputPacker packer, StartParameter startParameter, ListenerManager listenerManager, GradleInternal gradle) {
+    TaskExecuter createTaskExecuter(TaskArtifactStateRepository repository, TaskOutputPacker packer, TaskOutputStorer storer, TaskOutputCacheProber prober, TaskExecutionTimeRepository executionTimeRepository, StartParameter startParameter, ListenerManager listenerManager, GradleInternal gradle) {
         // TODO - need a more comprehensible way to only collect inputs for the outer build
         //      - we are trying to ignore buildSrc here, but also avoid weirdness with use of GradleBuild tasks
         boolean isOuterBuild = gradle.getParent() == null;
@@ -107,6 +131,10 @@ public class TaskExecutionServices {
                                             startParameter,
                                             gradle.getTaskCaching(),
                                             packer,
+                                            storer,
+                                            prober,
+                                            executionTimeRepository,
+                                            listenerManager.getBroadcaster(TaskOutputCacheLoadListener.class),
                                             taskOutputsGenerationListener,
                                             new ExecuteActionsTaskExecuter(
                                                 taskOutputsGenerationListener,
@@ -123,9 +151,9 @@ public class TaskExecutionServices {
         );
     }
 
-    private static TaskExecuter createSkipCachedExecuterIfNecessary(StartParameter startParameter, TaskCachingInternal taskCaching, TaskOutputPacker packer, TaskOutputsGenerationListener taskOutputsGenerationListener, TaskExecuter delegate) {
+    private static TaskExecuter createSkipCachedExecuterIfNecessary(StartParameter startParameter, TaskCachingInternal taskCaching, TaskOutputPacker packer, TaskOutputStorer storer, TaskOutputCacheProber prober, TaskExecutionTimeRepository executionTimeRepository, TaskOutputCacheLoadListener loadListener, TaskOutputsGenerationListener taskOutputsGenerationListener, TaskExecuter delegate) {
         if (startParameter.isTaskOutputCacheEnabled()) {
-            return new SkipCachedTaskExecuter(taskCaching, packer, startParameter, taskOutputsGenerationListener, delegate);
+            return new SkipCachedTaskExecuter(taskCaching, packer, storer, prober, executionTimeRepository, loadListener, taskOutputsGenerationListener, delegate);
         } else {
             return delegate;
         }
@@ -135,20 +163,43 @@ public class TaskExecutionServices {
         return new DefaultTaskHistoryStore(gradle, cacheRepository, inMemoryTaskArtifactCache);
     }
 
-    CachingFileHasher createFileSnapshotter(TaskHistoryStore cacheAccess, StringInterner stringInterner) {
-        return new CachingFileHasher(new DefaultFileHasher(), cacheAccess, stringInterner);
+    FileContentHashAlgorithm createFileContentHashAlgorithm() {
+        return FileContentHashAlgorithm.fromSystemProperty();
     }
 
-    GenericFileCollectionSnapshotter createGenericFileCollectionSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, ListenerManager listenerManager) {
-        DefaultGenericFileCollectionSnapshotter snapshotter = new DefaultGenericFileCollectionSnapshotter(hasher, stringInterner, fileSystem, directoryFileTreeFactory);
-        listenerManager.addListener(snapshotter);
-        return snapshotter;
+    CachingFileHasher createFileSnapshotter(TaskHistoryStore cacheAccess, StringInterner stringInterner, FileContentHashAlgorithm fileContentHashAlgorithm) {
+        return new CachingFileHasher(new DefaultFileHasher(fileContentHashAlgorithm), fileContentHashAlgorithm, cacheAccess, stringInterner);
     }
 
-    ClasspathSnapshotter createClasspathSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, ListenerManager listenerManager) {
-        DefaultClasspathSnapshotter snapshotter = new DefaultClasspathSnapshotter(hasher, stringInterner, fileSystem, directoryFileTreeFactory);
-        listenerManager.addListener(snapshotter);
-        return snapshotter;
+    DirectoryTreeSnapshotCache createDirectoryTreeSnapshotCache(StringInterner stringInterner, FileSystem fileSystem, ListenerManager listenerManager, ServiceRegistry serviceRegistry) {
+        // The file watching cache is kept by the daemon, so the snapshots taken by one build can be used by the next. It is not Stoppable, so
+        // this registry does not discard it at the end of the build
+        boolean retainFileSnapshots = Boolean.getBoolean(FileWatchingDirectoryTreeSnapshotCache.TOGGLE);
+        if (retainFileSnapshots && !FileWatchingDirectoryTreeSnapshotCache.isSupported(OperatingSystem.current())) {
+            LOGGER.warn("File snapshots are not retained between builds on this operating system, as changes to files may be detected too late.");
+            retainFileSnapshots = false;
+        }
+        DirectoryTreeSnapshotCache directoryTreeSnapshotCache = retainFileSnapshots
+            ? serviceRegistry.get(RetainedFileSnapshots.class).getDirectoryTreeSnapshotCache()
+            : new DirectoryTreeSnapshotCache(stringInterner, fileSystem);
+        listenerManager.addListener(directoryTreeSnapshotCache);
+        return directoryTreeSnapshotCache;
+    }
+
+    ParallelFileHasher createParallelFileHasher(BuildOperationProcessor buildOperationProcessor, BuildOperationWorkerRegistry buildOperationWorkerRegistry) {
+        return new ParallelFileHasher(buildOperationProcessor, buildOperationWorkerRegistry);
+    }
+
+    GenericFileCollectionSnapshotter createGenericFileCollectionSnapshotter(FileHasher hasher, StringInterner stringInterner, DirectoryFileTreeFactory directoryFileTreeFactory, DirectoryTreeSnapshotCache directoryTreeSnapshotCache, ParallelFileHasher parallelFileHasher) {
+        return new DefaultGenericFileCollectionSnapshotter(hasher, stringInterner, directoryFileTreeFactory, directoryTreeSnapshotCache, parallelFileHasher);
+    }
+
+    JarContentHasher createJarContentHasher(FileContentHashAlgorithm fileContentHashAlgorithm, TaskHistoryStore cacheAccess) {
+        return new JarContentHasher(fileContentHashAlgorithm, cacheAccess);
+    }
+
+    ClasspathSnapshotter createClasspathSnapshotter(FileHasher hasher, StringInterner stringInterner, DirectoryFileTreeFactory directoryFileTreeFactory, DirectoryTreeSnapshotCache directoryTreeSnapshotCache, ParallelFileHasher parallelFileHasher, JarContentHasher jarContentHasher) {
+        return new DefaultClasspathSnapshotter(hasher, stringInterner, directoryFileTreeFactory, directoryTreeSnapshotCache, parallelFileHasher, jarContentHasher);
     }
 
     FileCollectionSnapshotterRegistry createFileCollectionSnapshotterRegistry(ServiceRegistry serviceRegistry) {
@@ -156,7 +207,15 @@ public class TaskExecutionServices {
         return new DefaultFileCollectionSnapshotterRegistry(snapshotters);
     }
 
-    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryStore cacheAccess, StartParameter startParameter, StringInterner stringInterner, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry) {
+    TaskExecutionTimeRepository createTaskExecutionTimeRepository(TaskHistoryStore cacheAccess) {
+        return new CacheBackedTaskExecutionTimeRepository(cacheAccess);
+    }
+
+    SpeculativeInputFilesSnapshotter createSpeculativeInputFilesSnapshotter(FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry) {
+        return new SpeculativeInputFilesSnapshotter(fileCollectionSnapshotterRegistry);
+    }
+
+    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryStore cacheAccess, StartParameter startParameter, StringInterner stringInterner, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, SpeculativeInputFilesSnapshotter speculativeInputFilesSnapshotter, FileContentHashAlgorithm fileContentHashAlgorithm) {
         OutputFilesSnapshotter outputFilesSnapshotter = new OutputFilesSnapshotter();
 
         SerializerRegistry serializerRegistry = new DefaultSerializerRegistry();
@@ -166,9 +225,9 @@ public class TaskExecutionServices {
 
         TaskHistoryRepository taskHistoryRepository = new CacheBackedTaskHistoryRepository(cacheAccess,
             new CacheBackedFileSnapshotRepository(cacheAccess,
-                serializerRegistry.build(FileCollectionSnapshot.class),
-                new RandomLongIdGenerator()),
-            stringInterner);
+                serializerRegistry.build(FileCollectionSnapshot.class)),
+            stringInterner,
+            fileContentHashAlgorithm);
 
         return new ShortCircuitTaskArtifactStateRepository(
             startParameter,
@@ -179,29 +238,80 @@ public class TaskExecutionServices {
                 outputFilesSnapshotter,
                 fileCollectionSnapshotterRegistry,
                 fileCollectionFactory,
-                classLoaderHierarchyHasher
+                classLoaderHierarchyHasher,
+                speculativeInputFilesSnapshotter
             )
         );
     }
 
-    TaskPlanExecutor createTaskExecutorFactory(StartParameter startParameter, ExecutorFactory executorFactory, BuildOperationWorkerRegistry buildOperationWorkerRegistry) {
+    TaskOutputCacheProber createTaskOutputCacheProber(GradleInternal gradle, StartParameter startParameter, TaskArtifactStateRepository repository, ExecutorFactory executorFactory) {
+        return new TaskOutputCacheProber(gradle.getTaskCaching(), startParameter, repository, executorFactory);
+    }
+
+    TaskPlanExecutor createTaskExecutorFactory(StartParameter startParameter, ExecutorFactory executorFactory, BuildOperationWorkerRegistry buildOperationWorkerRegistry, SpeculativeInputFilesSnapshotter speculativeInputFilesSnapshotter, final ServiceRegistry serviceRegistry) {
         int parallelThreads = startParameter.isParallelProjectExecutionEnabled() ? startParameter.getMaxWorkerCount() : 1;
-        return new TaskPlanExecutorFactory(parallelThreads, executorFactory, buildOperationWorkerRegistry).create();
+        TaskPlanExecutor taskPlanExecutor = new TaskPlanExecutorFactory(parallelThreads, executorFactory, buildOperationWorkerRegistry).create();
+        // Only parallel workers can be idle while tasks wait for their dependencies
+        if (parallelThreads > 1 && Boolean.getBoolean(SpeculativeSnapshottingTaskPlanExecutor.TOGGLE)) {
+            taskPlanExecutor = new SpeculativeSnapshottingTaskPlanExecutor(speculativeInputFilesSnapshotter, taskPlanExecutor);
+        }
+        if (parallelThreads > 1 && Boolean.getBoolean(CriticalPathTaskPlanExecutor.TOGGLE)) {
+            taskPlanExecutor = new CriticalPathTaskPlanExecutor(new Factory<TaskExecutionTimeRepository>() {
+                @Override
+                public TaskExecutionTimeRepository create() {
+                    // Kept apart from the execution times recorded for task output caching, which only cover running the task's actions
+                    return new CacheBackedTaskExecutionTimeRepository(serviceRegistry.get(TaskHistoryStore.class), "taskWorkerTimes");
+                }
+            }, taskPlanExecutor);
+        }
+        if (startParameter.isTaskOutputCacheEnabled() && Boolean.getBoolean(CacheProbingTaskPlanExecutor.TOGGLE)) {
+            return new CacheProbingTaskPlanExecutor(new Factory<TaskOutputCacheProber>() {
+                @Override
+                public TaskOutputCacheProber create() {
+                    return serviceRegistry.get(TaskOutputCacheProber.class);
+                }
+            }, taskPlanExecutor);
+        }
+        return taskPlanExecutor;
     }
 
-    BuildOperationProcessor createBuildOperationProcessor(StartParameter startParameter, ExecutorFactory executorFactory) {
-        return new DefaultBuildOperationProcessor(new DefaultBuildOperationQueueFactory(), executorFactory, startParameter.getMaxWorkerCount());
+    BuildOperationProcessor createBuildOperationProcessor(StartParameter startParameter, ExecutorFactory executorFactory, BuildOperationWorkerRegistry buildOperationWorkerRegistry) {
+        return new DefaultBuildOperationProcessor(new DefaultBuildOperationQueueFactory(), executorFactory, buildOperationWorkerRegistry, startParameter.getMaxWorkerCount());
     }
 
     BuildOperationWorkerRegistry createBuildOperationWorkerRegistry(StartParameter startParameter) {
         return new DefaultBuildOperationWorkerRegistry(startParameter.getMaxWorkerCount());
     }
 
-    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem) {
+    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, ExecutorFactory executorFactory, GradleInternal gradle) {
+        TaskCachingInternal taskCaching = gradle.getTaskCaching();
+        // A content addressed cache compresses the contents it stores itself
+        TaskOutputCompression compression = taskCaching.isContentAddressed() ? TaskOutputCompression.STORE : taskCaching.getCompression();
         return new OutputPreparingTaskOutputPacker(
-            new GZipTaskOutputPacker(
-                new TarTaskOutputPacker(fileSystem)
+            new CompressingTaskOutputPacker(
+                new TarTaskOutputPacker(fileSystem, executorFactory),
+                compression
             )
         );
     }
+
+    TaskOutputStorer createTaskOutputStorer(GradleInternal gradle, StartParameter startParameter, ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider, ListenerManager listenerManager) {
+        TaskCachingInternal taskCaching = gradle.getTaskCaching();
+        final TaskOutputStorer storer = new TaskOutputStorer(
+            taskCaching.isAsyncPush(),
+            executorFactory,
+            startParameter.getMaxWorkerCount(),
+            taskCaching.getAsyncPushTimeoutSeconds(),
+            temporaryFileProvider,
+            listenerManager.getBroadcaster(TaskOutputCacheStoreListener.class)
+        );
+        // Wait for pending pushes when the build finishes, as the build's logging is stopped before its services
+        gradle.addBuildListener(new BuildAdapter() {
+            @Override
+            public void buildFinished(BuildResult result) {
+                storer.stop();
+            }
+        });
+        return storer;
+    }
 }
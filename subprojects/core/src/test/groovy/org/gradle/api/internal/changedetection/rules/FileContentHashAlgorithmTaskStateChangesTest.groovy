@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.rules
+
+import org.gradle.api.internal.changedetection.state.TaskExecution
+import spock.lang.Specification
+
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MD5
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MURMUR3_128
+
+class FileContentHashAlgorithmTaskStateChangesTest extends Specification {
+    def "up-to-date when algorithm is the same"() {
+        def previous = Stub(TaskExecution) {
+            getFileContentHashAlgorithm() >> MD5
+        }
+        def current = Stub(TaskExecution) {
+            getFileContentHashAlgorithm() >> MD5
+        }
+
+        expect:
+        collectChanges(new FileContentHashAlgorithmTaskStateChanges(previous, current)).empty
+    }
+
+    def "not up-to-date when algorithm has changed"() {
+        def previous = Stub(TaskExecution) {
+            getFileContentHashAlgorithm() >> MD5
+        }
+        def current = Stub(TaskExecution) {
+            getFileContentHashAlgorithm() >> MURMUR3_128
+        }
+
+        expect:
+        collectChanges(new FileContentHashAlgorithmTaskStateChanges(previous, current)) == ["File content hash algorithm has changed from MD5 to MURMUR3_128."]
+    }
+
+    List<String> collectChanges(FileContentHashAlgorithmTaskStateChanges stateChanges) {
+        List<DescriptiveChange> changes = []
+        stateChanges.addAllChanges(changes)
+        return changes*.message
+    }
+}
@@ -23,6 +23,8 @@ import org.gradle.api.internal.changedetection.rules.FileChange
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.hash.DefaultFileHasher
+import org.gradle.internal.operations.BuildOperationProcessor
+import org.gradle.internal.operations.BuildOperationWorkerRegistry
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.ChangeListener
@@ -34,7 +36,8 @@ import static org.gradle.api.internal.changedetection.state.TaskFilePropertySnap
 
 public class AbstractFileCollectionSnapshotterTest extends Specification {
     def stringInterner = new StringInterner()
-    def snapshotter = new AbstractFileCollectionSnapshotter(new DefaultFileHasher(), stringInterner, TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory()) {
+    def directoryTreeSnapshotCache = new DirectoryTreeSnapshotCache(stringInterner, TestFiles.fileSystem())
+    def snapshotter = new AbstractFileCollectionSnapshotter(new DefaultFileHasher(), stringInterner, TestFiles.directoryFileTreeFactory(), directoryTreeSnapshotCache, new ParallelFileHasher(Stub(BuildOperationProcessor), Stub(BuildOperationWorkerRegistry))) {
         @Override
         Class<? extends FileCollectionSnapshotter> getRegisteredType() {
             FileCollectionSnapshotter
@@ -182,6 +185,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         FileCollectionSnapshot snapshot = snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE)
         file.delete()
         file.createDir()
+        directoryTreeSnapshotCache.invalidate([file])
         changes(snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE), snapshot, listener)
 
         then:
@@ -195,6 +199,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         when:
         FileCollectionSnapshot snapshot = snapshotter.snapshot(files(file), UNORDERED, ABSOLUTE)
         file.write('new content')
+        directoryTreeSnapshotCache.invalidate([file])
         changes(snapshotter.snapshot(files(file), UNORDERED, ABSOLUTE), snapshot, listener)
 
         then:
@@ -223,6 +228,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         FileCollectionSnapshot snapshot = snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE)
         dir.deleteDir()
         dir.createFile()
+        directoryTreeSnapshotCache.invalidate([dir])
         changes(snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE), snapshot, listener)
 
         then:
@@ -249,6 +255,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         when:
         FileCollectionSnapshot snapshot = snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE)
         file.createFile()
+        directoryTreeSnapshotCache.invalidate([file])
         changes(snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE), snapshot, listener)
 
         then:
@@ -263,6 +270,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         when:
         FileCollectionSnapshot snapshot = snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE)
         file.delete()
+        directoryTreeSnapshotCache.invalidate([file])
         changes(snapshotter.snapshot(fileCollection, UNORDERED, ABSOLUTE), snapshot, listener)
 
         then:
@@ -314,7 +322,7 @@ public class AbstractFileCollectionSnapshotterTest extends Specification {
         0 * listener._
 
         when:
-        snapshotter.beforeTaskOutputsGenerated()
+        directoryTreeSnapshotCache.invalidateAll()
 
         def snapshot3 = snapshotter.snapshot(files(dir, file, missing), UNORDERED, ABSOLUTE)
         changes(snapshot3, snapshot, listener)
@@ -14,34 +14,57 @@
  * limitations under the License.
  */
 package org.gradle.api.internal.changedetection.state
+package org.gradle.api.internal.changedetection.state
 
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.cache.StringInterner
 import org.gradle.cache.PersistentIndexedCache
-import org.gradle.internal.id.IdGenerator
-import org.gradle.internal.serialize.Serializer
 import spock.lang.Specification
 
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.UNORDERED
+
 class CacheBackedFileSnapshotRepositoryTest extends Specification {
     final TaskHistoryStore cacheAccess = Mock()
     final PersistentIndexedCache<Object, Object> indexedCache = Mock()
-    final IdGenerator<Long> idGenerator = Mock()
-    final Serializer<FileCollectionSnapshot> serializer = Mock()
+    final PersistentIndexedCache<Object, Object> referencesCache = Mock()
+    final serializer = new DefaultFileCollectionSnapshot.SerializerImpl(new StringInterner())
     FileSnapshotRepository repository
 
     def setup() {
         1 * cacheAccess.createCache("fileSnapshots", _, _) >> indexedCache
-        repository = new CacheBackedFileSnapshotRepository(cacheAccess, serializer, idGenerator)
+        1 * cacheAccess.createCache("fileSnapshotReferences", _, _) >> referencesCache
+        repository = new CacheBackedFileSnapshotRepository(cacheAccess, serializer)
     }
 
-    def "assigns an id when a snapshot is added"() {
-        FileCollectionSnapshot snapshot = Mock()
+    def "stores a snapshot that has not been stored yet"() {
+        def snapshot = snapshot("/file", 1)
+
+        when:
+        repository.add(snapshot)
+
+        then:
+        1 * referencesCache.get(_) >> null
+        1 * indexedCache.put(_, snapshot)
+        1 * referencesCache.put(_, 1L)
+        0 * _._
+    }
+
+    def "derives the same id from the same content"() {
+        expect:
+        repository.add(snapshot("/file", 1)) == repository.add(snapshot("/file", 1))
+        repository.add(snapshot("/file", 1)) != repository.add(snapshot("/file", 2))
+        repository.add(snapshot("/file", 1)) != repository.add(snapshot("/other", 1))
+    }
+
+    def "references a snapshot that has already been stored"() {
+        def snapshot = snapshot("/file", 1)
 
         when:
-        def id = repository.add(snapshot)
+        repository.add(snapshot)
 
         then:
-        id == 15
-        1 * idGenerator.generateId() >> 15L
-        1 * indexedCache.put(15, snapshot)
+        1 * referencesCache.get(_) >> 2L
+        1 * referencesCache.put(_, 3L)
         0 * _._
     }
 
@@ -57,12 +80,26 @@ class CacheBackedFileSnapshotRepositoryTest extends Specification {
         0 * _._
     }
 
-    def "can delete a snapshot by id"() {
+    def "keeps a snapshot until its last reference is removed"() {
+        when:
+        repository.remove(4)
+
+        then:
+        1 * referencesCache.get(4) >> 2L
+        1 * referencesCache.put(4, 1L)
+        0 * _._
+
         when:
         repository.remove(4)
 
         then:
+        1 * referencesCache.get(4) >> 1L
         1 * indexedCache.remove(4)
+        1 * referencesCache.remove(4)
         0 * _._
     }
+
+    private static FileCollectionSnapshot snapshot(String path, int hash) {
+        new DefaultFileCollectionSnapshot([(path): new NonNormalizedFileSnapshot(path, new FileHashSnapshot(HashCode.fromInt(hash)))], UNORDERED, true)
+    }
 }
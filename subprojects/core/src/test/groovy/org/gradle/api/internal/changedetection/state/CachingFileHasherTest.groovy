@@ -27,6 +27,9 @@ import org.junit.Rule
 import spock.lang.Specification
 import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo
 
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MD5
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MURMUR3_128
+
 class CachingFileHasherTest extends Specification {
     @Rule
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
@@ -69,7 +72,7 @@ class CachingFileHasherTest extends Specification {
         result == hash
 
         and:
-        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, 1024, file.lastModified())
+        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, 1024, file.lastModified(), MD5)
         1 * target.hash(file) >> hash
         1 * cache.put(file.getAbsolutePath(), _) >> { String key, FileInfo fileInfo ->
             fileInfo.hash == hash
@@ -87,7 +90,7 @@ class CachingFileHasherTest extends Specification {
         result == hash
 
         and:
-        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), 124)
+        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), 124, MD5)
         1 * target.hash(file) >> hash
         1 * cache.put(file.getAbsolutePath(), _) >> { String key, FileInfo fileInfo ->
             fileInfo.hash == hash
@@ -105,7 +108,23 @@ class CachingFileHasherTest extends Specification {
         result == hash
 
         and:
-        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), file.lastModified())
+        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), file.lastModified(), MD5)
+        0 * _._
+    }
+
+    def hashesFileWhenCachedHashUsesAnotherAlgorithm() {
+        when:
+        def result = hasher.hash(file)
+
+        then:
+        result == hash
+
+        and:
+        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), file.lastModified(), MURMUR3_128)
+        1 * target.hash(file) >> hash
+        1 * cache.put(file.getAbsolutePath(), _) >> { String key, FileInfo fileInfo ->
+            fileInfo.algorithm == MD5
+        }
         0 * _._
     }
 
@@ -120,7 +139,7 @@ class CachingFileHasherTest extends Specification {
 
         and:
         1 * resource.file >> file
-        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), file.lastModified())
+        1 * cache.get(file.getAbsolutePath()) >> new FileInfo(hash, file.length(), file.lastModified(), MD5)
         0 * _._
     }
 
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.base.Charsets
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
+import spock.lang.Specification
+
+class CompactNormalizedFileSnapshotMapTest extends Specification {
+    def hash1 = Hashing.md5().hashString("1", Charsets.UTF_8)
+    def hash2 = Hashing.md5().hashString("2", Charsets.UTF_8)
+
+    def "has the same entries in the same order as the copied map"() {
+        def snapshots = [
+            "/dir/b": new NonNormalizedFileSnapshot("/dir/b", new FileHashSnapshot(hash1, 1234)),
+            "/dir/a": new DefaultNormalizedFileSnapshot("a", DirSnapshot.getInstance()),
+            "/dir/c": new IndexedNormalizedFileSnapshot("/dir/c", 5, MissingFileSnapshot.getInstance()),
+            "/dir/d": new IgnoredPathFileSnapshot(new FileHashSnapshot(hash2))
+        ]
+
+        when:
+        def copy = CompactNormalizedFileSnapshotMap.copyOf(snapshots)
+
+        then:
+        copy instanceof CompactNormalizedFileSnapshotMap
+        copy == snapshots
+        copy.keySet() as List == ["/dir/b", "/dir/a", "/dir/c", "/dir/d"]
+        copy.values() as List == snapshots.values() as List
+        copy["/dir/c"].normalizedPath == "c"
+        copy["/dir/b"].snapshot.lastModified == 1234
+        copy["/dir/b"].snapshot.isContentAndMetadataUpToDate(snapshots["/dir/b"].snapshot)
+    }
+
+    def "looks up entries by path"() {
+        def snapshots = [:]
+        (1..100).reverse().each { i ->
+            snapshots["/file" + i] = new NonNormalizedFileSnapshot("/file" + i, new FileHashSnapshot(HashCode.fromInt(i)))
+        }
+
+        when:
+        def copy = CompactNormalizedFileSnapshotMap.copyOf(snapshots)
+
+        then:
+        (1..100).every { i -> copy.containsKey("/file" + i) && copy["/file" + i].snapshot.hash == HashCode.fromInt(i) }
+        !copy.containsKey("/file0")
+        copy["/file101"] == null
+        copy.get(1) == null
+    }
+
+    def "keeps snapshots that cannot be represented compactly"() {
+        def snapshots = [
+            "/a": new NonNormalizedFileSnapshot("/a", new FileHashSnapshot(hash1)),
+            "/b": new NonNormalizedFileSnapshot("/b", new FileHashSnapshot(HashCode.fromInt(1)))
+        ]
+
+        expect:
+        CompactNormalizedFileSnapshotMap.copyOf(snapshots).is(snapshots)
+        CompactNormalizedFileSnapshotMap.copyOf([:]).isEmpty()
+    }
+}
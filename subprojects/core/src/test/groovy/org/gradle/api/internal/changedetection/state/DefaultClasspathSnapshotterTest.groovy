@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.changedetection.state
 
+import com.google.common.hash.HashCode
 import org.gradle.api.file.FileVisitor
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.DefaultFileVisitDetails
@@ -24,6 +25,9 @@ import org.gradle.api.internal.file.collections.DirectoryFileTree
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory
 import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.hash.FileHasher
+import org.gradle.api.tasks.util.PatternSet
+import org.gradle.internal.operations.BuildOperationProcessor
+import org.gradle.internal.operations.BuildOperationWorkerRegistry
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -47,7 +51,9 @@ class DefaultClasspathSnapshotterTest extends Specification {
     }
     def fileSystem = TestFiles.fileSystem()
     def directoryFileTreeFactory = Mock(DirectoryFileTreeFactory)
-    def snapshotter = new DefaultClasspathSnapshotter(hasher, stringInterner, fileSystem, directoryFileTreeFactory)
+    def directoryTreeSnapshotCache = new DirectoryTreeSnapshotCache(stringInterner, fileSystem)
+    def jarContentHasher = Mock(JarContentHasher)
+    def snapshotter = new DefaultClasspathSnapshotter(hasher, stringInterner, directoryFileTreeFactory, directoryTreeSnapshotCache, new ParallelFileHasher(Stub(BuildOperationProcessor), Stub(BuildOperationWorkerRegistry)), jarContentHasher)
 
     def "root elements are unsorted, non-root elements are sorted amongst themselves"() {
         given:
@@ -56,7 +62,10 @@ class DefaultClasspathSnapshotterTest extends Specification {
         def subFile1 = rootDir.file("file1.txt") << "file1"
         def subFile2 = rootDir.file("file2.txt") << "file2"
         def rootFile2 = tmpDir.file("root2.txt") << "root2"
-        def rootDirTree = Mock(DirectoryFileTree)
+        def rootDirTree = Mock(DirectoryFileTree) {
+            getDir() >> rootDir
+            getPatterns() >> new PatternSet()
+        }
 
         when:
         def snapshotInOriginalOrder = snapshotter.snapshot(files(rootFile1, rootDir, rootFile2), ORDERED, ClasspathSnapshotNormalizationStrategy.INSTANCE)
@@ -69,6 +78,7 @@ class DefaultClasspathSnapshotterTest extends Specification {
         }
 
         when:
+        directoryTreeSnapshotCache.invalidateAll()
         def snapshotInReverseOrder = snapshotter.snapshot(files(rootFile2, rootFile1, rootDir), ORDERED, ClasspathSnapshotNormalizationStrategy.INSTANCE)
         then:
         snapshotInReverseOrder.elements == [rootFile2, rootFile1, rootDir, subFile1, subFile2]
@@ -79,6 +89,24 @@ class DefaultClasspathSnapshotterTest extends Specification {
         }
     }
 
+    def "uses the hash of the entries of root jars"() {
+        given:
+        def rootJar = tmpDir.file("root.jar") << "root"
+        def rootFile = tmpDir.file("root.txt") << "root"
+        def contentHash = HashCode.fromInt(1)
+        def entriesHash = HashCode.fromInt(2)
+        hasher.hash(_) >> contentHash
+
+        when:
+        def snapshot = snapshotter.snapshot(files(rootJar, rootFile), ORDERED, ClasspathSnapshotNormalizationStrategy.INSTANCE)
+
+        then:
+        1 * jarContentHasher.hash(rootJar, contentHash) >> entriesHash
+        0 * jarContentHasher._
+        snapshot.snapshots[rootJar.absolutePath].snapshot.hash == entriesHash
+        snapshot.snapshots[rootFile.absolutePath].snapshot.hash == contentHash
+    }
+
     def files(File... files) {
         return new SimpleFileCollection(files)
     }
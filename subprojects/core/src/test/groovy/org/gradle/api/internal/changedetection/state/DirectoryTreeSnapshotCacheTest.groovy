@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.internal.file.collections.SimpleFileCollection
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DirectoryTreeSnapshotCacheTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def cache = new DirectoryTreeSnapshotCache(new StringInterner(), TestFiles.fileSystem())
+    def directoryFileTreeFactory = TestFiles.directoryFileTreeFactory()
+
+    def "reuses the elements of a directory tree until it is invalidated"() {
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("a.txt")
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        dir.createFile("b.txt")
+
+        then:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir)).is(elements)
+
+        when:
+        cache.invalidate([dir.file("b.txt")])
+
+        then:
+        paths(cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))) == [dir.file("a.txt"), dir.file("b.txt")].collect { it.absolutePath } as Set
+    }
+
+    def "keeps the elements of trees outside of the invalidated paths"() {
+        def sources = tmpDir.createDir("src")
+        sources.createFile("Source.java")
+        def classes = tmpDir.createDir("build/classes")
+        classes.createFile("Source.class")
+        def resources = tmpDir.createDir("build/resources")
+        resources.createFile("resource.txt")
+
+        when:
+        def sourceElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(sources))
+        def classesElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(classes))
+        def resourcesElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(resources))
+        cache.invalidate([classes])
+
+        then:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(sources)).is(sourceElements)
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(resources)).is(resourcesElements)
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(classes)).is(classesElements)
+    }
+
+    def "invalidates trees containing and contained in the invalidated paths"() {
+        def build = tmpDir.createDir("build")
+        def classes = build.createDir("classes")
+        def nested = classes.createDir("org")
+        nested.createFile("Source.class")
+
+        when:
+        def buildElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(build))
+        def nestedElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(nested))
+        cache.invalidate([classes])
+
+        then:
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(build)).is(buildElements)
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(nested)).is(nestedElements)
+    }
+
+    def "does not invalidate siblings sharing a path prefix"() {
+        def classes = tmpDir.createDir("classes")
+        def otherClasses = tmpDir.createDir("classes-other")
+        otherClasses.createFile("Other.class")
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(otherClasses))
+        cache.invalidate([classes])
+
+        then:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(otherClasses)).is(elements)
+    }
+
+    def "caches root file details until invalidated"() {
+        def file = tmpDir.file("file.txt")
+
+        when:
+        def details = cache.getRootFileDetails(file)
+        file.createFile()
+
+        then:
+        details.type == FileDetails.FileType.Missing
+        cache.getRootFileDetails(file).is(details)
+
+        when:
+        cache.invalidate([file])
+
+        then:
+        cache.getRootFileDetails(file).type == FileDetails.FileType.RegularFile
+    }
+
+    def "invalidates only the declared outputs of a task"() {
+        def input = tmpDir.createDir("input")
+        input.createFile("input.txt")
+        def output = tmpDir.createDir("output")
+        output.createFile("output.txt")
+        def outputs = Stub(TaskOutputsInternal) {
+            hasDeclaredOutputs() >> true
+            getFiles() >> new SimpleFileCollection(output)
+        }
+        def task = Stub(TaskInternal) {
+            getOutputs() >> outputs
+        }
+
+        when:
+        def inputElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(input))
+        def outputElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(output))
+        cache.beforeTaskOutputsGenerated(task)
+        cache.afterTaskOutputsGenerated(task)
+
+        then:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(input)).is(inputElements)
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(output)).is(outputElements)
+    }
+
+    def "invalidates everything for a task without declared outputs"() {
+        def input = tmpDir.createDir("input")
+        input.createFile("input.txt")
+        def outputs = Stub(TaskOutputsInternal) {
+            hasDeclaredOutputs() >> false
+        }
+        def task = Stub(TaskInternal) {
+            getOutputs() >> outputs
+        }
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(input))
+        cache.afterTaskOutputsGenerated(task)
+
+        then:
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(input)).is(elements)
+    }
+
+    private static Set<String> paths(List<DefaultFileDetails> elements) {
+        elements.collect { it.path } as Set
+    }
+}
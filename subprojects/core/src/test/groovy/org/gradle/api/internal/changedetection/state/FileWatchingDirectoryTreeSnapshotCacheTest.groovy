@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.Action
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherListener
+import org.gradle.internal.os.OperatingSystem
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class FileWatchingDirectoryTreeSnapshotCacheTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def watcher = Mock(FileWatcher)
+    def fileWatcherFactory = Mock(FileWatcherFactory)
+    def cache = new FileWatchingDirectoryTreeSnapshotCache(new StringInterner(), TestFiles.fileSystem(), fileWatcherFactory)
+    def directoryFileTreeFactory = TestFiles.directoryFileTreeFactory()
+    FileWatcherListener listener
+    Action<? super Throwable> onError
+
+    def setup() {
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.onError = onError
+            this.listener = listener
+            watcher
+        }
+    }
+
+    def "watches a root before it is visited and only once"() {
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("file.txt")
+
+        when:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+
+        then:
+        1 * watcher.watch({ it.roots as List == [dir] })
+
+        when:
+        cache.invalidateAll()
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+
+        then:
+        0 * watcher.watch(_)
+    }
+
+    def "does not keep the details of a root that cannot be watched"() {
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("file.txt")
+        def file = tmpDir.createFile("file.txt")
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        def details = cache.getRootFileDetails(file)
+
+        then:
+        2 * watcher.watch(_) >> { throw new IOException("too many watches") }
+
+        when:
+        def newElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        def newDetails = cache.getRootFileDetails(file)
+
+        then:
+        2 * watcher.watch(_)
+        !newElements.is(elements)
+        !newDetails.is(details)
+
+        when:
+        def retainedElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+
+        then:
+        0 * watcher.watch(_)
+        retainedElements.is(newElements)
+    }
+
+    def "is not supported where the watch service polls for changes"() {
+        expect:
+        !FileWatchingDirectoryTreeSnapshotCache.isSupported(OperatingSystem.MAC_OS)
+        FileWatchingDirectoryTreeSnapshotCache.isSupported(OperatingSystem.LINUX)
+        FileWatchingDirectoryTreeSnapshotCache.isSupported(OperatingSystem.WINDOWS)
+    }
+
+    def "discards only the trees containing a changed file"() {
+        def changed = tmpDir.createDir("changed")
+        def file = changed.createFile("file.txt")
+        def unchanged = tmpDir.createDir("unchanged")
+        unchanged.createFile("file.txt")
+
+        when:
+        def changedElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(changed))
+        def unchangedElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(unchanged))
+        listener.onChange(watcher, FileWatcherEvent.modify(file))
+
+        then:
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(changed)).is(changedElements)
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(unchanged)).is(unchangedElements)
+    }
+
+    def "watches a root again after a change beneath it"() {
+        def dir = tmpDir.createDir("dir")
+        def file = dir.createFile("file.txt")
+
+        when:
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        listener.onChange(watcher, FileWatcherEvent.delete(file))
+        cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+
+        then:
+        2 * watcher.watch(_)
+    }
+
+    def "discards everything when events have been lost"() {
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("file.txt")
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        listener.onChange(watcher, FileWatcherEvent.undefined())
+
+        then:
+        !cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir)).is(elements)
+    }
+
+    def "discards everything and starts a new watcher when watching fails"() {
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("file.txt")
+
+        when:
+        def elements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        onError.execute(new IOException("broken"))
+        def newElements = cache.getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+
+        then:
+        !newElements.is(elements)
+        2 * watcher.watch(_)
+    }
+
+    def "stops the watcher when stopped"() {
+        when:
+        cache.getRootFileDetails(tmpDir.file("missing"))
+        new RetainedFileSnapshots(cache).stop()
+
+        then:
+        1 * watcher.stop()
+    }
+}
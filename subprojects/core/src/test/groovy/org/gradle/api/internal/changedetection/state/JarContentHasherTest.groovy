@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.hash.DefaultFileHasher
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MD5
+
+class JarContentHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cache = Mock(PersistentIndexedCache)
+    def cacheAccess = Mock(TaskHistoryStore)
+    def fileHasher = new DefaultFileHasher(MD5)
+    JarContentHasher hasher
+
+    def setup() {
+        1 * cacheAccess.createCache("jarContentHashes", _, _) >> cache
+        hasher = new JarContentHasher(MD5, cacheAccess)
+    }
+
+    def "ignores timestamps and order of entries"() {
+        def jar = jar("first.jar", 1480000000000L, ["a/A.class": "a", "b/B.class": "b"])
+        def rebuiltJar = jar("rebuilt.jar", 1480000100000L, ["b/B.class": "b", "a/A.class": "a"])
+
+        expect:
+        fileHasher.hash(jar) != fileHasher.hash(rebuiltJar)
+        hasher.hash(jar, fileHasher.hash(jar)) == hasher.hash(rebuiltJar, fileHasher.hash(rebuiltJar))
+    }
+
+    def "detects changed entries"() {
+        def jar = jar("first.jar", 1480000000000L, ["a/A.class": "a", "b/B.class": "b"])
+        def changedJar = jar("changed.jar", 1480000000000L, changedEntries)
+
+        expect:
+        hasher.hash(jar, fileHasher.hash(jar)) != hasher.hash(changedJar, fileHasher.hash(changedJar))
+
+        where:
+        changedEntries << [
+            ["a/A.class": "a", "b/B.class": "changed"],
+            ["a/A.class": "a", "b/C.class": "b"],
+            ["a/A.class": "a", "b/B.class": "b", "c/C.class": "c"],
+            ["a/A.class": "a"]
+        ]
+    }
+
+    def "hashes entries of a jar once and caches the result by its content hash"() {
+        def jar = jar("first.jar", 1480000000000L, ["a/A.class": "a"])
+        def contentHash = fileHasher.hash(jar)
+        def entriesHash = HashCode.fromInt(123)
+
+        when:
+        def result = hasher.hash(jar, contentHash)
+
+        then:
+        1 * cache.get(contentHash.toString()) >> null
+        1 * cache.put(contentHash.toString(), { it != contentHash })
+        0 * _
+
+        when:
+        result = hasher.hash(jar, contentHash)
+
+        then:
+        1 * cache.get(contentHash.toString()) >> entriesHash
+        0 * _
+        result == entriesHash
+    }
+
+    def "uses the content hash of a file that is not a jar"() {
+        def file = tmpDir.file("broken.jar") << "not a jar"
+        def contentHash = fileHasher.hash(file)
+
+        when:
+        def result = hasher.hash(file, contentHash)
+
+        then:
+        1 * cache.get(contentHash.toString()) >> null
+        0 * _
+        result == contentHash
+    }
+
+    private TestFile jar(String name, long timestamp, Map<String, String> entries) {
+        def jar = tmpDir.file(name)
+        def output = new ZipOutputStream(new FileOutputStream(jar))
+        try {
+            entries.each { String entryName, String content ->
+                def entry = new ZipEntry(entryName)
+                entry.time = timestamp
+                output.putNextEntry(entry)
+                output.write(content.bytes)
+                output.closeEntry()
+            }
+        } finally {
+            output.close()
+        }
+        jar
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.hash.HashCode
+import org.gradle.api.file.FileTreeElement
+import org.gradle.api.internal.hash.FileHasher
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.DefaultBuildOperationProcessor
+import org.gradle.internal.operations.DefaultBuildOperationQueueFactory
+import org.gradle.internal.operations.DefaultBuildOperationWorkerRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArraySet
+
+import static org.gradle.api.internal.changedetection.state.FileDetails.FileType.RegularFile
+
+class ParallelFileHasherTest extends Specification {
+    def executorFactory = new DefaultExecutorFactory()
+    def processor = new DefaultBuildOperationProcessor(new DefaultBuildOperationQueueFactory(), executorFactory, 2)
+    def registry = new DefaultBuildOperationWorkerRegistry(2)
+    def parallelFileHasher = new ParallelFileHasher(processor, registry)
+    def hashingThreads = new CopyOnWriteArraySet<Thread>()
+    def hasher = Stub(FileHasher) {
+        hash(_ as FileTreeElement) >> { FileTreeElement element ->
+            hashingThreads << Thread.currentThread()
+            HashCode.fromInt(element.name.hashCode())
+        }
+    }
+
+    def cleanup() {
+        processor.stop()
+        registry.stop()
+        executorFactory.stop()
+    }
+
+    def "hashes many files on other threads while holding a lease"() {
+        def files = files(250)
+
+        when:
+        def completion = registry.operationStart()
+        try {
+            parallelFileHasher.hashContents(files, hasher)
+        } finally {
+            completion.operationFinish()
+        }
+
+        then:
+        files.every { it.hasContentHash() }
+        files.every { it.getContentHash(hasher) == HashCode.fromInt(it.details.name.hashCode()) }
+        !hashingThreads.contains(Thread.currentThread())
+    }
+
+    def "leaves few files to the calling thread"() {
+        def files = files(10)
+
+        when:
+        def completion = registry.operationStart()
+        try {
+            parallelFileHasher.hashContents(files, hasher)
+        } finally {
+            completion.operationFinish()
+        }
+
+        then:
+        files.every { !it.hasContentHash() }
+    }
+
+    def "leaves files to the calling thread when it does not hold a lease"() {
+        def files = files(250)
+
+        when:
+        parallelFileHasher.hashContents(files, hasher)
+
+        then:
+        files.every { !it.hasContentHash() }
+    }
+
+    def "leaves files that cannot be hashed to the calling thread"() {
+        def files = files(250)
+        def failingHasher = Stub(FileHasher) {
+            hash(_ as FileTreeElement) >> { throw new RuntimeException("broken") }
+        }
+
+        when:
+        def completion = registry.operationStart()
+        try {
+            parallelFileHasher.hashContents(files, failingHasher)
+        } finally {
+            completion.operationFinish()
+        }
+
+        then:
+        files.every { !it.hasContentHash() }
+    }
+
+    private List<DefaultFileDetails> files(int count) {
+        (1..count).collect { int i ->
+            def element = Stub(FileTreeElement) {
+                getName() >> "file" + i
+            }
+            new DefaultFileDetails("/file" + i, RegularFile, element)
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.file.FileCollection
+import org.gradle.api.internal.TaskInputsInternal
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.internal.file.collections.FileTreeAdapter
+import org.gradle.api.internal.file.collections.SimpleFileCollection
+import org.gradle.api.internal.hash.DefaultFileHasher
+import org.gradle.api.internal.tasks.properties.TaskInputFilePropertySpec
+import org.gradle.internal.operations.BuildOperationProcessor
+import org.gradle.internal.operations.BuildOperationWorkerRegistry
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.UNORDERED
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertySnapshotNormalizationStrategy.ABSOLUTE
+
+class SpeculativeInputFilesSnapshotterTest extends Specification {
+    static final long ONE_HOUR_AGO = System.currentTimeMillis() - 3600000
+
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def fileCollectionSnapshotter = new DefaultGenericFileCollectionSnapshotter(new DefaultFileHasher(), new StringInterner(), TestFiles.directoryFileTreeFactory(), new DirectoryTreeSnapshotCache(new StringInterner(), TestFiles.fileSystem()), new ParallelFileHasher(Stub(BuildOperationProcessor), Stub(BuildOperationWorkerRegistry)))
+    def snapshotter = new SpeculativeInputFilesSnapshotter(new DefaultFileCollectionSnapshotterRegistry([fileCollectionSnapshotter]))
+    def inputs = Stub(TaskInputsInternal)
+    def task = Stub(TaskInternal) {
+        getInputs() >> inputs
+    }
+
+    def "reuses snapshot when files have not changed"() {
+        def file = oldFile("file.txt", "content")
+        def dir = oldDir("dir")
+        oldFile("dir/nested.txt", "nested")
+        touch(dir)
+        inputProperties(one: [file], two: [dir])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.keySet() == ["one", "two"] as Set
+        snapshots.two.files as Set == [dir.file("nested.txt")] as Set
+    }
+
+    def "snapshots are only used once"() {
+        inputProperties(one: [oldFile("file.txt", "content")])
+
+        when:
+        snapshotter.snapshotAhead(task)
+
+        then:
+        snapshotter.takeValidSnapshots(task).size() == 1
+        snapshotter.takeValidSnapshots(task).isEmpty()
+    }
+
+    def "discards snapshot of property whose file has changed"() {
+        def changed = oldFile("changed.txt", "content")
+        inputProperties(one: [changed], two: [oldFile("unchanged.txt", "content")])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        changed.text = "new content"
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.keySet() == ["two"] as Set
+    }
+
+    def "discards snapshot of property when file is added to directory"() {
+        def dir = oldDir("dir")
+        oldFile("dir/file.txt", "content")
+        touch(dir)
+        inputProperties(one: [dir])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        dir.file("added.txt").text = "added"
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.isEmpty()
+    }
+
+    def "discards snapshot of property when missing file is created"() {
+        def missing = tmpDir.file("missing.txt")
+        inputProperties(one: [missing])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        missing.text = "created"
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.isEmpty()
+    }
+
+    def "discards snapshot of property when missing directory tree root is created"() {
+        def root = tmpDir.file("missing")
+        inputProperties(one: tree(root))
+
+        when:
+        snapshotter.snapshotAhead(task)
+        root.createDir().file("generated.txt").text = "generated"
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.isEmpty()
+    }
+
+    def "discards snapshot of property when file is added to top level of directory tree"() {
+        def root = oldDir("root")
+        oldFile("root/file.txt", "content")
+        touch(root)
+        inputProperties(one: tree(root))
+
+        when:
+        snapshotter.snapshotAhead(task)
+        root.file("added.txt").text = "added"
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.isEmpty()
+    }
+
+    def "reuses snapshot of directory tree when nothing has changed"() {
+        def root = oldDir("root")
+        def sub = oldDir("root/sub")
+        oldFile("root/sub/file.txt", "content")
+        touch(sub)
+        touch(root)
+        inputProperties(one: tree(root))
+
+        when:
+        snapshotter.snapshotAhead(task)
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.keySet() == ["one"] as Set
+    }
+
+    def "does not snapshot properties with recently modified files"() {
+        inputProperties(one: [tmpDir.createFile("recent.txt")], two: [oldFile("old.txt", "content")])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        def snapshots = snapshotter.takeValidSnapshots(task)
+
+        then:
+        snapshots.keySet() == ["two"] as Set
+    }
+
+    def "discards unused snapshots when cleared"() {
+        inputProperties(one: [oldFile("file.txt", "content")])
+
+        when:
+        snapshotter.snapshotAhead(task)
+        snapshotter.clear()
+
+        then:
+        snapshotter.takeValidSnapshots(task).isEmpty()
+    }
+
+    private TestFile oldFile(String path, String text) {
+        def file = tmpDir.file(path)
+        file.text = text
+        touch(file)
+    }
+
+    private TestFile oldDir(String path) {
+        touch(tmpDir.createDir(path))
+    }
+
+    private static TestFile touch(TestFile file) {
+        assert file.setLastModified(ONE_HOUR_AGO)
+        file
+    }
+
+    private static FileCollection tree(File root) {
+        new FileTreeAdapter(TestFiles.directoryFileTreeFactory().create(root))
+    }
+
+    private void inputProperties(Map<String, Object> properties) {
+        def specs = new TreeSet<TaskInputFilePropertySpec>({ a, b -> a.propertyName <=> b.propertyName } as Comparator)
+        properties.each { name, files ->
+            specs << Stub(TaskInputFilePropertySpec) {
+                getPropertyName() >> name
+                getPropertyFiles() >> (files instanceof FileCollection ? files : new SimpleFileCollection(files as List<File>))
+                getSnapshotter() >> GenericFileCollectionSnapshotter
+                getCompareStrategy() >> UNORDERED
+                getSnapshotNormalizationStrategy() >> ABSOLUTE
+            }
+        }
+        inputs.getFileProperties() >> specs
+    }
+}
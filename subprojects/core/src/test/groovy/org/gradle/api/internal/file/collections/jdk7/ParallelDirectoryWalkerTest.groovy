@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.collections.jdk7
+
+import org.gradle.api.GradleException
+import org.gradle.api.file.FileTreeElement
+import org.gradle.api.file.FileVisitDetails
+import org.gradle.api.file.FileVisitor
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.internal.file.collections.DirectoryFileTree
+import org.gradle.api.tasks.util.PatternSet
+import org.gradle.internal.Factory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.ForkJoinPool
+
+@UsesNativeServices
+class ParallelDirectoryWalkerTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def pool = new ForkJoinPool(4)
+    def walker = new ParallelDirectoryWalker(TestFiles.fileSystem(), pool)
+
+    def cleanup() {
+        pool.shutdown()
+    }
+
+    def "visits files before subdirectories, sorted by name"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.createFile("b.txt")
+        rootDir.createFile("dir2/c.txt")
+        rootDir.createFile("dir1/b.txt")
+        rootDir.createFile("dir1/a.txt")
+        rootDir.createFile("a.txt")
+        rootDir.createDir("dir1/empty")
+
+        expect:
+        walk(rootDir, new PatternSet(), false)*.relativePath*.pathString == ["a.txt", "b.txt", "dir1", "dir1/a.txt", "dir1/b.txt", "dir1/empty", "dir2", "dir2/c.txt"]
+        walk(rootDir, new PatternSet(), true)*.relativePath*.pathString == ["a.txt", "b.txt", "dir1/a.txt", "dir1/b.txt", "dir1/empty", "dir1", "dir2/c.txt", "dir2"]
+    }
+
+    def "applies patterns to files and directories"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.createFile("a.txt")
+        rootDir.createFile("a.html")
+        rootDir.createFile("sub/b.txt")
+        rootDir.createFile("excluded/c.txt")
+        def patterns = new PatternSet()
+        patterns.include("**/*.txt")
+        patterns.exclude("excluded")
+
+        expect:
+        walk(rootDir, patterns, false).findAll { !it.directory }*.relativePath*.pathString == ["a.txt", "sub/b.txt"]
+    }
+
+    def "applies the spec on the visiting thread and does not list excluded directories"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.createFile("a.txt")
+        rootDir.createFile("sub/b.txt")
+        rootDir.createFile("excluded/c.txt")
+        def threads = [] as Set
+        def visitedPaths = []
+        def patterns = new PatternSet()
+        patterns.exclude { FileTreeElement element ->
+            threads << Thread.currentThread()
+            visitedPaths << element.relativePath.pathString
+            element.name == "excluded"
+        }
+
+        when:
+        def visited = walk(rootDir, patterns, false)
+
+        then:
+        visited*.relativePath*.pathString == ["a.txt", "sub", "sub/b.txt"]
+        threads == [Thread.currentThread()] as Set
+        !visitedPaths.contains("excluded/c.txt")
+    }
+
+    def "returns the same files and attributes as the JDK7 walker"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        (1..5).each { i ->
+            (1..5).each { j ->
+                rootDir.createFile("dir$i/sub$j/file.txt") << ("x" * j)
+            }
+        }
+
+        when:
+        def visited = walk(rootDir, new PatternSet(), false)
+        def visitedWithJdk7Walker = []
+        new DirectoryFileTree(rootDir, new PatternSet(), { new Jdk7DirectoryWalker(TestFiles.fileSystem()) } as Factory, TestFiles.fileSystem(), false)
+            .visit([visitFile: { visitedWithJdk7Walker << it }, visitDir: { visitedWithJdk7Walker << it }] as FileVisitor)
+
+        then:
+        visited.size() == 55
+        visited.collect { [it.file, it.directory, it.directory ? 0 : it.size, it.lastModified] } as Set ==
+            visitedWithJdk7Walker.collect { [it.file, it.directory, it.directory ? 0 : it.size, it.lastModified] } as Set
+    }
+
+    def "stops walking when the visitor asks to"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.createFile("a.txt")
+        rootDir.createFile("b.txt")
+        rootDir.createFile("dir/c.txt")
+        def visited = []
+        def fileTree = new DirectoryFileTree(rootDir, new PatternSet(), { walker } as Factory, TestFiles.fileSystem(), false)
+
+        when:
+        fileTree.visit([visitFile: { FileVisitDetails details ->
+            visited << details.relativePath.pathString
+            details.stopVisiting()
+        }, visitDir: { visited << it.relativePath.pathString }] as FileVisitor)
+
+        then:
+        visited == ["a.txt"]
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "skips links to a directory that is being walked"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.createFile("a/b.txt")
+        rootDir.file("a/loop").createLink(rootDir.file("a"))
+
+        expect:
+        walk(rootDir, new PatternSet(), false)*.relativePath*.pathString == ["a", "a/b.txt"]
+
+        cleanup:
+        rootDir.file("a/loop").delete()
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "missing symbolic link causes an exception when it is visited"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        def dir = rootDir.createDir("target")
+        def link = rootDir.file("source")
+        link.createLink(dir)
+        dir.deleteDir()
+
+        when:
+        walk(rootDir, new PatternSet(), false)
+
+        then:
+        GradleException e = thrown()
+        e.message.contains("Could not list contents of '${link.absolutePath}'.")
+
+        cleanup:
+        link.delete()
+    }
+
+    private List<FileVisitDetails> walk(File rootDir, PatternSet patterns, boolean postfix) {
+        def fileTree = new DirectoryFileTree(rootDir, patterns, { walker } as Factory, TestFiles.fileSystem(), postfix)
+        def visited = []
+        def visitClosure = { visited << it }
+        fileTree.visit([visitFile: visitClosure, visitDir: visitClosure] as FileVisitor)
+        visited
+    }
+}
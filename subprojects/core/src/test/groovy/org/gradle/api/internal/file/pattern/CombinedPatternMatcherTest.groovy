@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.pattern
+
+import org.apache.tools.ant.DirectoryScanner
+import org.gradle.api.file.RelativePath
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CombinedPatternMatcherTest extends Specification {
+    static final PATTERNS = [
+        "", "**", "a", "a/b", "a/**", "a/**/c", "**/b", "**/b/**", "**/**/c", "**/*.java", "**/.#*", "**/B/**",
+        "*/b", "a?/b", "**/a/b", "a/b/", "**/c/*.java", "x/**/b/**", "*"
+    ]
+    static final PATHS = [
+        [], ["a"], ["b"], ["A"], ["c"], ["a", "b"], ["a", "B"], ["a1", "b"], ["a", "b", "c"], ["x", "a", "b"], ["x", "y", "b", "z"],
+        ["Foo.java"], ["a", "Foo.java"], ["c", "Foo.java"], ["x", "c", "Foo.java"], [".#foo"], ["a", ".#foo"], ["b", "c", "d"]
+    ]
+
+    @Unroll
+    def "matches the same paths as each of its patterns - partialMatchDirs: #partialMatchDirs, caseSensitive: #caseSensitive"() {
+        expect:
+        PATTERNS.each { String pattern ->
+            assertSameMatches([pattern], partialMatchDirs, caseSensitive)
+        }
+        assertSameMatches(PATTERNS.findAll { it != "" && it != "**" && it != "*" }, partialMatchDirs, caseSensitive)
+        assertSameMatches(PATTERNS, partialMatchDirs, caseSensitive)
+        assertSameMatches(DirectoryScanner.defaultExcludes as List, partialMatchDirs, caseSensitive)
+
+        where:
+        partialMatchDirs | caseSensitive
+        true             | true
+        true             | false
+        false            | true
+        false            | false
+    }
+
+    def "matches names at any depth"() {
+        def matcher = PatternMatcherFactory.getPatternsMatcher(false, true, ["**/.git", "**/.git/**", "**/*~"])
+
+        expect:
+        matcher.isSatisfiedBy(file(".git"))
+        matcher.isSatisfiedBy(dir("a", ".git"))
+        matcher.isSatisfiedBy(file("a", ".git", "config"))
+        matcher.isSatisfiedBy(file("a", "b.txt~"))
+        !matcher.isSatisfiedBy(file("a", "b.txt"))
+        !matcher.isSatisfiedBy(file("a", ".gitignore"))
+    }
+
+    private static void assertSameMatches(List<String> patterns, boolean partialMatchDirs, boolean caseSensitive) {
+        def combined = PatternMatcherFactory.getPatternsMatcher(partialMatchDirs, caseSensitive, patterns)
+        def single = patterns.collect { PatternMatcherFactory.getPatternMatcher(partialMatchDirs, caseSensitive, it) }
+        PATHS.each { List<String> segments ->
+            [true, false].each { boolean isFile ->
+                def path = new RelativePath(isFile, segments as String[])
+                assert combined.isSatisfiedBy(path) == single.any { it.isSatisfiedBy(path) }: "patterns: $patterns, path: $path, file: $isFile"
+            }
+        }
+    }
+
+    private static RelativePath file(String... segments) {
+        new RelativePath(true, segments)
+    }
+
+    private static RelativePath dir(String... segments) {
+        new RelativePath(false, segments)
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MD5
+import static org.gradle.api.internal.hash.FileContentHashAlgorithm.MURMUR3_128
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def "uses MD5 by default"() {
+        def file = tmpDir.createFile("file.txt")
+        file.text = "content"
+
+        expect:
+        new DefaultFileHasher().hash(file) == new DefaultFileHasher(MD5).hash(file)
+    }
+
+    def "hashes content with the given algorithm"() {
+        def file = tmpDir.createFile("file.txt")
+        file.text = "content"
+        def same = tmpDir.createFile("same.txt")
+        same.text = "content"
+        def hasher = new DefaultFileHasher(algorithm)
+
+        expect:
+        hasher.hash(file).bits() == 128
+        hasher.hash(file) == hasher.hash(same)
+
+        where:
+        algorithm << FileContentHashAlgorithm.values()
+    }
+
+    def "algorithms produce different hashes"() {
+        def file = tmpDir.createFile("file.txt")
+        file.text = "content"
+
+        expect:
+        new DefaultFileHasher(MD5).hash(file) != new DefaultFileHasher(MURMUR3_128).hash(file)
+    }
+
+    def "selects algorithm with system property"() {
+        when:
+        System.setProperty(FileContentHashAlgorithm.PROPERTY, "murmur3_128")
+
+        then:
+        FileContentHashAlgorithm.fromSystemProperty() == MURMUR3_128
+
+        when:
+        System.clearProperty(FileContentHashAlgorithm.PROPERTY)
+
+        then:
+        FileContentHashAlgorithm.fromSystemProperty() == MD5
+    }
+
+    def "reports unknown algorithm"() {
+        when:
+        System.setProperty(FileContentHashAlgorithm.PROPERTY, "crc32")
+        FileContentHashAlgorithm.fromSystemProperty()
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown file content hash algorithm 'crc32' specified by system property '$FileContentHashAlgorithm.PROPERTY'. Supported values are [MD5, MURMUR3_128]."
+    }
+}
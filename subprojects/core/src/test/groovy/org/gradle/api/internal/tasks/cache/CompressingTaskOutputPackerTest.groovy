@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CompressingTaskOutputPackerTest extends Specification {
+    def taskOutputs = Mock(TaskOutputsInternal)
+    def delegate = Mock(TarTaskOutputPacker)
+
+    @Unroll
+    def "can unpack output packed with #packedWith when configured to use #configured"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new CompressingTaskOutputPacker(delegate, packedWith).pack(taskOutputs, output)
+
+        then:
+        1 * delegate.pack(taskOutputs, _) >> { TaskOutputsInternal outputs, OutputStream stream ->
+            stream << "output"
+        }
+
+        when:
+        new CompressingTaskOutputPacker(delegate, configured).unpack(taskOutputs, new ByteArrayInputStream(output.toByteArray()))
+
+        then:
+        1 * delegate.unpack(taskOutputs, _) >> { TaskOutputsInternal outputs, InputStream stream ->
+            assert stream.text == "output"
+        }
+
+        where:
+        [packedWith, configured] << [TaskOutputCompression.values() as List, TaskOutputCompression.values() as List].combinations()
+    }
+
+    def "writes gzip archives without additional header"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new CompressingTaskOutputPacker(delegate, TaskOutputCompression.GZIP).pack(taskOutputs, output)
+
+        then:
+        1 * delegate.pack(taskOutputs, _)
+        def bytes = output.toByteArray()
+        bytes[0] == (byte) 0x1f
+        bytes[1] == (byte) 0x8b
+    }
+
+    def "fails to unpack archive with unknown compression"() {
+        def packer = new CompressingTaskOutputPacker(delegate, TaskOutputCompression.GZIP)
+
+        when:
+        packer.unpack(taskOutputs, new ByteArrayInputStream([(byte) 'G', (byte) 'T', 42] as byte[]))
+
+        then:
+        def e = thrown IllegalStateException
+        e.message == "Cached result format error, unknown compression: 42"
+        0 * delegate._
+    }
+
+    def "fails to unpack archive without compression header"() {
+        def packer = new CompressingTaskOutputPacker(delegate, TaskOutputCompression.GZIP)
+
+        when:
+        packer.unpack(taskOutputs, new ByteArrayInputStream("output".bytes))
+
+        then:
+        def e = thrown IllegalStateException
+        e.message == "Cached result format error, no compression header found"
+        0 * delegate._
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.apache.tools.tar.TarEntry
+import org.apache.tools.tar.TarInputStream
+import org.apache.tools.tar.TarOutputStream
+import org.gradle.api.internal.file.TmpDirTemporaryFileProvider
+import org.gradle.api.internal.tasks.cache.compression.TaskOutputCompression
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.ConcurrentHashMap
+
+class ContentAddressedTaskOutputCacheTest extends Specification {
+    def entries = new ConcurrentHashMap<String, byte[]>()
+    def delegate = new MapBasedTaskOutputCache("map", entries)
+    def temporaryFileProvider = new TmpDirTemporaryFileProvider()
+    def cache = new ContentAddressedTaskOutputCache(delegate, delegate, TaskOutputCompression.GZIP, temporaryFileProvider)
+    def largeContent = (0..<20000).collect { (byte) (it % 251) } as byte[]
+
+    @Unroll
+    def "can load archive stored with #compression"() {
+        def cache = new ContentAddressedTaskOutputCache(delegate, delegate, compression, temporaryFileProvider)
+        def archive = archive("large.bin": largeContent, "small.txt": "small".bytes)
+
+        when:
+        cache.store(key("key"), writer(archive))
+
+        then:
+        entries.keySet().size() == 2
+
+        and:
+        contents(load(cache, "key")) == contents(archive)
+
+        where:
+        compression << TaskOutputCompression.values()
+    }
+
+    def "stores identical contents only once"() {
+        def largeContentCopy = largeContent.clone()
+        cache.store(key("key1"), writer(archive("large.bin": largeContent)))
+
+        when:
+        cache.store(key("key2"), writer(archive("other.bin": largeContentCopy, "small.txt": "small".bytes)))
+
+        then:
+        entries.keySet().size() == 3
+        contents(load(cache, "key2")) == ["property-test/other.bin": largeContentCopy as List, "property-test/small.txt": "small".bytes as List]
+    }
+
+    def "does not store contents already present in backing cache"() {
+        def backingCache = Mock(ProbingTaskOutputCache)
+        def cache = new ContentAddressedTaskOutputCache(delegate, backingCache, TaskOutputCompression.GZIP, temporaryFileProvider)
+
+        when:
+        cache.store(key("key"), writer(archive("large.bin": largeContent)))
+
+        then:
+        1 * backingCache.probe(_) >> { List<TaskCacheKey> keys -> keys*.hashCode as Set }
+        entries.keySet() == ["key"] as Set
+    }
+
+    def "reports miss when stored contents are missing"() {
+        cache.store(key("key"), writer(archive("large.bin": largeContent)))
+        entries.keySet().removeAll { it != "key" }
+        def reader = Mock(TaskOutputReader)
+
+        when:
+        def found = cache.load(key("key"), reader)
+
+        then:
+        !found
+        0 * reader._
+    }
+
+    def "probes backing cache for all contents of an archive at once"() {
+        def backingCache = Mock(ProbingTaskOutputCache)
+        def cache = new ContentAddressedTaskOutputCache(delegate, backingCache, TaskOutputCompression.GZIP, temporaryFileProvider)
+        def otherContent = largeContent.collect { (byte) (it + 1) } as byte[]
+
+        when:
+        cache.store(key("key"), writer(archive("large.bin": largeContent, "other.bin": otherContent, "copy.bin": largeContent.clone())))
+
+        then:
+        1 * backingCache.probe({ it.size() == 2 }) >> ([] as Set)
+        entries.keySet().size() == 3
+    }
+
+    @Unroll
+    def "reports miss when stored contents are #corruption"() {
+        def cache = new ContentAddressedTaskOutputCache(delegate, delegate, TaskOutputCompression.STORE, temporaryFileProvider)
+        cache.store(key("key"), writer(archive("large.bin": largeContent)))
+        def blobKey = entries.keySet().find { it != "key" }
+        entries[blobKey] = change(entries[blobKey])
+        def reader = Mock(TaskOutputReader)
+
+        when:
+        def found = cache.load(key("key"), reader)
+
+        then:
+        !found
+        0 * reader._
+
+        where:
+        corruption  | change
+        "changed"   | { byte[] blob -> def copy = blob.clone(); copy[copy.length - 1]++; copy }
+        "truncated" | { byte[] blob -> Arrays.copyOf(blob, blob.length - 1) }
+        "too long"  | { byte[] blob -> Arrays.copyOf(blob, blob.length + 1) }
+    }
+
+    def "loads results stored without content addressing"() {
+        def archive = archive("large.bin": largeContent)
+        entries["key"] = archive
+
+        expect:
+        load(cache, "key") == archive
+    }
+
+    def "reports miss when neither manifest nor result is present"() {
+        expect:
+        !cache.load(key("key"), Mock(TaskOutputReader))
+    }
+
+    private static TaskCacheKey key(String hashCode) {
+        return new TaskCacheKey() {
+            @Override
+            String getHashCode() {
+                hashCode
+            }
+        }
+    }
+
+    private static TaskOutputWriter writer(byte[] archive) {
+        return new TaskOutputWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output.write(archive)
+            }
+        }
+    }
+
+    private static byte[] load(TaskOutputCache cache, String hashCode) {
+        byte[] result = null
+        assert cache.load(key(hashCode), new TaskOutputReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                result = input.bytes
+            }
+        })
+        return result
+    }
+
+    private static byte[] archive(Map<String, byte[]> files) {
+        def output = new ByteArrayOutputStream()
+        def tarOutput = new TarOutputStream(CompressingTaskOutputPacker.compress(output, TaskOutputCompression.GZIP), "utf-8")
+        tarOutput.putNextEntry(new TarEntry("property-test/"))
+        tarOutput.closeEntry()
+        files.each { path, content ->
+            def entry = new TarEntry("property-test/" + path)
+            entry.size = content.length
+            entry.modTime = 1234567890000L
+            tarOutput.putNextEntry(entry)
+            tarOutput.write(content)
+            tarOutput.closeEntry()
+        }
+        tarOutput.close()
+        return output.toByteArray()
+    }
+
+    private static Map<String, List<Byte>> contents(byte[] archive) {
+        def tarInput = new TarInputStream(CompressingTaskOutputPacker.decompress(new ByteArrayInputStream(archive)))
+        def contents = [:]
+        TarEntry entry
+        while ((entry = tarInput.nextEntry) != null) {
+            if (!entry.directory) {
+                assert entry.modTime.time == 1234567890000L
+                contents[entry.name] = tarInput.bytes as List
+            }
+        }
+        return contents
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+@CleanupTestDirectory(fieldName = "tempDir")
+class LocalDirectoryTaskOutputCacheCleanerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider()
+
+    def executorFactory = Mock(ExecutorFactory)
+    def cacheDir = tempDir.createDir("cache")
+    def now = System.currentTimeMillis()
+
+    def "removes least recently used entries until cache fits into target size"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, 250, 0)
+        def oldest = entry("aaaa", 100, 30)
+        def older = entry("bbbb", 100, 20)
+        def newer = entry("cccc", 100, 10)
+        def newest = entry("dddd", 50, 0)
+
+        when:
+        cleaner.cleanup(cacheDir)
+
+        then:
+        !oldest.exists()
+        !older.exists()
+        newer.exists()
+        newest.exists()
+    }
+
+    def "removes entries not used within maximum age"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, 0, TimeUnit.DAYS.toMillis(7))
+        def old = entry("aaaa", 100, TimeUnit.DAYS.toMinutes(8))
+        def recent = entry("bbbb", 100, TimeUnit.DAYS.toMinutes(6))
+
+        when:
+        cleaner.cleanup(cacheDir)
+
+        then:
+        !old.exists()
+        recent.exists()
+    }
+
+    def "removes stale temporary files but leaves other files alone"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, 1, 0)
+        def staleTempFile = entry("aaaa123.part", 10, 120)
+        def freshTempFile = entry("bbbb123.part", 10, 0)
+        def properties = entry("cache.properties", 10, 120)
+
+        when:
+        cleaner.cleanup(cacheDir)
+
+        then:
+        !staleTempFile.exists()
+        freshTempFile.exists()
+        properties.exists()
+    }
+
+    def "does nothing when no limits are configured"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, 0, 0)
+        entry("aaaa", 100, 30)
+
+        when:
+        cleaner.cleanupInBackground(cacheDir)
+
+        then:
+        !cleaner.enabled
+        0 * executorFactory._
+    }
+
+    def "stop waits for pending cleanup"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(new DefaultExecutorFactory(), 150, 0)
+        def oldest = entry("aaaa", 100, 30)
+        def newest = entry("bbbb", 100, 0)
+
+        when:
+        cleaner.cleanupInBackground(cacheDir)
+        cleaner.stop()
+
+        then:
+        !oldest.exists()
+        newest.exists()
+    }
+
+    def "does not remove entries once interrupted"() {
+        def cleaner = new LocalDirectoryTaskOutputCacheCleaner(executorFactory, 1, 0)
+        def entry = entry("aaaa", 100, 30)
+
+        when:
+        Thread.currentThread().interrupt()
+        cleaner.cleanup(cacheDir)
+
+        then:
+        Thread.interrupted()
+        entry.exists()
+    }
+
+    private TestFile entry(String name, int size, long minutesSinceLastAccess) {
+        def file = cacheDir.file(name)
+        file.bytes = new byte[size]
+        file.lastModified = now - TimeUnit.MINUTES.toMillis(minutesSinceLastAccess)
+        return file
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.tasks.cache
 
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.nativeplatform.filesystem.FileSystem
 import spock.lang.Unroll
 
@@ -105,6 +106,79 @@ class TarTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
         0 * _
     }
 
+    def "can unpack task output directory using multiple threads"() {
+        def executorFactory = new DefaultExecutorFactory()
+        def parallelPacker = new TarTaskOutputPacker(fileSystem, executorFactory)
+        def sourceOutputDir = tempDir.file("source").createDir()
+        def sourceSubDir = sourceOutputDir.file("subdir").createDir()
+        100.times { index ->
+            sourceSubDir.file("data-${index}.txt") << "output ${index}"
+        }
+        sourceSubDir.file("large.bin").bytes = new byte[256 * 1024]
+        def targetOutputDir = tempDir.file("target").createDir()
+        def targetSubDir = targetOutputDir.file("subdir")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        parallelPacker.pack(taskOutputs, output)
+        then:
+        taskOutputs.getFileProperties() >> ([
+            new TestProperty(propertyName: "test", outputFile: sourceOutputDir)
+        ] as SortedSet)
+        1 * fileSystem.getUnixMode(sourceSubDir) >> 0711
+        101 * fileSystem.getUnixMode(_) >> 0600
+        0 * _
+
+        when:
+        def input = new ByteArrayInputStream(output.toByteArray())
+        parallelPacker.unpack(taskOutputs, input)
+
+        then:
+        taskOutputs.getFileProperties() >> ([
+            new TestProperty(propertyName: "test", outputFile: targetOutputDir)
+        ] as SortedSet)
+        1 * fileSystem.chmod(targetOutputDir, 0755)
+        1 * fileSystem.chmod(targetSubDir, 0711)
+        101 * fileSystem.chmod({ it.parentFile == targetSubDir }, 0600)
+        0 * _
+        100.times { index ->
+            assert targetSubDir.file("data-${index}.txt").text == "output ${index}"
+            assert targetSubDir.file("data-${index}.txt").lastModified() == sourceSubDir.file("data-${index}.txt").lastModified()
+        }
+        targetSubDir.file("large.bin").bytes == new byte[256 * 1024]
+        targetSubDir.lastModified() == sourceSubDir.lastModified()
+
+        cleanup:
+        executorFactory.stop()
+    }
+
+    def "reuses unpack threads between unpacks until stopped"() {
+        def executorFactory = Spy(DefaultExecutorFactory)
+        def parallelPacker = new TarTaskOutputPacker(fileSystem, executorFactory)
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("data.txt") << "output"
+        def targetOutputDir = tempDir.file("target").createDir()
+        taskOutputs.getFileProperties() >>> [
+            [new TestProperty(propertyName: "test", outputFile: sourceOutputDir)] as SortedSet,
+            [new TestProperty(propertyName: "test", outputFile: targetOutputDir)] as SortedSet
+        ]
+        def output = new ByteArrayOutputStream()
+        parallelPacker.pack(taskOutputs, output)
+
+        when:
+        2.times {
+            parallelPacker.unpack(taskOutputs, new ByteArrayInputStream(output.toByteArray()))
+        }
+        parallelPacker.stop()
+
+        then:
+        1 * executorFactory.create("Task output unpack", _)
+        targetOutputDir.file("data.txt").text == "output"
+
+        cleanup:
+        executorFactory.stop()
+    }
+
     def "can pack single task output file with long name"() {
         def propertyName = "prop-" + ("x" * 100)
         def sourceOutputFile = tempDir.file("source.txt")
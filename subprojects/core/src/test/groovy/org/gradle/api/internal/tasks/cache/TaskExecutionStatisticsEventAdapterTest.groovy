@@ -20,6 +20,8 @@ import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatistics
 import org.gradle.api.internal.tasks.cache.statistics.TaskExecutionStatisticsListener
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheLoadMetrics
+import org.gradle.api.internal.tasks.cache.statistics.TaskOutputCacheStoreMetrics
 import spock.lang.Specification
 import spock.lang.Subject
 
@@ -55,6 +57,12 @@ class TaskExecutionStatisticsEventAdapterTest extends Specification {
             }
             statisticsEventAdapter.afterExecute(task, state)
         }
+        3.times {
+            statisticsEventAdapter.storeCompleted(Mock(TaskInternal), Mock(TaskCacheKey), new TaskOutputCacheStoreMetrics(10, 20, 100))
+        }
+        statisticsEventAdapter.storeFailed(Mock(TaskInternal), Mock(TaskCacheKey), new RuntimeException())
+        statisticsEventAdapter.loadFinished(Mock(TaskInternal), Mock(TaskCacheKey), new TaskOutputCacheLoadMetrics(5, true, true, 10, 20, 1000, 100))
+        statisticsEventAdapter.loadFinished(Mock(TaskInternal), Mock(TaskCacheKey), new TaskOutputCacheLoadMetrics(5, true, false, 10, 0, 0, -1))
 
         when:
         statisticsEventAdapter.completed()
@@ -65,6 +73,18 @@ class TaskExecutionStatisticsEventAdapterTest extends Specification {
             assert statistics.getTasksCount(SKIPPED) == 3
             assert statistics.getTasksCount(UP_TO_DATE) == 5
             assert statistics.cacheMissCount == 1
+            assert statistics.storedCount == 3
+            assert statistics.storeFailureCount == 1
+            assert statistics.cacheSummary.cacheKeyCalculationTime == 10
+            assert statistics.cacheSummary.lookupCount == 2
+            assert statistics.cacheSummary.lookupTime == 20
+            assert statistics.cacheSummary.hitCount == 1
+            assert statistics.cacheSummary.loadedBytes == 1000
+            assert statistics.cacheSummary.estimatedTimeSaved == 70
+            assert statistics.cacheSummary.storeCount == 3
+            assert statistics.cacheSummary.packTime == 30
+            assert statistics.cacheSummary.uploadTime == 60
+            assert statistics.cacheSummary.storedBytes == 300
         }
         0 * _
     }
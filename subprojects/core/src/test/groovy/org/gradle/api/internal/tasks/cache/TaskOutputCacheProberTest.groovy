@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.gradle.StartParameter
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.TaskArtifactState
+import org.gradle.api.internal.changedetection.TaskArtifactStateRepository
+import org.gradle.api.internal.tasks.cache.config.TaskCachingInternal
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+
+class TaskOutputCacheProberTest extends Specification {
+    def taskCaching = Mock(TaskCachingInternal)
+    def cacheFactory = Mock(TaskOutputCacheFactory)
+    def repository = Mock(TaskArtifactStateRepository)
+    def executorFactory = new DefaultExecutorFactory()
+    def entries = new ConcurrentHashMap<String, byte[]>(["hit": new byte[0]])
+    def prober = new TaskOutputCacheProber(taskCaching, Mock(StartParameter), repository, executorFactory)
+
+    def setup() {
+        _ * taskCaching.isPullAllowed() >> true
+        _ * taskCaching.getCacheFactory() >> cacheFactory
+    }
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "records keys found to be missing when probing"() {
+        def cache = new MapBasedTaskOutputCache("test", entries)
+        cacheFactory.createCache(_) >> cache
+        def hitKey = key("hit")
+        def missKey = key("miss")
+        def unprobedKey = key("unprobed")
+
+        when:
+        prober.probe([cacheableTask(hitKey), cacheableTask(missKey)])
+        prober.stop()
+
+        then:
+        prober.getCache() == cache
+        !prober.isKnownMissing(hitKey)
+        prober.isKnownMissing(missKey)
+        !prober.isKnownMissing(unprobedKey)
+    }
+
+    def "does not probe tasks that are not cacheable"() {
+        def cache = Mock(ProbingTaskOutputCache)
+        cacheFactory.createCache(_) >> cache
+        def task = Mock(TaskInternal)
+        def outputs = Mock(TaskOutputsInternal)
+        task.getOutputs() >> outputs
+        outputs.isCacheEnabled() >> false
+
+        when:
+        prober.probe([task])
+        prober.stop()
+
+        then:
+        0 * repository._
+        0 * cache.probe(_)
+    }
+
+    def "ignores tasks whose cache key cannot be calculated ahead of execution"() {
+        def cache = Mock(ProbingTaskOutputCache)
+        cacheFactory.createCache(_) >> cache
+        def task = cacheableTask(null)
+        def missKey = key("miss")
+
+        when:
+        prober.probe([task, cacheableTask(missKey)])
+        prober.stop()
+
+        then:
+        1 * cache.probe([missKey]) >> ([] as Set)
+        prober.isKnownMissing(missKey)
+    }
+
+    def "does not probe caches that do not support probing"() {
+        def cache = Mock(TaskOutputCache)
+        cacheFactory.createCache(_) >> cache
+
+        when:
+        prober.probe([Mock(TaskInternal)])
+        prober.stop()
+
+        then:
+        0 * repository._
+        !prober.isKnownMissing(key("miss"))
+    }
+
+    def "does not probe when pulling from the cache is disabled"() {
+        when:
+        prober.probe([Mock(TaskInternal)])
+
+        then:
+        1 * taskCaching.isPullAllowed() >> false
+        0 * cacheFactory._
+        0 * repository._
+    }
+
+    def "does not fail when probing fails"() {
+        def cache = Mock(ProbingTaskOutputCache)
+        cacheFactory.createCache(_) >> cache
+        def missKey = key("miss")
+
+        when:
+        prober.probe([cacheableTask(missKey)])
+        prober.stop()
+
+        then:
+        1 * cache.probe(_) >> { throw new IOException("Bad cache") }
+        !prober.isKnownMissing(missKey)
+    }
+
+    private TaskCacheKey key(String hashCode) {
+        def key = Mock(TaskCacheKey)
+        _ * key.getHashCode() >> hashCode
+        return key
+    }
+
+    private TaskInternal cacheableTask(TaskCacheKey key) {
+        def task = Mock(TaskInternal)
+        def outputs = Mock(TaskOutputsInternal)
+        def state = Mock(TaskArtifactState)
+        _ * task.getOutputs() >> outputs
+        _ * outputs.isCacheEnabled() >> true
+        _ * outputs.hasDeclaredOutputs() >> true
+        _ * outputs.isCacheAllowed() >> true
+        _ * repository.getStateFor(task) >> state
+        _ * state.isAllowedToUseCachedResults() >> true
+        _ * state.calculateCacheKey() >> key
+        return task
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.file.DefaultTemporaryFileProvider
+import org.gradle.internal.Factory
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+import static org.gradle.test.fixtures.ConcurrentTestUtil.poll
+
+@CleanupTestDirectory(fieldName = "tempDir")
+class TaskOutputStorerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider()
+
+    def task = Mock(TaskInternal)
+    def cache = Mock(TaskOutputCache)
+    def key = Mock(TaskCacheKey)
+    def listener = Mock(TaskOutputCacheStoreListener)
+    def executorFactory = new DefaultExecutorFactory()
+    def stagingDir = tempDir.file("staging")
+    def temporaryFileProvider = new DefaultTemporaryFileProvider({ stagingDir } as Factory)
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "stores synchronously when async push is disabled"() {
+        def storer = new TaskOutputStorer(false, executorFactory, 2, 10, temporaryFileProvider, listener)
+        def writer = { OutputStream output -> output << "output" } as TaskOutputWriter
+        def pushed = new ByteArrayOutputStream()
+
+        when:
+        storer.store(task, cache, key, writer)
+
+        then:
+        1 * cache.store(key, _) >> { TaskCacheKey k, TaskOutputWriter w -> w.writeTo(pushed) }
+
+        then:
+        1 * listener.storeCompleted(task, key, { it.archiveSize == 6 })
+        0 * _
+        pushed.toString() == "output"
+    }
+
+    def "reports failure to store synchronously"() {
+        def storer = new TaskOutputStorer(false, executorFactory, 2, 10, temporaryFileProvider, listener)
+        def failure = new RuntimeException("Bad result")
+
+        when:
+        storer.store(task, cache, key, Mock(TaskOutputWriter))
+
+        then:
+        noExceptionThrown()
+        1 * cache.store(key, _) >> { throw failure }
+        1 * listener.storeFailed(task, key, failure)
+        0 * listener._
+    }
+
+    def "stages output and pushes it in the background"() {
+        def storer = new TaskOutputStorer(true, executorFactory, 2, 10, temporaryFileProvider, listener)
+        def writer = { OutputStream output -> output << "output" } as TaskOutputWriter
+        def pushed = new ByteArrayOutputStream()
+
+        when:
+        storer.store(task, cache, key, writer)
+        storer.stop()
+
+        then:
+        1 * cache.store(key, _) >> { TaskCacheKey k, TaskOutputWriter w -> w.writeTo(pushed) }
+        1 * listener.storeCompleted(task, key, { it.archiveSize == 6 })
+        0 * listener._
+        pushed.toString() == "output"
+        stagingDir.listFiles().length == 0
+    }
+
+    def "reports failure to push in the background"() {
+        def storer = new TaskOutputStorer(true, executorFactory, 2, 10, temporaryFileProvider, listener)
+        def writer = { OutputStream output -> output << "output" } as TaskOutputWriter
+        def failure = new IOException("Bad cache")
+
+        when:
+        storer.store(task, cache, key, writer)
+        storer.stop()
+
+        then:
+        1 * cache.store(key, _) >> { throw failure }
+        1 * listener.storeFailed(task, key, failure)
+        0 * listener._
+        stagingDir.listFiles().length == 0
+    }
+
+    def "does not push when output cannot be staged"() {
+        def storer = new TaskOutputStorer(true, executorFactory, 2, 10, temporaryFileProvider, listener)
+        def failure = new IOException("Bad output")
+        def writer = { OutputStream output -> throw failure } as TaskOutputWriter
+
+        when:
+        storer.store(task, cache, key, writer)
+        storer.stop()
+
+        then:
+        0 * cache._
+        1 * listener.storeFailed(task, key, failure)
+        stagingDir.listFiles().length == 0
+    }
+
+    def "deletes the staged output of pushes that have not started when waiting for pushes times out"() {
+        def storer = new TaskOutputStorer(true, executorFactory, 1, 1, temporaryFileProvider, listener)
+        def writer = { OutputStream output -> output << "output" } as TaskOutputWriter
+        def pushStarted = new CountDownLatch(1)
+
+        when:
+        storer.store(task, cache, key, writer)
+        pushStarted.await()
+        storer.store(task, cache, key, writer)
+        storer.stop()
+
+        and:
+        // The running push is interrupted and deletes its own staged output
+        poll {
+            assert stagingDir.listFiles().length == 0
+        }
+
+        then:
+        1 * cache.store(key, _) >> {
+            pushStarted.countDown()
+            new CountDownLatch(1).await()
+        }
+        1 * listener.storeFailed(task, key, { it instanceof InterruptedException })
+    }
+}
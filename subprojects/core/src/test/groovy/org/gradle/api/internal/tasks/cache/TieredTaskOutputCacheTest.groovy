@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache
+
+import org.gradle.api.internal.file.DefaultTemporaryFileProvider
+import org.gradle.internal.Factory
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+
+@CleanupTestDirectory(fieldName = "tempDir")
+class TieredTaskOutputCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider()
+
+    def localEntries = new ConcurrentHashMap<String, byte[]>()
+    def remoteEntries = new ConcurrentHashMap<String, byte[]>()
+    def local = Spy(MapBasedTaskOutputCache, constructorArgs: ["local", localEntries])
+    def remote = Spy(MapBasedTaskOutputCache, constructorArgs: ["remote", remoteEntries])
+    def stagingDir = tempDir.file("staging")
+    def temporaryFileProvider = new DefaultTemporaryFileProvider({ stagingDir } as Factory)
+    def cache = new TieredTaskOutputCache(local, remote, temporaryFileProvider)
+    def key = Stub(TaskCacheKey) {
+        getHashCode() >> "key"
+    }
+
+    def "loads from local cache without contacting remote cache"() {
+        localEntries["key"] = "local".bytes
+
+        when:
+        def result = load()
+
+        then:
+        result == "local"
+        0 * remote._
+    }
+
+    def "loads from remote cache and copies result to local cache"() {
+        remoteEntries["key"] = "remote".bytes
+
+        expect:
+        load() == "remote"
+        new String(localEntries["key"]) == "remote"
+        stagingDir.listFiles().length == 0
+    }
+
+    def "reads result from remote cache when it cannot be copied to local cache"() {
+        remoteEntries["key"] = "remote".bytes
+
+        when:
+        def result = load()
+
+        then:
+        1 * local.store(key, _) >> { throw new IOException("Broken local cache") }
+        result == "remote"
+        1 * remote.load(key, _)
+        stagingDir.listFiles().length == 0
+    }
+
+    def "reports miss when neither cache has result"() {
+        expect:
+        !cache.load(key, Mock(TaskOutputReader))
+        localEntries.isEmpty()
+    }
+
+    def "probes remote cache only for keys missing from local cache"() {
+        def remoteKey = Stub(TaskCacheKey) {
+            getHashCode() >> "remote-key"
+        }
+        def missingKey = Stub(TaskCacheKey) {
+            getHashCode() >> "missing-key"
+        }
+        localEntries["key"] = "local".bytes
+        remoteEntries["remote-key"] = "remote".bytes
+
+        when:
+        def found = cache.probe([key, remoteKey, missingKey])
+
+        then:
+        found == ["key", "remote-key"] as Set
+        1 * remote.probe([remoteKey, missingKey])
+    }
+
+    def "reports all keys missing locally as possibly present when remote cache does not support probing"() {
+        def cache = new TieredTaskOutputCache(local, Mock(TaskOutputCache), temporaryFileProvider)
+
+        expect:
+        cache.probe([key]) == ["key"] as Set
+    }
+
+    def "stores result in both caches while writing it only once"() {
+        def writer = Mock(TaskOutputWriter)
+
+        when:
+        cache.store(key, writer)
+
+        then:
+        1 * writer.writeTo(_) >> { OutputStream output -> output << "result" }
+        new String(localEntries["key"]) == "result"
+        new String(remoteEntries["key"]) == "result"
+        stagingDir.listFiles().length == 0
+    }
+
+    def "does not use local cache while storing result in remote cache"() {
+        def events = []
+
+        when:
+        cache.store(key, { OutputStream output -> output << "result" } as TaskOutputWriter)
+
+        then:
+        1 * local.load(key, _) >> {
+            def found = callRealMethod()
+            events << "local load finished"
+            return found
+        }
+        1 * remote.store(key, _) >> {
+            events << "remote store started"
+            callRealMethod()
+        }
+        events == ["local load finished", "remote store started"]
+        new String(remoteEntries["key"]) == "result"
+    }
+
+    def "describes both caches"() {
+        expect:
+        cache.description == "local in front of remote"
+    }
+
+    private String load() {
+        String result = null
+        assert cache.load(key, { InputStream input -> result = input.text } as TaskOutputReader)
+        return result
+    }
+}
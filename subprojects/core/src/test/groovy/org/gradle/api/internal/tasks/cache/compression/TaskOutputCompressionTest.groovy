@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.cache.compression
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TaskOutputCompressionTest extends Specification {
+    def random = new Random(1234L)
+
+    @Unroll
+    def "#compression can round-trip #description"() {
+        def data = generate(description)
+
+        expect:
+        decompress(compression, compress(compression, data)) == data
+
+        where:
+        [compression, description] << [TaskOutputCompression.values() as List, ["empty data", "a single byte", "random data", "repetitive data", "text"]].combinations()
+    }
+
+    def "lz4 compresses repetitive data"() {
+        def data = text(random, 1024 * 1024)
+
+        expect:
+        compress(TaskOutputCompression.LZ4, data).length < data.length / 2
+    }
+
+    def "lz4 stores incompressible blocks as they are"() {
+        def data = randomBytes(random, 100 * 1024)
+
+        expect:
+        compress(TaskOutputCompression.LZ4, data).length <= data.length + 4 * 3 * 2 + 4
+    }
+
+    def "lz4 detects corrupt data"() {
+        def compressed = compress(TaskOutputCompression.LZ4, text(random, 100 * 1024))
+        // Flip a bit in the first block
+        compressed[20] ^= 0x01
+
+        when:
+        decompress(TaskOutputCompression.LZ4, compressed)
+
+        then:
+        def e = thrown IOException
+        e.message.startsWith("Compressed task output is corrupt")
+    }
+
+    def "lz4 detects truncated data"() {
+        def compressed = compress(TaskOutputCompression.LZ4, text(random, 100 * 1024))
+
+        when:
+        decompress(TaskOutputCompression.LZ4, Arrays.copyOf(compressed, compressed.length - 10))
+
+        then:
+        thrown EOFException
+    }
+
+    def "can look up compression by display name"() {
+        expect:
+        TaskOutputCompression.forDisplayName("lz4") == TaskOutputCompression.LZ4
+        TaskOutputCompression.forDisplayName("GZIP") == TaskOutputCompression.GZIP
+
+        when:
+        TaskOutputCompression.forDisplayName("unknown")
+
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Unknown task output compression 'unknown', supported values are: gzip, lz4, store"
+    }
+
+    private static byte[] compress(TaskOutputCompression compression, byte[] data) {
+        def output = new ByteArrayOutputStream()
+        def compressed = compression.compress(output)
+        // Write in chunks smaller than a block
+        int offset = 0
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 10000)
+            compressed.write(data, offset, length)
+            offset += length
+        }
+        compressed.close()
+        return output.toByteArray()
+    }
+
+    private static byte[] decompress(TaskOutputCompression compression, byte[] data) {
+        def input = compression.decompress(new ByteArrayInputStream(data))
+        try {
+            return input.bytes
+        } finally {
+            input.close()
+        }
+    }
+
+    private byte[] generate(String description) {
+        switch (description) {
+            case "empty data":
+                return new byte[0]
+            case "a single byte":
+                return [42] as byte[]
+            case "random data":
+                return randomBytes(random, 200 * 1024)
+            case "repetitive data":
+                return ("abcdefgh" * 100000).bytes
+            case "text":
+                return text(random, 300 * 1024)
+            default:
+                throw new IllegalArgumentException(description)
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        def bytes = new byte[length]
+        random.nextBytes(bytes)
+        return bytes
+    }
+
+    private static byte[] text(Random random, int length) {
+        def words = ["<testcase", "name=", "classname=", "time=", "org.gradle.", "Test", "</testcase>", "\n", "    "]
+        def builder = new StringBuilder()
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.size())])
+            builder.append(random.nextInt(100))
+        }
+        return builder.toString().bytes
+    }
+}
@@ -91,7 +91,7 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * publicListener.beforeActions(task)
         then:
-        1 * internalListener.beforeTaskOutputsGenerated()
+        1 * internalListener.beforeTaskOutputsGenerated(task)
         then:
         1 * standardOutputCapture.start()
         then:
@@ -115,6 +115,8 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * standardOutputCapture.stop()
         then:
+        1 * internalListener.afterTaskOutputsGenerated(task)
+        then:
         1 * publicListener.afterActions(task)
         noMoreInteractions()
 
@@ -137,7 +139,7 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * publicListener.beforeActions(task)
         then:
-        1 * internalListener.beforeTaskOutputsGenerated()
+        1 * internalListener.beforeTaskOutputsGenerated(task)
         then:
         1 * standardOutputCapture.start()
 
@@ -152,6 +154,8 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * standardOutputCapture.stop()
         then:
+        1 * internalListener.afterTaskOutputsGenerated(task)
+        then:
         1 * publicListener.afterActions(task)
         noMoreInteractions()
     }
@@ -170,7 +174,7 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * publicListener.beforeActions(task)
         then:
-        1 * internalListener.beforeTaskOutputsGenerated()
+        1 * internalListener.beforeTaskOutputsGenerated(task)
         then:
         1 * standardOutputCapture.start()
         then:
@@ -180,6 +184,8 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * standardOutputCapture.stop()
         then:
+        1 * internalListener.afterTaskOutputsGenerated(task)
+        then:
         1 * publicListener.afterActions(task)
 
         !state.executing
@@ -203,7 +209,7 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * publicListener.beforeActions(task)
         then:
-        1 * internalListener.beforeTaskOutputsGenerated()
+        1 * internalListener.beforeTaskOutputsGenerated(task)
         then:
         1 * standardOutputCapture.start()
         then:
@@ -217,6 +223,8 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * standardOutputCapture.stop()
         then:
+        1 * internalListener.afterTaskOutputsGenerated(task)
+        then:
         1 * publicListener.afterActions(task)
         state.didWork
         !state.executing
@@ -235,7 +243,7 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * publicListener.beforeActions(task)
         then:
-        1 * internalListener.beforeTaskOutputsGenerated()
+        1 * internalListener.beforeTaskOutputsGenerated(task)
         then:
         1 * standardOutputCapture.start()
         then:
@@ -259,6 +267,8 @@ public class ExecuteActionsTaskExecuterTest extends Specification {
         then:
         1 * standardOutputCapture.stop()
         then:
+        1 * internalListener.afterTaskOutputsGenerated(task)
+        then:
         1 * publicListener.afterActions(task)
 
         state.didWork
@@ -16,20 +16,23 @@
 
 package org.gradle.api.internal.tasks.execution
 
-import org.gradle.StartParameter
 import org.gradle.api.GradleException
 import org.gradle.api.Project
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.TaskOutputsInternal
 import org.gradle.api.internal.changedetection.TaskArtifactState
+import org.gradle.api.internal.changedetection.state.TaskExecutionTimeRepository
 import org.gradle.api.internal.tasks.TaskExecuter
 import org.gradle.api.internal.tasks.TaskExecutionContext
 import org.gradle.api.internal.tasks.TaskExecutionOutcome
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.internal.tasks.cache.TaskCacheKey
 import org.gradle.api.internal.tasks.cache.TaskOutputCache
-import org.gradle.api.internal.tasks.cache.TaskOutputCacheFactory
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheLoadListener
+import org.gradle.api.internal.tasks.cache.TaskOutputCacheProber
 import org.gradle.api.internal.tasks.cache.TaskOutputPacker
+import org.gradle.api.internal.tasks.cache.TaskOutputStorer
+import org.gradle.api.internal.tasks.cache.TaskOutputReader
 import org.gradle.api.internal.tasks.cache.config.TaskCachingInternal
 import spock.lang.Specification
 
@@ -43,14 +46,16 @@ public class SkipCachedTaskExecuterTest extends Specification {
     def taskContext = Mock(TaskExecutionContext)
     def taskArtifactState = Mock(TaskArtifactState)
     def taskOutputCache = Mock(TaskOutputCache)
-    def taskOutputCacheFactory = Mock(TaskOutputCacheFactory)
     def taskCaching = Mock(TaskCachingInternal)
     def taskOutputPacker = Mock(TaskOutputPacker)
-    def startParameter = Mock(StartParameter)
+    def taskOutputStorer = Mock(TaskOutputStorer)
+    def taskOutputCacheProber = Mock(TaskOutputCacheProber)
     def cacheKey = Mock(TaskCacheKey)
+    def executionTimeRepository = Mock(TaskExecutionTimeRepository)
+    def loadListener = Mock(TaskOutputCacheLoadListener)
     def internalTaskExecutionListener = Mock(TaskOutputsGenerationListener)
 
-    def executer = new SkipCachedTaskExecuter(taskCaching, taskOutputPacker, startParameter, internalTaskExecutionListener, delegate)
+    def executer = new SkipCachedTaskExecuter(taskCaching, taskOutputPacker, taskOutputStorer, taskOutputCacheProber, executionTimeRepository, loadListener, internalTaskExecutionListener, delegate)
 
     def "skip task when cached results exist"() {
         when:
@@ -69,15 +74,18 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.isAllowedToUseCachedResults() >> true
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> false
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
         1 * taskOutputCache.load(cacheKey, _) >> true
         1 * taskState.setOutcome(TaskExecutionOutcome.FROM_CACHE)
+
+        then:
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.getLastExecutionTime(":task") >> 1000
+        1 * loadListener.loadFinished(task, cacheKey, { it.lookedUp && it.hit && it.lastExecutionTime == 1000 })
         1 * taskState.setCacheable(true)
-        1 * internalTaskExecutionListener.beforeTaskOutputsGenerated()
         0 * _
     }
 
@@ -98,21 +106,58 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.isAllowedToUseCachedResults() >> true
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> false
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
         1 * taskOutputCache.load(cacheKey, _) >> false
+        1 * loadListener.loadFinished(task, cacheKey, { it.lookedUp && !it.hit })
+
+        then:
+        1 * delegate.execute(task, taskState, taskContext)
+        1 * taskCaching.isPushAllowed() >> true
+        1 * taskState.getFailure() >> null
+        1 * taskState.setCacheable(true)
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.recordExecutionTime(":task", _)
+
+        then:
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
+        1 * taskOutputStorer.store(task, taskOutputCache, cacheKey, _)
+        0 * _
+    }
+
+    def "executes task without loading from cache when cache key is known to be missing"() {
+        when:
+        executer.execute(task, taskState, taskContext)
+
+        then:
+        1 * task.getOutputs() >> outputs
+        1 * outputs.hasDeclaredOutputs() >> true
+        1 * outputs.isCacheAllowed() >> true
+        1 * outputs.isCacheEnabled() >> true
+
+        then:
+        1 * taskContext.getTaskArtifactState() >> taskArtifactState
+        1 * taskArtifactState.calculateCacheKey() >> cacheKey
+        1 * taskCaching.isPullAllowed() >> true
+        1 * taskArtifactState.isAllowedToUseCachedResults() >> true
+
+        then:
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> true
+        1 * loadListener.loadFinished(task, cacheKey, { !it.lookedUp })
 
         then:
         1 * delegate.execute(task, taskState, taskContext)
         1 * taskCaching.isPushAllowed() >> true
         1 * taskState.getFailure() >> null
         1 * taskState.setCacheable(true)
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.recordExecutionTime(":task", _)
 
         then:
-        1 * taskOutputCache.store(cacheKey, _)
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
+        1 * taskOutputStorer.store(task, taskOutputCache, cacheKey, _)
         0 * _
     }
 
@@ -131,6 +176,7 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.calculateCacheKey() >> cacheKey
         1 * taskCaching.isPullAllowed() >> true
         1 * taskArtifactState.isAllowedToUseCachedResults() >> false
+        1 * loadListener.loadFinished(task, cacheKey, { !it.lookedUp })
 
         then:
         1 * taskState.setCacheable(true)
@@ -139,14 +185,14 @@ public class SkipCachedTaskExecuterTest extends Specification {
         then:
         1 * taskCaching.isPushAllowed() >> true
         1 * taskState.getFailure() >> null
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.recordExecutionTime(":task", _)
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
-        1 * taskOutputCache.store(cacheKey, _)
+        1 * taskOutputStorer.store(task, taskOutputCache, cacheKey, _)
         0 * _
     }
 
@@ -167,12 +213,12 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.isAllowedToUseCachedResults() >> true
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> false
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
         1 * taskOutputCache.load(cacheKey, _) >> false
+        1 * loadListener.loadFinished(task, cacheKey, _)
 
         then:
         1 * taskState.setCacheable(true)
@@ -278,12 +324,12 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.isAllowedToUseCachedResults() >> true
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> false
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
         1 * taskOutputCache.load(cacheKey, _) >> { throw new RuntimeException("Bad cache") }
+        1 * loadListener.loadFinished(task, cacheKey, { it.lookedUp && !it.hit })
 
         then:
         1 * taskState.setCacheable(true)
@@ -291,12 +337,15 @@ public class SkipCachedTaskExecuterTest extends Specification {
 
         then:
         1 * taskState.getFailure() >> null
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.recordExecutionTime(":task", _)
         1 * taskCaching.isPushAllowed() >> true
-        1 * taskOutputCache.store(cacheKey, _)
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
+        1 * taskOutputStorer.store(task, taskOutputCache, cacheKey, _)
         0 * _
     }
 
-    def "ignores error when storing cached result"() {
+    def "reports size of loaded output"() {
         when:
         executer.execute(task, taskState, taskContext)
 
@@ -313,21 +362,26 @@ public class SkipCachedTaskExecuterTest extends Specification {
         1 * taskArtifactState.isAllowedToUseCachedResults() >> true
 
         then:
-        1 * taskCaching.getCacheFactory() >> taskOutputCacheFactory
-        1 * taskOutputCacheFactory.createCache(_) >> taskOutputCache
-        1 * taskOutputCache.getDescription() >> "test"
+        1 * taskOutputCacheProber.isKnownMissing(cacheKey) >> false
+        1 * taskOutputCacheProber.getCache() >> taskOutputCache
 
         then:
-        1 * taskOutputCache.load(cacheKey, _) >> false
+        1 * taskOutputCache.load(cacheKey, _) >> { TaskCacheKey key, TaskOutputReader reader ->
+            reader.readFrom(new ByteArrayInputStream(new byte[100]))
+            return true
+        }
+        1 * internalTaskExecutionListener.beforeTaskOutputsGenerated(task)
+        1 * taskOutputPacker.unpack(outputs, _) >> { TaskOutputsInternal taskOutputs, InputStream input ->
+            input.skip(100)
+        }
+        1 * internalTaskExecutionListener.afterTaskOutputsGenerated(task)
+        1 * taskState.setOutcome(TaskExecutionOutcome.FROM_CACHE)
 
         then:
+        1 * task.getPath() >> ":task"
+        1 * executionTimeRepository.getLastExecutionTime(":task") >> null
+        1 * loadListener.loadFinished(task, cacheKey, { it.hit && it.archiveSize == 100 && it.lastExecutionTime == -1 && it.estimatedTimeSaved == -1 })
         1 * taskState.setCacheable(true)
-        1 * delegate.execute(task, taskState, taskContext)
-
-        then:
-        1 * taskCaching.isPushAllowed() >> true
-        1 * taskState.getFailure() >> null
-        1 * taskOutputCache.store(cacheKey, _) >> { throw new RuntimeException("Bad result") }
         0 * _
     }
 }
@@ -16,14 +16,19 @@
 
 package org.gradle.execution.taskgraph
 
+import com.google.common.base.Throwables
+import org.gradle.api.Action
 import org.gradle.api.DefaultTask
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.Transformer
 import org.gradle.api.internal.project.ProjectInternal
+import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.Delete
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.ParallelizableTask
+import org.gradle.api.tasks.TaskExecutionException
 import org.gradle.initialization.BuildCancellationToken
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.test.fixtures.AbstractProjectBuilderSpec
@@ -33,6 +38,8 @@ import org.gradle.testfixtures.internal.NativeServicesTestFixture
 import org.gradle.util.Requires
 import org.gradle.util.TestPrecondition
 
+import java.util.concurrent.CopyOnWriteArrayList
+
 import static org.gradle.util.TestUtil.createChildProject
 import static org.gradle.util.TestUtil.createRootProject
 
@@ -152,6 +159,68 @@ class DefaultTaskExecutionPlanParallelTaskHandlingTest extends AbstractProjectBu
         noMoreTasksCurrentlyAvailableForExecution()
     }
 
+    def "tasks that become ready for execution are executed in plan order"() {
+        given:
+        Task a = root.task("a", type: Parallel)
+        Task b = root.task("b", type: Parallel)
+        Task c = root.task("c", type: Parallel).dependsOn(a)
+        Task d = root.task("d", type: Parallel).dependsOn(b)
+
+        when:
+        addToGraphAndPopulate(c, d)
+        startTasks(2)
+
+        then:
+        startedTasks*.task == [a, b]
+
+        when:
+        executionPlan.taskComplete(startedTasks[1])
+        executionPlan.taskComplete(startedTasks[0])
+        startedTasks.clear()
+        startTasks(2)
+
+        then:
+        startedTasks*.task == [c, d]
+    }
+
+    def "ready tasks that start the longest chain of waiting tasks are executed first when prioritizing by critical path"() {
+        given:
+        Task a = root.task("a", type: Parallel)
+        Task b = root.task("b", type: Parallel)
+        Task c = root.task("c", type: Parallel).dependsOn(b)
+        Task d = root.task("d", type: Parallel).dependsOn(c)
+        addToGraphAndPopulate(a, d)
+
+        when:
+        executionPlan.prioritizeByCriticalPath({ Task task -> durations[task.name] } as Transformer)
+        startTasks(1)
+
+        then:
+        startedTasks*.task*.name == [expected]
+
+        where:
+        durations                     | expected
+        [a: 1L, b: 1L, c: 1L, d: 1L]  | "b"
+        [a: 10L, b: 1L, c: 1L, d: 1L] | "a"
+        [a: 3L, b: 1L, c: 1L, d: 1L]  | "a"
+    }
+
+    def "ready tasks are executed in plan order when no longer prioritizing by critical path"() {
+        given:
+        Task a = root.task("a", type: Parallel)
+        Task b = root.task("b", type: Parallel)
+        Task c = root.task("c", type: Parallel).dependsOn(b)
+        addToGraphAndPopulate(a, c)
+
+        when:
+        executionPlan.prioritizeByCriticalPath({ 1L } as Transformer)
+        executionPlan.prioritizeByCriticalPath(null)
+        startTasks(1)
+
+        then:
+        startedTasks*.task == [a]
+    }
+
     def "task is not available for execution until all of its dependencies that are executed in parallel complete"() {
         given:
         Task a = root.task("a", type: Parallel)
@@ -235,6 +304,41 @@ class DefaultTaskExecutionPlanParallelTaskHandlingTest extends AbstractProjectBu
         noMoreTasksCurrentlyAvailableForExecution()
     }
 
+    def "outputs of a task are not resolved when no other task is running"() {
+        given:
+        int resolved = 0
+        Task a = root.task("a", type: Parallel) {
+            outputs.file({ resolved++; file("output") })
+        }
+
+        when:
+        addToGraphAndPopulate(a)
+        startTasks(1)
+
+        then:
+        startedTasks*.task == [a]
+        resolved == 0
+    }
+
+    def "a task whose outputs cannot be resolved fails without being executed"() {
+        given:
+        def failure = new RuntimeException("broken")
+        Task a = taskWithOutputFile("a", file("outputA"))
+        Task b = root.task("b", type: Parallel) {
+            outputs.file({ throw failure })
+        }
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        executionPlan.getTaskToExecute() == null
+        startedTasks*.task == [a]
+        b.state.failure instanceof TaskExecutionException
+        Throwables.getRootCause(b.state.failure).is(failure)
+    }
+
     @ParallelizableTask
     static class ParallelWithOutputDirectory extends DefaultTask {
         @OutputDirectory
@@ -344,4 +448,174 @@ class DefaultTaskExecutionPlanParallelTaskHandlingTest extends AbstractProjectBu
         then:
         noMoreTasksCurrentlyAvailableForExecution()
     }
+
+    @CacheableTask
+    static class Cacheable extends DefaultTask {}
+
+    Task taskWithDeclaredFiles(Map<String, File> files, String taskName, Class<? extends Task> type = Cacheable) {
+        root.task(taskName, type: type) {
+            if (files.input) {
+                inputs.file(files.input)
+            }
+            if (files.output) {
+                outputs.file(files.output)
+            }
+        }
+    }
+
+    def "tasks of a project with different declared outputs are executed in parallel when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", input: file("input"), output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", input: file("input"), output: file("outputB"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(2)
+
+        then:
+        startedTasks*.task == [a, b]
+    }
+
+    def "tasks that do not declare outputs are not executed in parallel when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", input: file("input"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "tasks that are not cacheable are not executed in parallel when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", [output: file("outputB")], DefaultTask)
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "tasks with custom actions are not executed in parallel when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", output: file("outputB")).doLast {}
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "a task that reads an output of a currently running task is not started when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", output: file("outputDir"))
+        Task b = taskWithDeclaredFiles("b", input: file("outputDir").file("output"), output: file("outputB"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "a task that reads an empty directory a currently running task writes into is not started when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        file("inputDir").createDir()
+        Task a = taskWithDeclaredFiles("a", output: file("inputDir").file("generated"))
+        Task b = taskWithDeclaredFiles("b", output: file("outputB"))
+        b.inputs.dir(file("inputDir"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "inputs of a task that is not parallelizable are not resolved when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        int resolved = 0
+        Task a = taskWithDeclaredFiles("a", output: file("outputA"))
+        Task b = createChildProject(root, "child").task("b") {
+            inputs.files({ resolved++; file("input") })
+            outputs.file(file("outputB"))
+        }
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(2)
+
+        then:
+        startedTasks*.task == [a, b]
+        resolved == 0
+    }
+
+    def "a task that writes an input of a currently running task is not started when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        Task a = taskWithDeclaredFiles("a", input: file("input"), output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", output: file("input"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+    }
+
+    def "a task whose inputs cannot be resolved fails without being executed when parallelizing based on declared files"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken), false, true)
+        def failure = new RuntimeException("broken")
+        Task a = taskWithDeclaredFiles("a", output: file("outputA"))
+        Task b = taskWithDeclaredFiles("b", output: file("outputB"))
+        b.inputs.file({ throw failure })
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        executionPlan.getTaskToExecute() == null
+        startedTasks*.task == [a]
+        b.state.failure instanceof TaskExecutionException
+        Throwables.getRootCause(b.state.failure).is(failure)
+    }
+
+    def "idle worker prepares a task that waits for its dependencies"() {
+        given:
+        Task a = root.task("a")
+        Task b = createChildProject(root, "child").task("b").dependsOn(a)
+        Task c = root.task("c").dependsOn(a)
+        List<Task> preparedTasks = new CopyOnWriteArrayList<Task>()
+        executionPlan.useTaskPreparer({ Task task -> preparedTasks << task } as Action)
+
+        when:
+        addToGraphAndPopulate(b, c)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+        // c belongs to the same project as the running task
+        preparedTasks == [b]
+    }
 }
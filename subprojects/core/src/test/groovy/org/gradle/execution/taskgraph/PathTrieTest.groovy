@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph
+
+import org.gradle.api.internal.TaskInternal
+import spock.lang.Specification
+
+class PathTrieTest extends Specification {
+    def trie = new PathTrie()
+    def task1 = Mock(TaskInternal)
+    def task2 = Mock(TaskInternal)
+
+    def "finds path of a running task that is the same as, contains or is contained in a path"() {
+        given:
+        trie.add(task1, [path("build", "classes")])
+        trie.add(task2, [path("build", "libs", "app.jar"), path("out")])
+
+        expect:
+        trie.firstOverlapping(path("build", "classes")).left == task1
+        trie.firstOverlapping(path("build", "classes", "Foo.class")).left == task1
+        trie.firstOverlapping(path("build", "classes", "Foo.class")).right == path("build", "classes")
+        trie.firstOverlapping(path("build", "libs")).left == task2
+        trie.firstOverlapping(path("build", "libs")).right == path("build", "libs")
+        trie.firstOverlapping(path("build")) != null
+        trie.firstOverlapping(path("out", "x")).left == task2
+    }
+
+    def "does not find paths that share a prefix with a path"() {
+        given:
+        trie.add(task1, [path("build", "classes")])
+
+        expect:
+        trie.firstOverlapping(path("build", "classes2")) == null
+        trie.firstOverlapping(path("build", "resources")) == null
+        trie.firstOverlapping(path("src")) == null
+    }
+
+    def "removes the paths of a task"() {
+        given:
+        trie.add(task1, [path("build", "classes"), path("build", "tmp")])
+        trie.add(task2, [path("build", "classes", "main")])
+
+        when:
+        trie.remove(task1, [path("build", "classes"), path("build", "tmp")])
+
+        then:
+        trie.firstOverlapping(path("build", "classes", "main", "Foo.class")).left == task2
+        trie.firstOverlapping(path("build", "classes", "test")) == null
+        trie.firstOverlapping(path("build", "tmp")) == null
+
+        when:
+        trie.remove(task2, [path("build", "classes", "main")])
+
+        then:
+        trie.firstOverlapping(path("build")) == null
+    }
+
+    private static String path(String... segments) {
+        File.separator + segments.join(File.separator)
+    }
+}
@@ -94,4 +94,24 @@ class CacheStatisticsReporterTest extends Specification {
               | 279  (28%) not cacheable
               |""".stripMargin()
     }
+
+    def 'failures to store task outputs are reported'() {
+        given:
+        def statistics = new TaskExecutionStatistics(
+            [(TaskExecutionOutcome.EXECUTED): 4],
+            4,
+            3,
+            1
+        )
+        when:
+        statisticsReporter.buildFinished(statistics)
+
+        then:
+        TextUtil.normaliseLineSeparators(textOutputFactory as String) ==
+            """{org.gradle.internal.buildevents.BuildResultLogger}{LIFECYCLE}
+              |4 tasks in build, out of which 4 (100%) were executed
+              |4 (100%) cache miss
+              |1 out of 4 task outputs could not be stored in the cache
+              |""".stripMargin()
+    }
 }
@@ -18,10 +18,14 @@ package org.gradle.internal.service.scopes
 import org.gradle.StartParameter
 import org.gradle.api.internal.GradleInternal
 import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.changedetection.state.DirectoryTreeSnapshotCache
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotter
+import org.gradle.api.internal.changedetection.state.FileWatchingDirectoryTreeSnapshotCache
 import org.gradle.api.internal.changedetection.state.InMemoryTaskArtifactCache
+import org.gradle.api.internal.changedetection.state.RetainedFileSnapshots
 import org.gradle.api.internal.file.FileCollectionFactory
 import org.gradle.api.internal.file.FileResolver
+import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory
 import org.gradle.api.internal.tasks.TaskExecuter
 import org.gradle.api.invocation.Gradle
@@ -33,15 +37,26 @@ import org.gradle.internal.classloader.ClassLoaderHierarchyHasher
 import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.environment.GradleBuildEnvironment
 import org.gradle.internal.event.ListenerManager
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherFactory
 import org.gradle.internal.nativeplatform.filesystem.FileSystem
 import org.gradle.internal.operations.BuildOperationProcessor
 import org.gradle.internal.operations.DefaultBuildOperationProcessor
+import org.gradle.internal.os.OperatingSystem
 import org.gradle.internal.reflect.Instantiator
 import org.gradle.internal.service.DefaultServiceRegistry
 import org.gradle.internal.service.ServiceRegistry
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.IgnoreIf
 import spock.lang.Specification
 
 class TaskExecutionServicesTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    @Rule
+    final SetSystemProperties systemProperties = new SetSystemProperties()
     final def parent = Mock(ServiceRegistry)
     final def gradle = Mock(GradleInternal)
     final def services = new DefaultServiceRegistry(parent).addProvider(new TaskExecutionServices())
@@ -87,4 +102,40 @@ class TaskExecutionServicesTest extends Specification {
         services.get(BuildOperationProcessor) instanceof DefaultBuildOperationProcessor
         services.get(BuildOperationProcessor).is(services.get(BuildOperationProcessor))
     }
+
+    @IgnoreIf({ OperatingSystem.current().macOsX })
+    def "reuses the directory tree snapshots taken by a previous build when file snapshots are retained"() {
+        given:
+        System.setProperty(FileWatchingDirectoryTreeSnapshotCache.TOGGLE, "true")
+        def watcher = Mock(FileWatcher)
+        def fileWatcherFactory = Stub(FileWatcherFactory) {
+            watch(_, _) >> watcher
+        }
+        def retainedFileSnapshots = new RetainedFileSnapshots(new FileWatchingDirectoryTreeSnapshotCache(new StringInterner(), TestFiles.fileSystem(), fileWatcherFactory))
+        _ * parent.get(StringInterner) >> new StringInterner()
+        _ * parent.get(org.gradle.internal.nativeintegration.filesystem.FileSystem) >> TestFiles.fileSystem()
+        _ * parent.get(ListenerManager) >> Mock(ListenerManager)
+        _ * parent.get(RetainedFileSnapshots) >> retainedFileSnapshots
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("file.txt")
+        def directoryFileTreeFactory = TestFiles.directoryFileTreeFactory()
+
+        when:
+        def firstBuild = new DefaultServiceRegistry(parent).addProvider(new TaskExecutionServices())
+        def elements = firstBuild.get(DirectoryTreeSnapshotCache).getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        firstBuild.close()
+        def secondBuild = new DefaultServiceRegistry(parent).addProvider(new TaskExecutionServices())
+        def secondElements = secondBuild.get(DirectoryTreeSnapshotCache).getDirectoryTreeDetails(directoryFileTreeFactory.create(dir))
+        secondBuild.close()
+
+        then:
+        secondElements.is(elements)
+        0 * watcher.stop()
+
+        when:
+        retainedFileSnapshots.stop()
+
+        then:
+        1 * watcher.stop()
+    }
 }
@@ -59,4 +59,82 @@ class HttpTaskOutputCacheTest extends Specification {
         then:
         1 * key.hashCode >> "0123456abcdef"
     }
+
+    def "can probe cache for multiple keys"() {
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        def hitKey = Mock(TaskCacheKey)
+        def missKey = Mock(TaskCacheKey)
+        def brokenKey = Mock(TaskCacheKey)
+        _ * hitKey.hashCode >> "0123456abcdef"
+        _ * missKey.hashCode >> "fedcba6543210"
+        _ * brokenKey.hashCode >> "abcdef0123456"
+        server.expectHead("/cache/0123456abcdef", srcFile)
+        server.expectHeadMissing("/cache/fedcba6543210")
+        server.expectHeadBroken("/cache/abcdef0123456")
+
+        expect:
+        cache.probe([hitKey, missKey, brokenKey]) == ["0123456abcdef", "abcdef0123456"] as Set
+    }
+
+    def "retries loading artifact after server error"() {
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        cache = new HttpTaskOutputCache(server.uri.resolve("/cache/"), 2, 1000, 1000, 1, 0, 3)
+        _ * key.hashCode >> "0123456abcdef"
+        server.expectGetBroken("/cache/0123456abcdef")
+        server.expectGet("/cache/0123456abcdef", srcFile)
+
+        when:
+        def loaded = cache.load(key) { input ->
+            assert input.text == "Data"
+        }
+        then:
+        loaded
+        !cache.disabled
+    }
+
+    def "fails storing artifact when server returns error"() {
+        def destFile = tempDir.file("cached.zip")
+        _ * key.hashCode >> "0123456abcdef"
+        server.expectPut("/cache/0123456abcdef", destFile, 500)
+
+        when:
+        cache.store(key) { output ->
+            output << "Data"
+        }
+        then:
+        thrown IOException
+    }
+
+    def "disables cache after repeated failures"() {
+        cache = new HttpTaskOutputCache(server.uri.resolve("/cache/"), 2, 1000, 1000, 0, 0, 2)
+        _ * key.hashCode >> "0123456abcdef"
+        server.expectGetBroken("/cache/0123456abcdef")
+        server.expectGetBroken("/cache/0123456abcdef")
+
+        expect:
+        !cache.load(key) { throw new AssertionError() }
+        !cache.disabled
+        !cache.load(key) { throw new AssertionError() }
+        cache.disabled
+
+        and:
+        // Does not send any more requests
+        !cache.load(key) { throw new AssertionError() }
+        cache.probe([key]).empty
+        cache.store(key) { throw new AssertionError() }
+    }
+
+    def "failed probes do not disable cache"() {
+        cache = new HttpTaskOutputCache(server.uri.resolve("/cache/"), 2, 1000, 1000, 0, 0, 2)
+        _ * key.hashCode >> "0123456abcdef"
+        server.expectHeadBroken("/cache/0123456abcdef")
+        server.expectHeadBroken("/cache/0123456abcdef")
+
+        expect:
+        cache.probe([key]) == ["0123456abcdef"] as Set
+        cache.probe([key]) == ["0123456abcdef"] as Set
+        !cache.disabled
+    }
 }
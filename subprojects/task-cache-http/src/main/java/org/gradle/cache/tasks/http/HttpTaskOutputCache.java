@@ -16,18 +16,28 @@
 
 package org.gradle.cache.tasks.http;
 
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.IncompleteArgumentException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.gradle.api.internal.tasks.cache.ProbingTaskOutputCache;
 import org.gradle.api.internal.tasks.cache.TaskCacheKey;
-import org.gradle.api.internal.tasks.cache.TaskOutputCache;
 import org.gradle.api.internal.tasks.cache.TaskOutputReader;
 import org.gradle.api.internal.tasks.cache.TaskOutputWriter;
+import org.gradle.internal.UncheckedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,32 +45,88 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class HttpTaskOutputCache implements TaskOutputCache {
+/**
+ * A task output cache backed by an HTTP server, storing entries with {@code PUT} and loading them with {@code GET}.
+ *
+ * <p>Connections are pooled and kept alive between requests. Requests that do not change the cache are retried
+ * a few times with increasing delays when they fail. Only sending the request is retried, never reading the entry.
+ * After a number of consecutive failed requests the cache is disabled for the rest of the build, so that tasks
+ * don't have to wait for a broken or unreachable server.</p>
+ */
+public class HttpTaskOutputCache implements ProbingTaskOutputCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpTaskOutputCache.class);
 
+    public static final int DEFAULT_MAX_CONNECTIONS = 2;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 100;
+    public static final int DEFAULT_MAX_CONSECUTIVE_FAILURES = 3;
+    // Used when the server does not say how long connections are kept alive
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
     private final URI root;
     private final CloseableHttpClient httpClient;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final int maxConsecutiveFailures;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean disabled = new AtomicBoolean();
 
     public HttpTaskOutputCache(URI root) {
+        this(root, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BACKOFF_MILLIS, DEFAULT_MAX_CONSECUTIVE_FAILURES);
+    }
+
+    public HttpTaskOutputCache(URI root, int maxConnections, int connectTimeoutMillis, int socketTimeoutMillis, int maxRetries, long retryBackoffMillis, int maxConsecutiveFailures) {
         if (!root.getPath().endsWith("/")) {
             throw new IncompleteArgumentException("HTTP cache root URI must end with '/'");
         }
         this.root = root;
-        this.httpClient = HttpClients.createDefault();
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        // The server may have closed connections that were idle for a while
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMillis)
+            .setConnectionRequestTimeout(socketTimeoutMillis)
+            .setSocketTimeout(socketTimeoutMillis)
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MILLIS;
+                }
+            })
+            .disableAutomaticRetries()
+            .build();
     }
 
     @Override
     public boolean load(TaskCacheKey key, TaskOutputReader reader) throws IOException {
-        final URI uri = root.resolve("./" + key.getHashCode());
-        HttpGet httpGet = new HttpGet(uri);
-        final CloseableHttpResponse response = httpClient.execute(httpGet);
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Response for GET {}: {}", uri, response.getStatusLine());
+        if (disabled.get()) {
+            return false;
         }
+        final URI uri = root.resolve("./" + key.getHashCode());
+        CloseableHttpResponse response = execute(new HttpGet(uri), maxRetries);
         try {
             int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode >= 200 && statusCode < 300) {
+            if (isSuccess(statusCode)) {
                 reader.readFrom(response.getEntity().getContent());
                 return true;
             } else {
@@ -71,8 +137,43 @@ public class HttpTaskOutputCache implements TaskOutputCache {
         }
     }
 
+    /**
+     * Probes the keys with {@code HEAD} requests sent one after the other over the same kept-alive connection.
+     * Any answer other than {@code 404 Not Found} is treated as a possible hit, so that the key is still looked up.
+     * A failed probe does not count towards disabling the cache, as tasks don't wait for probes.
+     */
+    @Override
+    public Set<String> probe(Collection<TaskCacheKey> keys) throws IOException {
+        Set<String> found = Sets.newHashSet();
+        for (TaskCacheKey key : keys) {
+            if (disabled.get()) {
+                // Lookups will not reach the server anymore
+                return Sets.newHashSet();
+            }
+            final URI uri = root.resolve("./" + key.getHashCode());
+            // Probing is only an optimization, so a failed probe is not worth waiting for a retry
+            HttpHead request = new HttpHead(uri);
+            CloseableHttpResponse response = httpClient.execute(request);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for {} {}: {}", request.getMethod(), uri, response.getStatusLine());
+            }
+            try {
+                if (response.getStatusLine().getStatusCode() != 404) {
+                    found.add(key.getHashCode());
+                }
+            } finally {
+                HttpClientUtils.closeQuietly(response);
+            }
+        }
+        return found;
+    }
+
     @Override
     public void store(TaskCacheKey key, final TaskOutputWriter output) throws IOException {
+        if (disabled.get()) {
+            LOGGER.debug("Not storing cache key {} in {} as it has been disabled", key, getDescription());
+            return;
+        }
         final URI uri = root.resolve(key.getHashCode());
         HttpPut httpPut = new HttpPut(uri);
         httpPut.setEntity(new AbstractHttpEntity() {
@@ -101,16 +202,91 @@ public class HttpTaskOutputCache implements TaskOutputCache {
                 return false;
             }
         });
-        CloseableHttpResponse response = httpClient.execute(httpPut);
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(httpPut);
+        } catch (IOException e) {
+            recordFailure();
+            throw e;
+        }
         try {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Response for PUT {}: {}", uri, response.getStatusLine());
             }
+            if (!isSuccess(response.getStatusLine().getStatusCode())) {
+                recordFailure();
+                throw new IOException(String.format("Could not store entry at %s, response: %s", uri, response.getStatusLine()));
+            }
+            recordSuccess();
         } finally {
             HttpClientUtils.closeQuietly(response);
         }
     }
 
+    /**
+     * Executes a request that does not change the cache, retrying it up to the given number of times when it fails
+     * or when the server reports an error. The last response is returned even if it still reports a server error.
+     */
+    private CloseableHttpResponse execute(HttpUriRequest request, int retries) throws IOException {
+        for (int attempt = 0;; attempt++) {
+            String failure;
+            try {
+                CloseableHttpResponse response = httpClient.execute(request);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Response for {} {}: {}", request.getMethod(), request.getURI(), response.getStatusLine());
+                }
+                if (response.getStatusLine().getStatusCode() < 500) {
+                    recordSuccess();
+                    return response;
+                }
+                if (attempt >= retries) {
+                    recordFailure();
+                    return response;
+                }
+                HttpClientUtils.closeQuietly(response);
+                failure = response.getStatusLine().toString();
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    recordFailure();
+                    throw e;
+                }
+                failure = e.toString();
+            }
+            long backoff = retryBackoffMillis << attempt;
+            LOGGER.debug("Retrying {} {} in {} ms after failure: {}", request.getMethod(), request.getURI(), backoff, failure);
+            sleep(backoff);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    private void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    private void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= maxConsecutiveFailures && disabled.compareAndSet(false, true)) {
+            LOGGER.warn("{} failed {} times in a row, it is disabled for the rest of the build.", getDescription(), maxConsecutiveFailures);
+        }
+    }
+
+    /**
+     * Returns whether the cache has been disabled after repeated failures.
+     */
+    public boolean isDisabled() {
+        return disabled.get();
+    }
+
     @Override
     public String getDescription() {
         return "HTTP cache at " + root;
@@ -25,6 +25,11 @@ import java.net.URI;
 
 public class HttpTaskOutputCacheFactory implements TaskOutputCacheFactory {
     private static final String HTTP_URI_PROPERTY = "org.gradle.cache.tasks.http.uri";
+    private static final String MAX_CONNECTIONS_PROPERTY = "org.gradle.cache.tasks.http.maxConnections";
+    private static final String CONNECT_TIMEOUT_PROPERTY = "org.gradle.cache.tasks.http.connectTimeout";
+    private static final String SOCKET_TIMEOUT_PROPERTY = "org.gradle.cache.tasks.http.socketTimeout";
+    private static final String RETRIES_PROPERTY = "org.gradle.cache.tasks.http.retries";
+    private static final String MAX_FAILURES_PROPERTY = "org.gradle.cache.tasks.http.maxFailures";
 
     private final URI root;
 
@@ -42,6 +47,32 @@ public class HttpTaskOutputCacheFactory implements TaskOutputCacheFactory {
 
     @Override
     public TaskOutputCache createCache(StartParameter startParameter) {
-        return new HttpTaskOutputCache(root);
+        int maxConnections = getIntProperty(MAX_CONNECTIONS_PROPERTY, getDefaultMaxConnections(startParameter.getMaxWorkerCount()));
+        int connectTimeout = getIntProperty(CONNECT_TIMEOUT_PROPERTY, HttpTaskOutputCache.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+        int socketTimeout = getIntProperty(SOCKET_TIMEOUT_PROPERTY, HttpTaskOutputCache.DEFAULT_SOCKET_TIMEOUT_MILLIS);
+        int retries = getIntProperty(RETRIES_PROPERTY, HttpTaskOutputCache.DEFAULT_MAX_RETRIES);
+        int maxFailures = getIntProperty(MAX_FAILURES_PROPERTY, HttpTaskOutputCache.DEFAULT_MAX_CONSECUTIVE_FAILURES);
+        return new HttpTaskOutputCache(root, maxConnections, connectTimeout, socketTimeout, retries, HttpTaskOutputCache.DEFAULT_RETRY_BACKOFF_MILLIS, maxFailures);
+    }
+
+    /**
+     * Every worker may look up or store an entry at the same time. Each of the background push threads,
+     * one per worker, and the probe thread may use a connection as well.
+     */
+    static int getDefaultMaxConnections(int maxWorkerCount) {
+        int backgroundConnections = maxWorkerCount + 1;
+        return Math.max(maxWorkerCount + backgroundConnections, HttpTaskOutputCache.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new GradleException(String.format("Invalid value '%s' for '%s' system property, must be an integer", value, name));
+        }
     }
 }